@@ -39,12 +39,14 @@ public class Asteroid extends OrbitingBody {
 
         this.periodSeconds = periodDays * 86400.0;
         this.meanMotion    = (2.0 * Math.PI) / this.periodSeconds;
+
+        updateOrbitBasis();
     }
 
     public String save() {
         double periodDays = periodSeconds / 86400.0;
 
-        return x + " " + y + " " + z + " " +
+        return getWorldX() + " " + getWorldY() + " " + getWorldZ() + " " +
                 radius + " " +
                 color.getRed() + " " + color.getGreen() + " " + color.getBlue() + " " +
                 a + " " + e + " " +
@@ -57,6 +59,12 @@ public class Asteroid extends OrbitingBody {
     }
 
 
+    /** Catalog asteroids include high-eccentricity comets; Halley + Danby starter copes with e > 0.9. */
+    @Override
+    protected KeplerSolver keplerSolver() {
+        return KeplerSolver.HALLEY;
+    }
+
     @Override
     protected int getIconRadiusPx() {
         return ASTEROID_ICON_RADIUS;
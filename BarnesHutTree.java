@@ -0,0 +1,339 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Barnes–Hut octree over point masses, rebuilt every force evaluation.
+ *
+ * - Build: top-down; each cell partitions its slice of a shared index array into octants
+ *   (counting sort), so sibling cells own disjoint slices and are built as independent
+ *   fork-join tasks. Mass and center of mass are accumulated bottom-up as tasks join.
+ * - Cells with at most LEAF_CAPACITY bodies (or at MAX_DEPTH, e.g. coincident points) are
+ *   leaves and are summed directly.
+ * - After the build the cells are flattened into primitive arrays in depth-first order with a
+ *   skip link per cell, and leaf bodies are copied into tree order, so queries walk memory
+ *   forward without recursion or pointer chasing.
+ * - Query: a cell is replaced by its center of mass when size / distance < theta and the query
+ *   point lies outside it; theta = 0 degenerates to the exact pairwise sum.
+ *
+ * Cost is O(N log N) per build plus O(log N) per query, against O(N) per query pairwise.
+ */
+public final class BarnesHutTree {
+
+    // --- Tunables ---
+    /** Bodies per leaf before a cell is split. */
+    public static int LEAF_CAPACITY = 8;
+    /** Depth limit; deeper cells become leaves regardless of size. */
+    public static int MAX_DEPTH = 32;
+    /** Cells with fewer bodies than this are built on the calling thread. */
+    public static int BUILD_GRAIN = 4_096;
+
+    private static final class Cell {
+        final double cx, cy, cz, half;
+        final int from, to;          // slice of the index array
+        Cell[] children;             // null for leaves
+        double mass, comX, comY, comZ;
+
+        Cell(double cx, double cy, double cz, double half, int from, int to) {
+            this.cx = cx;
+            this.cy = cy;
+            this.cz = cz;
+            this.half = half;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private double[] x, y, z, mass;
+    private int[] index = new int[0];
+    private int[] scratch = new int[0];
+    private Cell root;
+
+    // Flattened tree (depth-first order); cell c's subtree ends at skip[c]
+    private int cellCount = 0;
+    private double[] cellX = new double[0], cellY = new double[0], cellZ = new double[0], cellHalf = new double[0];
+    private double[] comX = new double[0], comY = new double[0], comZ = new double[0], cellMass = new double[0];
+    private int[] skip = new int[0];
+    private int[] leafFrom = new int[0]; // -1 for inner cells
+    private int[] leafTo = new int[0];
+
+    // Bodies in tree order
+    private double[] bx = new double[0], by = new double[0], bz = new double[0], bm = new double[0];
+
+    /**
+     * Builds the tree over bodies [0, count) of the given arrays. The arrays are referenced,
+     * not copied, and must not change until the last query of this build.
+     */
+    public void build(double[] x, double[] y, double[] z, double[] mass, int count, ForkJoinPool pool) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.mass = mass;
+
+        if (index.length < count) {
+            index = new int[count];
+            scratch = new int[count];
+        }
+        for (int i = 0; i < count; i++) index[i] = i;
+
+        if (count == 0) {
+            root = null;
+            cellCount = 0;
+            return;
+        }
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (x[i] < minX) minX = x[i];
+            if (x[i] > maxX) maxX = x[i];
+            if (y[i] < minY) minY = y[i];
+            if (y[i] > maxY) maxY = y[i];
+            if (z[i] < minZ) minZ = z[i];
+            if (z[i] > maxZ) maxZ = z[i];
+        }
+        double half = 0.5 * java.lang.Math.max(maxX - minX, java.lang.Math.max(maxY - minY, maxZ - minZ));
+        half = half * (1.0 + 1e-9) + 1e-9; // keep boundary points strictly inside
+
+        root = new Cell(0.5 * (minX + maxX), 0.5 * (minY + maxY), 0.5 * (minZ + maxZ), half, 0, count);
+        if (pool != null && count > BUILD_GRAIN) {
+            pool.invoke(new BuildTask(root, 0));
+        } else {
+            buildCell(root, 0, false);
+        }
+        flatten(count);
+    }
+
+    /** Number of cells in the current tree (diagnostics). */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    private void flatten(int count) {
+        int cells = countCells(root);
+        if (cellX.length < cells) {
+            int cap = cells + (cells >> 2);
+            cellX = new double[cap]; cellY = new double[cap]; cellZ = new double[cap]; cellHalf = new double[cap];
+            comX = new double[cap]; comY = new double[cap]; comZ = new double[cap]; cellMass = new double[cap];
+            skip = new int[cap]; leafFrom = new int[cap]; leafTo = new int[cap];
+        }
+        if (bx.length < count) {
+            bx = new double[count]; by = new double[count]; bz = new double[count]; bm = new double[count];
+        }
+        for (int k = 0; k < count; k++) {
+            int j = index[k];
+            bx[k] = x[j];
+            by[k] = y[j];
+            bz[k] = z[j];
+            bm[k] = mass[j];
+        }
+        cellCount = flattenCell(root, 0);
+        root = null; // the object tree is only needed for the build
+    }
+
+    /** Writes c's subtree from slot c onward; returns the slot after it. */
+    private int flattenCell(Cell c, int slot) {
+        cellX[slot] = c.cx;
+        cellY[slot] = c.cy;
+        cellZ[slot] = c.cz;
+        cellHalf[slot] = c.half;
+        comX[slot] = c.comX;
+        comY[slot] = c.comY;
+        comZ[slot] = c.comZ;
+        cellMass[slot] = c.mass;
+
+        int next = slot + 1;
+        if (c.children == null) {
+            leafFrom[slot] = c.from;
+            leafTo[slot] = c.to;
+        } else {
+            leafFrom[slot] = -1;
+            for (Cell ch : c.children) {
+                if (ch != null) next = flattenCell(ch, next);
+            }
+        }
+        skip[slot] = next;
+        return next;
+    }
+
+    private static int countCells(Cell c) {
+        if (c == null) return 0;
+        int n = 1;
+        if (c.children != null) {
+            for (Cell ch : c.children) n += countCells(ch);
+        }
+        return n;
+    }
+
+    /**
+     * Acceleration at (px, py, pz) per unit gravitational parameter of the sources
+     * (mass arrays hold GM), written to out[0..2].
+     *
+     * @param self  index of the querying body inside the tree, or -1 if it isn't in it
+     * @param theta opening angle (size / distance)
+     * @param eps2  squared softening length
+     */
+    public void accelerationAt(double px, double py, double pz, int self, double theta, double eps2, double[] out) {
+        final double theta2 = theta * theta;
+        double ax = 0.0, ay = 0.0, az = 0.0;
+
+        int c = 0;
+        while (c < cellCount) {
+            int from = leafFrom[c];
+            if (from >= 0) {
+                int to = leafTo[c];
+                for (int k = from; k < to; k++) {
+                    if (index[k] == self) continue;
+                    double dx = bx[k] - px;
+                    double dy = by[k] - py;
+                    double dz = bz[k] - pz;
+                    double r2 = dx * dx + dy * dy + dz * dz + eps2;
+                    double inv = 1.0 / java.lang.Math.sqrt(r2);
+                    double f = bm[k] * inv * inv * inv;
+                    ax += f * dx;
+                    ay += f * dy;
+                    az += f * dz;
+                }
+                c = skip[c];
+                continue;
+            }
+
+            double dx = comX[c] - px;
+            double dy = comY[c] - py;
+            double dz = comZ[c] - pz;
+            double d2 = dx * dx + dy * dy + dz * dz;
+            double half = cellHalf[c];
+            double size = 2.0 * half;
+
+            boolean inside = java.lang.Math.abs(px - cellX[c]) <= half
+                    && java.lang.Math.abs(py - cellY[c]) <= half
+                    && java.lang.Math.abs(pz - cellZ[c]) <= half;
+
+            if (!inside && size * size < theta2 * d2) {
+                double r2 = d2 + eps2;
+                double inv = 1.0 / java.lang.Math.sqrt(r2);
+                double f = cellMass[c] * inv * inv * inv;
+                ax += f * dx;
+                ay += f * dy;
+                az += f * dz;
+                c = skip[c];
+            } else {
+                c++; // open: first child follows its parent
+            }
+        }
+
+        out[0] = ax;
+        out[1] = ay;
+        out[2] = az;
+    }
+
+    /**
+     * Splits c into octants (unless it is a leaf), builds the children, then sums mass and
+     * center of mass. When called from a fork-join task, large children are forked.
+     */
+    private void buildCell(Cell c, int depth, boolean parallel) {
+        int n = c.to - c.from;
+        if (n <= LEAF_CAPACITY || depth >= MAX_DEPTH) {
+            double m = 0.0, mx = 0.0, my = 0.0, mz = 0.0;
+            for (int k = c.from; k < c.to; k++) {
+                int j = index[k];
+                m += mass[j];
+                mx += mass[j] * x[j];
+                my += mass[j] * y[j];
+                mz += mass[j] * z[j];
+            }
+            setMass(c, m, mx, my, mz);
+            return;
+        }
+
+        // Counting sort of the slice into octants (bit 0: +x, bit 1: +y, bit 2: +z)
+        int[] counts = new int[8];
+        for (int k = c.from; k < c.to; k++) {
+            counts[octant(c, index[k])]++;
+        }
+        int[] start = new int[8];
+        int s = c.from;
+        for (int o = 0; o < 8; o++) {
+            start[o] = s;
+            s += counts[o];
+        }
+        int[] fill = start.clone();
+        for (int k = c.from; k < c.to; k++) {
+            int j = index[k];
+            scratch[fill[octant(c, j)]++] = j;
+        }
+        System.arraycopy(scratch, c.from, index, c.from, n);
+
+        double q = 0.5 * c.half;
+        c.children = new Cell[8];
+        for (int o = 0; o < 8; o++) {
+            if (counts[o] == 0) continue;
+            double ox = ((o & 1) != 0) ? q : -q;
+            double oy = ((o & 2) != 0) ? q : -q;
+            double oz = ((o & 4) != 0) ? q : -q;
+            c.children[o] = new Cell(c.cx + ox, c.cy + oy, c.cz + oz, q, start[o], start[o] + counts[o]);
+        }
+
+        if (parallel) {
+            java.util.List<BuildTask> forked = new java.util.ArrayList<>(8);
+            for (Cell ch : c.children) {
+                if (ch == null) continue;
+                if (ch.to - ch.from > BUILD_GRAIN) {
+                    BuildTask t = new BuildTask(ch, depth + 1);
+                    t.fork();
+                    forked.add(t);
+                } else {
+                    buildCell(ch, depth + 1, false);
+                }
+            }
+            for (BuildTask t : forked) t.join();
+        } else {
+            for (Cell ch : c.children) {
+                if (ch != null) buildCell(ch, depth + 1, false);
+            }
+        }
+
+        double m = 0.0, mx = 0.0, my = 0.0, mz = 0.0;
+        for (Cell ch : c.children) {
+            if (ch == null) continue;
+            m += ch.mass;
+            mx += ch.mass * ch.comX;
+            my += ch.mass * ch.comY;
+            mz += ch.mass * ch.comZ;
+        }
+        setMass(c, m, mx, my, mz);
+    }
+
+    private static void setMass(Cell c, double m, double mx, double my, double mz) {
+        c.mass = m;
+        if (m > 0.0) {
+            c.comX = mx / m;
+            c.comY = my / m;
+            c.comZ = mz / m;
+        } else {
+            c.comX = c.cx;
+            c.comY = c.cy;
+            c.comZ = c.cz;
+        }
+    }
+
+    private int octant(Cell c, int j) {
+        return ((x[j] >= c.cx) ? 1 : 0) | ((y[j] >= c.cy) ? 2 : 0) | ((z[j] >= c.cz) ? 4 : 0);
+    }
+
+    private final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Cell cell;
+        private final int depth;
+
+        BuildTask(Cell cell, int depth) {
+            this.cell = cell;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            buildCell(cell, depth, true);
+        }
+    }
+}
@@ -15,9 +15,26 @@ public abstract class Body {
     protected String name;
     protected String type;     // "star", "planet", "moon", "asteroid", ...
 
-    public double getX() { return x; }
-    public double getY() { return y; }
-    public double getZ() { return z; }
+    // Slot in the engine's orbital state store (null/-1 until the system is built)
+    protected OrbitalStateStore store;
+    protected int storeIndex = -1;
+
+    public double getX() { return store != null ? store.getX(storeIndex) : x; }
+    public double getY() { return store != null ? store.getY(storeIndex) : y; }
+    public double getZ() { return store != null ? store.getZ(storeIndex) : z; }
+
+    // World position, whatever render frame the store publishes getX() in (see OrbitalStateStore)
+    public double getWorldX() { return store != null ? store.getWorldX(storeIndex) : x; }
+    public double getWorldY() { return store != null ? store.getWorldY(storeIndex) : y; }
+    public double getWorldZ() { return store != null ? store.getWorldZ(storeIndex) : z; }
+
+    /** Makes this body a view over slot {@code index} of the given store. */
+    void bindToStore(OrbitalStateStore store, int index) {
+        this.store = store;
+        this.storeIndex = index;
+    }
+
+    public int getStoreIndex() { return storeIndex; }
 
     public double getRadius() { return radius; }
     public String getName()   { return name; }
@@ -66,9 +83,17 @@ public abstract class Body {
 
     /** Common projection + circle drawing for all spherical bodies. */
     public void draw(Graphics g, SimulationView s, Frustum frustum) {
-        double worldX = x;
-        double worldY = y;
-        double worldZ = z;
+        draw(null, g, s, frustum);
+    }
+
+    /**
+     * Same, with the body's pixels written into fb when it is not null (RasterRenderer); g is
+     * still used for labels. Subclasses override this one.
+     */
+    public void draw(FrameBuffer fb, Graphics g, SimulationView s, Frustum frustum) {
+        double worldX = getX();
+        double worldY = getY();
+        double worldZ = getZ();
 
         double[] cameraSpacePosition = frustum.worldToCameraSpaceDirect(worldX, worldY, worldZ);
 
@@ -98,24 +123,39 @@ public abstract class Body {
     		return;
         
         g.setColor(color);
+        int rgb = color.getRGB() & 0xFFFFFF;
       
         if (pixelRadius >= 1.0) {
             int d = (int)(2.0 * pixelRadius);
-            g.fillOval((int)(projectedPoint.x - pixelRadius),
-                       (int)(projectedPoint.y - pixelRadius),
-                       d, d);
+            int ox = (int)(projectedPoint.x - pixelRadius);
+            int oy = (int)(projectedPoint.y - pixelRadius);
+            if (fb != null) fb.fillOval(ox, oy, d, rgb, 255);
+            else g.fillOval(ox, oy, d, d);
         } else if (drawFallbackIcon(s)) {
             int iconR = getIconRadiusPx();
             int d = iconR;
-            g.drawOval((int)(projectedPoint.x - iconR/2.0),
-                       (int)(projectedPoint.y - iconR/2.0),
-                       d, d);
+            int ox = (int)(projectedPoint.x - iconR/2.0);
+            int oy = (int)(projectedPoint.y - iconR/2.0);
+            if (fb != null) fb.drawOval(ox, oy, d, rgb, 255);
+            else g.drawOval(ox, oy, d, d);
+        } else if (fb != null) {
+            renderSubpixelPoint(fb, projectedPoint, pixelRadius);
         } else {
         	// pixelRadius < 1.0 and no fallback icon → do subpixel rendering
             renderSubpixelPoint(g, projectedPoint, pixelRadius);
         }
 
-        drawOverlay(g, s, frustum, projectedPoint, pixelRadius);
+        drawOverlay(fb, g, s, frustum, projectedPoint, pixelRadius);
+    }
+
+    /** drawOverlay, once fb's pixels are down when it defers them (TiledFrameBuffer). */
+    protected void drawOverlay(FrameBuffer fb, Graphics g, SimulationView s, Frustum frustum,
+                               Point2D.Double screenPos, double pixelRadius) {
+        if (fb != null && fb.isDeferred()) {
+            fb.afterFlush(() -> drawOverlay(g, s, frustum, screenPos, pixelRadius));
+        } else {
+            drawOverlay(g, s, frustum, screenPos, pixelRadius);
+        }
     }
     
     protected void renderSubpixelPoint(Graphics g, Point2D.Double screenPos, double pixelRadius) {
@@ -129,22 +169,8 @@ public abstract class Body {
 
         // Fractional pixel coverage ~ area of the projected disk
         double coverage = Math.PI * pixelRadius * pixelRadius; // 0..~1
-
-        // Clamp and slightly bias so it never fully disappears
-        double alpha = Math.min(1.0, coverage);
-        double minAlpha = 0.1; // you can tweak this
-        alpha = minAlpha + (1.0 - minAlpha) * alpha; // blend between [minAlpha, 1]
-
-        // Darken color a bit for very small radii
-        double brightness = Math.min(1.0, coverage);
-        int r = (int) (color.getRed()   * brightness);
-        int gCol = (int) (color.getGreen() * brightness);
-        int b = (int) (color.getBlue()  * brightness);
-        Color dimmed = new Color(
-                Math.max(0, Math.min(255, r)),
-                Math.max(0, Math.min(255, gCol)),
-                Math.max(0, Math.min(255, b))
-        );
+        double alpha = subpixelAlpha(coverage);
+        Color dimmed = new Color(subpixelRGB(coverage));
 
         // Save old state
         java.awt.Composite oldComp = g2.getComposite();
@@ -166,4 +192,27 @@ public abstract class Body {
         g2.setComposite(oldComp);
         g2.setColor(oldColor);
     }
+
+    /** {@link #renderSubpixelPoint(Graphics, Point2D.Double, double)} blended into the frame buffer. */
+    protected void renderSubpixelPoint(FrameBuffer fb, Point2D.Double screenPos, double pixelRadius) {
+        double coverage = Math.PI * pixelRadius * pixelRadius;
+        fb.blend((int) Math.round(screenPos.x), (int) Math.round(screenPos.y),
+                subpixelRGB(coverage), FrameBuffer.alpha255((float) subpixelAlpha(coverage)));
+    }
+
+    /** Sub-pixel point opacity: coverage, clamped and slightly biased so it never fully disappears. */
+    private static double subpixelAlpha(double coverage) {
+        double alpha = Math.min(1.0, coverage);
+        double minAlpha = 0.1; // you can tweak this
+        return minAlpha + (1.0 - minAlpha) * alpha; // blend between [minAlpha, 1]
+    }
+
+    /** Sub-pixel point color: darkened a bit for very small radii. */
+    private int subpixelRGB(double coverage) {
+        double brightness = Math.min(1.0, coverage);
+        int r = (int) (color.getRed()   * brightness);
+        int g = (int) (color.getGreen() * brightness);
+        int b = (int) (color.getBlue()  * brightness);
+        return (Math.max(0, Math.min(255, r)) << 16) | (Math.max(0, Math.min(255, g)) << 8) | Math.max(0, Math.min(255, b));
+    }
 }
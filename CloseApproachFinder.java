@@ -0,0 +1,608 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds close approaches (local minima of mutual distance below a threshold) between bodies of
+ * an OrbitalStateStore over a time range, without touching the live system: orbits are read
+ * from OrbitalStateStore.snapshotOrbits as of construction, so handoffs and burns the
+ * simulation thread makes meanwhile are not seen half done.
+ *
+ * Brute force would solve every pair at every sample (O(N² T)). Instead:
+ * 1. Shells: every body stays within [lo, hi] of the root star (periapsis/apoapsis, widened by
+ *    its ancestors' shells for moons). Sorted by lo and swept, bodies whose shell comes within
+ *    the threshold of no other body's shell are dropped.
+ * 2. Windows: the range is cut into windows; every body is sampled at each window center
+ *    (TrajectorySampler) and can be at most reach = maxSpeed * window / 2 from there. Boxes
+ *    widened by reach + threshold / 2 are hashed into a uniform grid (bucket chains, no sort),
+ *    and only pairs sharing a cell whose centers are within threshold + both reaches become
+ *    (pair, window) candidates.
+ *    A body covering too many cells is tested against everyone instead.
+ * 3. Refinement: consecutive windows of a pair are merged into an interval, sampled at a step
+ *    of the pair's shortest relevant period / SAMPLES_PER_ORBIT, and every local minimum is
+ *    refined by golden-section search on the distance.
+ * Stages 2 and 3 run on a ForkJoinPool (sampling per window batch, refinement per interval).
+ *
+ * Pairs where one body orbits the other (directly or through moons) are not reported; their
+ * distance is just the orbit. Distances are in sim units, times in nanoseconds.
+ */
+public final class CloseApproachFinder {
+
+    // --- Tunables ---
+    /** Distance samples per shortest relevant orbital period when refining a pair. */
+    public static int SAMPLES_PER_ORBIT = 32;
+    /** Cap on windows per search (long ranges get wider windows and larger reaches). */
+    public static int MAX_WINDOWS = 1 << 16;
+    /** Positions sampled per batch of windows (memory: 24 bytes each). */
+    public static int BATCH_SAMPLES = 1 << 22;
+    /** Bodies whose widened box spans more grid cells are tested against all others. */
+    public static int MAX_CELLS_PER_BODY = 64;
+    /** Golden-section search stops below this bracket (seconds). */
+    public static double REFINE_TOLERANCE_SECONDS = 1.0;
+    /** Smallest interval handed to one refinement task. */
+    public static int PARALLEL_GRAIN = 8;
+
+    private static final double INV_PHI = (java.lang.Math.sqrt(5.0) - 1.0) / 2.0;
+    private static final int SLOT_BITS = 24;
+    private static final int WINDOW_BITS = 16;
+
+    /** One minimum of the distance between two bodies. */
+    public static final class Approach {
+        private final OrbitalStateStore store;
+        private final int slotA, slotB;
+        private final long timeNanos;
+        private final double distance;
+
+        Approach(OrbitalStateStore store, int slotA, int slotB, long timeNanos, double distance) {
+            this.store = store;
+            this.slotA = slotA;
+            this.slotB = slotB;
+            this.timeNanos = timeNanos;
+            this.distance = distance;
+        }
+
+        public int getSlotA() { return slotA; }
+        public int getSlotB() { return slotB; }
+        public Body getBodyA() { return store.getBody(slotA); }
+        public Body getBodyB() { return store.getBody(slotB); }
+        public long getTimeNanos() { return timeNanos; }
+        /** Closest distance (sim units). */
+        public double getDistance() { return distance; }
+
+        @Override
+        public String toString() {
+            return getBodyA().getName() + " - " + getBodyB().getName() + " at t=" + timeNanos
+                    + " ns: " + (distance * SimulationView.SCALE_KM_PER_UNIT) + " km";
+        }
+    }
+
+    private final OrbitalStateStore store; // orbits as of construction (snapshotOrbits)
+    private final int[] slots;          // candidate bodies
+    private final int[] depth;          // per store slot
+    private final double[] maxSpeed;    // per store slot, relative to the root (units/s)
+    private final double[] shellLo, shellHi;
+
+    // Stats of the last search
+    private int prunedBodies;
+    private long candidatePairWindows;
+    private int refinedIntervals;
+
+    /** All orbiting bodies of the store. */
+    public CloseApproachFinder(OrbitalStateStore store) {
+        this(store, orbitingSlots(store));
+    }
+
+    public CloseApproachFinder(OrbitalStateStore store, int[] slots) {
+        if (store.size() >= (1 << SLOT_BITS)) throw new IllegalArgumentException("Store too large: " + store.size());
+        this.store = store = store.snapshotOrbits();
+        this.slots = slots.clone();
+
+        int n = store.size();
+        depth = new int[n];
+        maxSpeed = new double[n];
+        shellLo = new double[n];
+        shellHi = new double[n];
+        for (int i = 0; i < n; i++) { // slot order: parents first
+            int p = store.getParentIndex(i);
+            if (p < 0) continue;
+            double e = store.e[i];
+            double q = store.a[i] * java.lang.Math.abs(1.0 - e);
+            double apo = (e < 1.0) ? store.a[i] * (1.0 + e) : Double.POSITIVE_INFINITY; // open orbits leave
+            double v = store.getMaxOrbitalSpeed(i);
+
+            depth[i] = depth[p] + 1;
+            maxSpeed[i] = maxSpeed[p] + v;
+            if (store.getParentIndex(p) < 0 && p == OrbitalStateStore.ROOT) {
+                shellLo[i] = q;
+                shellHi[i] = apo;
+            } else {
+                // Around a moving parent (or a fixed orphan root): widen the parent's shell
+                double lo = (store.getParentIndex(p) < 0) ? distanceToRoot(p) : shellLo[p];
+                double hi = (store.getParentIndex(p) < 0) ? lo : shellHi[p];
+                shellLo[i] = java.lang.Math.max(0.0, lo - apo);
+                shellHi[i] = hi + apo;
+            }
+        }
+    }
+
+    private static int[] orbitingSlots(OrbitalStateStore store) {
+        int k = 0;
+        int[] s = new int[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            if (store.getParentIndex(i) >= 0) s[k++] = i;
+        }
+        return Arrays.copyOf(s, k);
+    }
+
+    private double distanceToRoot(int i) {
+        double dx = store.x[i], dy = store.y[i], dz = store.z[i];
+        return java.lang.Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public int getPrunedBodies() { return prunedBodies; }
+    public long getCandidatePairWindows() { return candidatePairWindows; }
+    public int getRefinedIntervals() { return refinedIntervals; }
+
+    /** {@link #find(long, long, double, ForkJoinPool)} on the common pool. */
+    public List<Approach> find(long fromNanos, long toNanos, double maxDistance) {
+        return find(fromNanos, toNanos, maxDistance, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Close approaches within [fromNanos, toNanos] closer than maxDistance, sorted by time.
+     */
+    public List<Approach> find(long fromNanos, long toNanos, double maxDistance, ForkJoinPool pool) {
+        if (toNanos < fromNanos) throw new IllegalArgumentException("Empty time range");
+        if (!(maxDistance > 0.0)) throw new IllegalArgumentException("maxDistance must be positive");
+
+        int[] active = pruneByShells(maxDistance);
+        prunedBodies = slots.length - active.length;
+        candidatePairWindows = 0;
+        refinedIntervals = 0;
+        if (active.length < 2) return new ArrayList<>();
+
+        // Windows: typical body moves about maxDistance per half window
+        double span = (toNanos - fromNanos) / 1e9;
+        double[] speeds = new double[active.length];
+        for (int k = 0; k < active.length; k++) speeds[k] = maxSpeed[active[k]];
+        Arrays.sort(speeds);
+        double median = speeds[speeds.length / 2];
+        double window = (median > 0.0) ? 2.0 * maxDistance / median : span;
+        long maxWindows = java.lang.Math.min(MAX_WINDOWS, 1 << WINDOW_BITS);
+        long windows = java.lang.Math.max(1L, java.lang.Math.min(maxWindows, (long) java.lang.Math.ceil(span / window)));
+        long rangeNanos = java.lang.Math.max(1L, toNanos - fromNanos);
+        long windowNanos = (rangeNanos + windows - 1) / windows;
+        windows = (rangeNanos + windowNanos - 1) / windowNanos;
+
+        long[] candidates = findCandidates(active, fromNanos, (int) windows, windowNanos, maxDistance, pool);
+        long[][] intervals = mergeIntervals(candidates);
+        refinedIntervals = intervals.length;
+
+        // One slot per interval, filled in place by the tasks
+        List<List<Approach>> found = new ArrayList<>(Collections.nCopies(intervals.length, null));
+        RefineTask root = new RefineTask(this, intervals, found, 0, intervals.length,
+                fromNanos, toNanos, windowNanos, maxDistance);
+        if (intervals.length <= PARALLEL_GRAIN) root.compute(); else pool.invoke(root);
+
+        List<Approach> out = new ArrayList<>();
+        for (List<Approach> l : found) out.addAll(l);
+        out.sort(Comparator.comparingLong(Approach::getTimeNanos));
+        return out;
+    }
+
+    /** Stage 1: bodies whose shell comes within maxDistance of some unrelated body's shell. */
+    private int[] pruneByShells(double maxDistance) {
+        Integer[] order = new Integer[slots.length];
+        for (int k = 0; k < slots.length; k++) order[k] = slots[k];
+        Arrays.sort(order, Comparator.comparingDouble(i -> shellLo[i]));
+
+        // open: shells not yet passed (by end); unpaired: open shells still without a partner
+        boolean[] keep = new boolean[store.size()];
+        PriorityQueue<Integer> open = new PriorityQueue<>(Comparator.comparingDouble(i -> shellHi[i]));
+        List<Integer> unpaired = new ArrayList<>();
+        for (int i : order) {
+            double lo = shellLo[i] - maxDistance;
+            while (!open.isEmpty() && shellHi[open.peek()] < lo) open.poll();
+
+            // Every unrelated unpaired shell still open overlaps this one (each is paired once)
+            for (int k = unpaired.size() - 1; k >= 0; k--) {
+                int j = unpaired.get(k);
+                if (shellHi[j] < lo) {
+                    unpaired.remove(k);
+                } else if (!related(i, j)) {
+                    keep[i] = keep[j] = true;
+                    unpaired.remove(k);
+                }
+            }
+            if (!keep[i]) {
+                for (int j : open) {
+                    if (!related(i, j)) {
+                        keep[i] = true;
+                        break;
+                    }
+                }
+            }
+            open.add(i);
+            if (!keep[i]) unpaired.add(i);
+        }
+
+        int k = 0;
+        int[] active = new int[slots.length];
+        for (int s : slots) if (keep[s]) active[k++] = s;
+        active = Arrays.copyOf(active, k);
+        Arrays.sort(active);
+        return active;
+    }
+
+    /** Whether one of the two slots orbits the other (directly or through intermediate moons). */
+    private boolean related(int i, int j) {
+        if (i == j) return true;
+        if (depth[i] < depth[j]) { int t = i; i = j; j = t; }
+        while (depth[i] > depth[j]) i = store.getParentIndex(i);
+        return i == j;
+    }
+
+    /** Stage 2: (pair, window) candidates packed as a << 40 | b << 16 | window, sorted. */
+    private long[] findCandidates(int[] active, long fromNanos, int windows, long windowNanos,
+                                  double maxDistance, ForkJoinPool pool) {
+        int n = active.length;
+        int batch = (int) java.lang.Math.max(1L, java.lang.Math.min(windows, BATCH_SAMPLES / n));
+        TrajectorySampler sampler = new TrajectorySampler(store, active);
+
+        double halfWindow = windowNanos / 2e9;
+        double[] reach = new double[n];
+        for (int k = 0; k < n; k++) reach[k] = maxSpeed[active[k]] * halfWindow;
+
+        // Grid cell: threshold plus a typical body's reach on both sides
+        double[] sortedReach = reach.clone();
+        Arrays.sort(sortedReach);
+        double cell = maxDistance + 2.0 * sortedReach[n / 2];
+
+        LongList out = new LongList();
+        double[] x = new double[n * batch], y = new double[n * batch], z = new double[n * batch];
+        for (int w0 = 0; w0 < windows; w0 += batch) {
+            int nt = java.lang.Math.min(batch, windows - w0);
+            long[] centers = new long[nt];
+            for (int k = 0; k < nt; k++) centers[k] = fromNanos + (w0 + k) * windowNanos + windowNanos / 2;
+            sampler.sample(centers, x, y, z, pool);
+
+            LongList[] perWindow = new LongList[nt];
+            GridTask root = new GridTask(this, active, reach, cell, maxDistance, x, y, z, nt, w0, perWindow, 0, nt);
+            if (nt == 1) root.compute(); else pool.invoke(root);
+            for (LongList l : perWindow) out.addAll(l);
+        }
+
+        long[] c = out.toArray();
+        Arrays.sort(c);
+        candidatePairWindows = c.length;
+        return c;
+    }
+
+    /** Candidate pairs of one window (k-th sample of every active body) into out. */
+    private void gridWindow(int[] active, double[] reach, double cell, double maxDistance,
+                            double[] x, double[] y, double[] z, int nt, int k, int window, LongList out) {
+        int n = active.length;
+        double pad = maxDistance * 0.5;
+        double inv = 1.0 / cell;
+
+        // Cell range of every body's widened box
+        long[] box = new long[6 * n];
+        long entries = 0;
+        IntList large = new IntList();
+        for (int b = 0; b < n; b++) {
+            int o = b * nt + k;
+            double r = reach[b] + pad;
+            int q = 6 * b;
+            box[q]     = (long) java.lang.Math.floor((x[o] - r) * inv);
+            box[q + 1] = (long) java.lang.Math.floor((x[o] + r) * inv);
+            box[q + 2] = (long) java.lang.Math.floor((y[o] - r) * inv);
+            box[q + 3] = (long) java.lang.Math.floor((y[o] + r) * inv);
+            box[q + 4] = (long) java.lang.Math.floor((z[o] - r) * inv);
+            box[q + 5] = (long) java.lang.Math.floor((z[o] + r) * inv);
+            long cells = (box[q + 1] - box[q] + 1) * (box[q + 3] - box[q + 2] + 1) * (box[q + 5] - box[q + 4] + 1);
+            if (cells > MAX_CELLS_PER_BODY) {
+                large.add(b);
+                box[q + 1] = box[q] - 1; // no entries
+            } else {
+                entries += cells;
+            }
+        }
+
+        // Cell hash table: bucket heads plus a next link per (body, cell) entry, no sorting;
+        // four buckets per entry keep collisions between different cells rare
+        int[] head = new int[Integer.highestOneBit((int) java.lang.Math.max(16L, java.lang.Math.min(1L << 28, entries * 4))) << 1];
+        Arrays.fill(head, -1);
+        int bucketMask = head.length - 1;
+        int[] eb = new int[(int) entries], en = new int[(int) entries];
+        int e = 0;
+        for (int b = 0; b < n; b++) {
+            int q = 6 * b;
+            for (long cx = box[q]; cx <= box[q + 1]; cx++)
+                for (long cy = box[q + 2]; cy <= box[q + 3]; cy++)
+                    for (long cz = box[q + 4]; cz <= box[q + 5]; cz++) {
+                        int bucket = cellHash(cx, cy, cz) & bucketMask;
+                        eb[e] = b;
+                        en[e] = head[bucket];
+                        head[bucket] = e++;
+                    }
+        }
+
+        // Bodies in the same bucket are candidates (colliding cells only add exact tests)
+        LongList pairs = new LongList();
+        for (int h : head) {
+            for (int u = h; u >= 0; u = en[u]) {
+                for (int v = en[u]; v >= 0; v = en[v]) {
+                    if (eb[u] != eb[v]) addIfClose(active, reach, maxDistance, x, y, z, nt, k, eb[u], eb[v], pairs);
+                }
+            }
+        }
+        for (int l = 0; l < large.size(); l++) {
+            int a = large.get(l);
+            for (int b = 0; b < n; b++) {
+                if (b != a) addIfClose(active, reach, maxDistance, x, y, z, nt, k, a, b, pairs);
+            }
+        }
+
+        long[] p = pairs.toArray();
+        Arrays.sort(p);
+        for (int u = 0; u < p.length; u++) {
+            if (u > 0 && p[u] == p[u - 1]) continue;
+            out.add((p[u] << WINDOW_BITS) | window);
+        }
+    }
+
+    private void addIfClose(int[] active, double[] reach, double maxDistance,
+                            double[] x, double[] y, double[] z, int nt, int k, int a, int b, LongList pairs) {
+        int sa = active[a], sb = active[b];
+        if (related(sa, sb)) return;
+        int oa = a * nt + k, ob = b * nt + k;
+        double dx = x[oa] - x[ob], dy = y[oa] - y[ob], dz = z[oa] - z[ob];
+        double limit = maxDistance + reach[a] + reach[b];
+        if (dx * dx + dy * dy + dz * dz > limit * limit) return;
+        long lo = java.lang.Math.min(sa, sb), hi = java.lang.Math.max(sa, sb);
+        pairs.add((lo << SLOT_BITS) | hi);
+    }
+
+    private static int cellHash(long cx, long cy, long cz) {
+        long h = cx * 73856093L ^ cy * 19349663L ^ cz * 83492791L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Runs of consecutive windows of the same pair: {a, b, firstWindow, lastWindow}. */
+    private static long[][] mergeIntervals(long[] candidates) {
+        List<long[]> out = new ArrayList<>();
+        long windowMask = (1L << WINDOW_BITS) - 1;
+        for (int s = 0; s < candidates.length; ) {
+            long pair = candidates[s] >>> WINDOW_BITS;
+            long first = candidates[s] & windowMask, last = first;
+            int t = s + 1;
+            while (t < candidates.length && (candidates[t] >>> WINDOW_BITS) == pair
+                    && (candidates[t] & windowMask) == last + 1) {
+                last++;
+                t++;
+            }
+            out.add(new long[] { pair >>> SLOT_BITS, pair & ((1L << SLOT_BITS) - 1), first, last });
+            s = t;
+        }
+        return out.toArray(new long[0][]);
+    }
+
+    /** Stage 3: local minima of |A - B| over one interval, refined. */
+    private List<Approach> refine(long[] interval, long fromNanos, long toNanos, long windowNanos, double maxDistance) {
+        int a = (int) interval[0], b = (int) interval[1];
+        long start = java.lang.Math.max(fromNanos, fromNanos + interval[2] * windowNanos);
+        long end = java.lang.Math.min(toNanos, fromNanos + (interval[3] + 1) * windowNanos);
+
+        // Step: shortest period among the bodies whose motion changes the separation
+        double shortest = java.lang.Math.min(chainPeriod(a, b), chainPeriod(b, a));
+        double step = java.lang.Math.min(windowNanos / 1e9, shortest / SAMPLES_PER_ORBIT);
+        int samples = (int) java.lang.Math.max(2L, (long) java.lang.Math.ceil((end - start) / 1e9 / step) + 1);
+        double stepNanos = (end - start) / (double) (samples - 1);
+
+        int ancestor = store.commonAncestor(a, b);
+        Scratch s = new Scratch();
+        double[] d = new double[samples];
+        for (int k = 0; k < samples; k++) d[k] = distance(a, b, ancestor, start + (long) (k * stepNanos), s);
+
+        List<Approach> out = new ArrayList<>();
+        for (int k = 0; k < samples; k++) {
+            double prev = (k > 0) ? d[k - 1] : Double.POSITIVE_INFINITY;
+            double next = (k + 1 < samples) ? d[k + 1] : Double.POSITIVE_INFINITY;
+            if (d[k] > prev || d[k] > next || (d[k] == prev && k > 0)) continue;
+
+            long lo = start + (long) (java.lang.Math.max(0, k - 1) * stepNanos);
+            long hi = start + (long) (java.lang.Math.min(samples - 1, k + 1) * stepNanos);
+            long[] tMin = new long[1];
+            double dMin = goldenSection(a, b, ancestor, lo, hi, s, tMin);
+            if (dMin <= maxDistance) out.add(new Approach(store, a, b, tMin[0], dMin));
+        }
+        return out;
+    }
+
+    /** Shortest period on i's parent chain below its common ancestor with j. */
+    private double chainPeriod(int i, int j) {
+        double shortest = Double.POSITIVE_INFINITY;
+        int ci = i, cj = j;
+        while (depth[cj] > depth[ci]) cj = store.getParentIndex(cj);
+        while (depth[ci] > depth[cj]) {
+            shortest = java.lang.Math.min(shortest, store.period[ci]);
+            ci = store.getParentIndex(ci);
+        }
+        while (ci != cj && ci >= 0 && cj >= 0) {
+            shortest = java.lang.Math.min(shortest, store.period[ci]);
+            ci = store.getParentIndex(ci);
+            cj = store.getParentIndex(cj);
+        }
+        return shortest;
+    }
+
+    /** Minimum of the distance on [lo, hi] (nanoseconds); its time goes to tMin[0]. */
+    private double goldenSection(int a, int b, int ancestor, long lo, long hi, Scratch s, long[] tMin) {
+        double x0 = lo, x3 = hi;
+        double x1 = x3 - INV_PHI * (x3 - x0);
+        double x2 = x0 + INV_PHI * (x3 - x0);
+        double f1 = distance(a, b, ancestor, (long) x1, s);
+        double f2 = distance(a, b, ancestor, (long) x2, s);
+        double tol = REFINE_TOLERANCE_SECONDS * 1e9;
+        while (x3 - x0 > tol) {
+            if (f1 < f2) {
+                x3 = x2; x2 = x1; f2 = f1;
+                x1 = x3 - INV_PHI * (x3 - x0);
+                f1 = distance(a, b, ancestor, (long) x1, s);
+            } else {
+                x0 = x1; x1 = x2; f1 = f2;
+                x2 = x0 + INV_PHI * (x3 - x0);
+                f2 = distance(a, b, ancestor, (long) x2, s);
+            }
+        }
+        // The ends can be lower than the interior probes when the minimum sits on the range edge
+        double best = java.lang.Math.min(f1, f2);
+        tMin[0] = (long) ((f1 < f2) ? x1 : x2);
+        double fLo = distance(a, b, ancestor, lo, s), fHi = distance(a, b, ancestor, hi, s);
+        if (fLo < best) { best = fLo; tMin[0] = lo; }
+        if (fHi < best) { best = fHi; tMin[0] = hi; }
+        return best;
+    }
+
+    /** Per-thread solver scratch. */
+    private static final class Scratch {
+        final double[] ecc = new double[3];
+        final double[] off = new double[3];
+        final double[] pa = new double[3];
+        final double[] pb = new double[3];
+    }
+
+    /** |A - B| at tNanos; only the chains below their common ancestor are solved. */
+    private double distance(int a, int b, int ancestor, long tNanos, Scratch s) {
+        SimulationTime t = SimulationTime.ofNanos(tNanos);
+        store.chainOffset(a, ancestor, t, s.ecc, s.off, s.pa);
+        store.chainOffset(b, ancestor, t, s.ecc, s.off, s.pb);
+        double dx = s.pa[0] - s.pb[0], dy = s.pa[1] - s.pb[1], dz = s.pa[2] - s.pb[2];
+        return java.lang.Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /** Grows like ArrayList<Long> without boxing. */
+    private static final class LongList {
+        private long[] data = new long[16];
+        private int size;
+
+        void add(long v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        void addAll(LongList o) {
+            if (o == null) return;
+            if (size + o.size > data.length) data = Arrays.copyOf(data, java.lang.Math.max(data.length * 2, size + o.size));
+            System.arraycopy(o.data, 0, data, size, o.size);
+            size += o.size;
+        }
+
+        long[] toArray() { return Arrays.copyOf(data, size); }
+    }
+
+    /** Grows like ArrayList<Integer> without boxing. */
+    private static final class IntList {
+        private int[] data = new int[16];
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int get(int i) { return data[i]; }
+        int size() { return size; }
+    }
+
+    /** Splits the windows of one sampled batch in halves until single windows remain. */
+    private static final class GridTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CloseApproachFinder f;
+        private final int[] active;
+        private final double[] reach;
+        private final double cell, maxDistance;
+        private final double[] x, y, z;
+        private final int nt, firstWindow;
+        private final LongList[] out;
+        private final int from, to;
+
+        GridTask(CloseApproachFinder f, int[] active, double[] reach, double cell, double maxDistance,
+                 double[] x, double[] y, double[] z, int nt, int firstWindow, LongList[] out, int from, int to) {
+            this.f = f;
+            this.active = active;
+            this.reach = reach;
+            this.cell = cell;
+            this.maxDistance = maxDistance;
+            this.x = x; this.y = y; this.z = z;
+            this.nt = nt;
+            this.firstWindow = firstWindow;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int k = from; k < to; k++) {
+                    LongList l = new LongList();
+                    f.gridWindow(active, reach, cell, maxDistance, x, y, z, nt, k, firstWindow + k, l);
+                    out[k] = l;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new GridTask(f, active, reach, cell, maxDistance, x, y, z, nt, firstWindow, out, from, mid),
+                    new GridTask(f, active, reach, cell, maxDistance, x, y, z, nt, firstWindow, out, mid, to)
+            );
+        }
+    }
+
+    /** Splits the candidate intervals in halves until below the grain size. */
+    private static final class RefineTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CloseApproachFinder f;
+        private final long[][] intervals;
+        private final List<List<Approach>> out;
+        private final int from, to;
+        private final long fromNanos, toNanos, windowNanos;
+        private final double maxDistance;
+
+        RefineTask(CloseApproachFinder f, long[][] intervals, List<List<Approach>> out, int from, int to,
+                   long fromNanos, long toNanos, long windowNanos, double maxDistance) {
+            this.f = f;
+            this.intervals = intervals;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+            this.windowNanos = windowNanos;
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                for (int k = from; k < to; k++) {
+                    out.set(k, f.refine(intervals[k], fromNanos, toNanos, windowNanos, maxDistance));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new RefineTask(f, intervals, out, from, mid, fromNanos, toNanos, windowNanos, maxDistance),
+                    new RefineTask(f, intervals, out, mid, to, fromNanos, toNanos, windowNanos, maxDistance)
+            );
+        }
+    }
+}
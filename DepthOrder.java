@@ -0,0 +1,313 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Far-to-near draw order of the renderer's bodies, by squared distance to the camera.
+ *
+ * Bodies are added in list order each frame, then sorted over a primitive array of depths. The
+ * order is kept between frames: bodies and camera move little from one frame to the next, so
+ * last frame's order is nearly sorted and an insertion pass repairs it in about linear time.
+ * When that pass has to move too much (a camera jump, bodies added or removed) the depths are
+ * radix sorted afresh, on their float bits, and the runs the float rounding merged are then
+ * ordered by exact depth. Equal depths draw in list order, as the old insertion sort did.
+ *
+ * The pass gives up as soon as it falls behind its move allowance for the bodies placed so far,
+ * so a scrambled order costs a few bodies' worth of moves, not the whole budget. Large lists get
+ * their depths and radix sort on a ForkJoinPool: each chunk counts its own digits, one prefix
+ * scan over (digit, chunk) turns the counts into write offsets, and the chunks scatter in
+ * parallel, which keeps the sort stable.
+ */
+public final class DepthOrder {
+
+    // --- Tunables ---
+    /** Insertion-pass moves allowed per body before falling back to the radix sort. */
+    public static int MAX_SHIFTS_PER_BODY = 4;
+    /** Bodies the insertion pass may place before it is held to that allowance. */
+    public static int SHIFT_SLACK_BODIES = 64;
+    /** Bodies per chunk of the parallel radix sort; shorter lists are sorted on the calling thread. */
+    public static int PARALLEL_GRAIN = 16_384;
+
+    private static final int RADIX_BITS = 16;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    // Parallel sort: three 11-bit passes over the key word, so per-chunk counts stay small
+    private static final int CHUNK_BITS = 11;
+    private static final int CHUNK_RADIX = 1 << CHUNK_BITS;
+
+    private Body[] bodies = new Body[256];
+    private int n;
+    private int sortedN;         // bodies in the order kept from last frame
+    private boolean changed;     // list differs from last frame's
+
+    private double[] depth = new double[256];    // by list index
+    private int[] order = new int[256];          // list indices, far to near
+    private double[] ordered = new double[256];  // depth[order[k]], so the insertion pass reads in sequence
+
+    // Radix sort scratch: (depth key << 32 | list index), so one array moves per pass
+    private long[] keys = new long[256], keysTmp = new long[256];
+    private int[] count;
+    private int[] chunkCount = new int[0]; // [chunk][digit] counts, then write offsets
+
+    private boolean lastFullSort;
+    private double camX, camY, camZ; // for the chunk tasks
+
+    /** Starts a new frame's list. */
+    public void clear() {
+        n = 0;
+        changed = false;
+    }
+
+    public void add(Body b) {
+        if (n == bodies.length) grow(n * 2);
+        if (n >= sortedN || bodies[n] != b) changed = true;
+        bodies[n++] = b;
+    }
+
+    public int size() { return n; }
+
+    /** The k-th body to draw, farthest first; valid after {@link #sort}. */
+    public Body get(int k) { return bodies[order[k]]; }
+
+    /** Whether the last sort fell back to the radix sort. */
+    public boolean wasFullSort() { return lastFullSort; }
+
+    /** {@link #sort(double, double, double, ForkJoinPool)} on the common pool. */
+    public void sort(double cx, double cy, double cz) {
+        sort(cx, cy, cz, ForkJoinPool.commonPool());
+    }
+
+    /** Orders the bodies added since {@link #clear} far to near from the camera at (cx, cy, cz). */
+    public void sort(double cx, double cy, double cz, ForkJoinPool pool) {
+        int chunks = java.lang.Math.min(n / java.lang.Math.max(1, PARALLEL_GRAIN), 4 * pool.getParallelism());
+        if (pool.getParallelism() < 2) chunks = 1;
+        camX = cx;
+        camY = cy;
+        camZ = cz;
+
+        if (chunks > 1) pool.invoke(new ChunkTask(this, ChunkTask.DEPTH, 0, keys, keysTmp, chunks, 0, chunks));
+        else depths(0, n);
+        for (int i = n; i < sortedN; i++) bodies[i] = null; // dropped since last frame
+
+        boolean reuse = !changed && n == sortedN;
+        lastFullSort = !(reuse && insertionPass(MAX_SHIFTS_PER_BODY));
+        if (lastFullSort) {
+            if (chunks > 1) radixSort(pool, chunks);
+            else radixSort();
+        }
+        sortedN = n;
+    }
+
+    private void depths(int from, int to) {
+        final Body[] bodies = this.bodies;
+        final double[] depth = this.depth;
+        final double cx = camX, cy = camY, cz = camZ;
+        for (int i = from; i < to; i++) {
+            Body b = bodies[i];
+            double dx = b.getX() - cx;
+            double dy = b.getY() - cy;
+            double dz = b.getZ() - cz;
+            depth[i] = dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    /**
+     * Insertion sort of order in place, far first and equal depths in list order; false (order
+     * left unusable) once placing the first i bodies took more than shiftsPerBody * (i +
+     * SHIFT_SLACK_BODIES) moves. Disorder is usually spread over the list, so falling behind
+     * early means the whole pass would blow its budget.
+     */
+    private boolean insertionPass(int shiftsPerBody) {
+        final int[] order = this.order;
+        final double[] ordered = this.ordered;
+        for (int k = 0; k < n; k++) ordered[k] = depth[order[k]];
+
+        long budget = (long) shiftsPerBody * SHIFT_SLACK_BODIES;
+        for (int i = 1; i < n; i++) {
+            budget += shiftsPerBody;
+            int key = order[i];
+            double keyDepth = ordered[i];
+            int j = i - 1;
+            while (j >= 0 && (ordered[j] < keyDepth || (ordered[j] == keyDepth && order[j] > key))) {
+                if (--budget < 0) return false;
+                order[j + 1] = order[j];
+                ordered[j + 1] = ordered[j];
+                j--;
+            }
+            order[j + 1] = key;
+            ordered[j + 1] = keyDepth;
+        }
+        return true;
+    }
+
+    /**
+     * Stable LSD radix sort of the list on the float bits of the depths, far first. Non-negative
+     * floats order like their bits, so 0x7FFFFFFF - bits sorts ascending far to near in two
+     * 16-bit passes; a pass where every key has the same digit is skipped. The list index rides
+     * in the low word, keeping equal keys in list order, and one array moves per pass: three
+     * 11-bit passes over int keys with the indices permuted separately scatter more than their
+     * smaller histograms save, and measured slower.
+     */
+    private void radixSort() {
+        if (count == null) count = new int[RADIX];
+        final int[] count = this.count;
+        long[] src = keys, dst = keysTmp;
+        for (int i = 0; i < n; i++) {
+            src[i] = ((long) (0x7FFFFFFF - Float.floatToRawIntBits((float) depth[i])) << 32) | i;
+        }
+
+        for (int shift = 32; shift < 64; shift += RADIX_BITS) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) count[(int) (src[i] >>> shift) & (RADIX - 1)]++;
+            if (n > 0 && count[(int) (src[0] >>> shift) & (RADIX - 1)] == n) continue;
+
+            int sum = 0;
+            for (int d = 0; d < RADIX; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long k = src[i];
+                dst[count[(int) (k >>> shift) & (RADIX - 1)]++] = k;
+            }
+
+            long[] t = src; src = dst; dst = t;
+        }
+
+        finish(src);
+    }
+
+    /**
+     * Takes the order from the sorted keys. Depths that differ only below float precision got
+     * equal keys (in list order), so each such run is insertion sorted by exact depth; the runs
+     * are short, and the rest is one sequential read.
+     */
+    private void finish(long[] sorted) {
+        final int[] order = this.order;
+        final double[] depth = this.depth;
+        int runStart = 0;
+        for (int i = 0; i < n; i++) {
+            long k = sorted[i];
+            order[i] = (int) k;
+            if (i > runStart && (k >>> 32) != (sorted[i - 1] >>> 32)) runStart = i;
+            // Within a run: far first, ties stay in list order
+            int key = (int) k;
+            double keyDepth = depth[key];
+            int j = i - 1;
+            while (j >= runStart && depth[order[j]] < keyDepth) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = key;
+        }
+    }
+
+    /**
+     * radixSort() on the pool, for long lists: the list is cut into chunks and every pass counts
+     * each chunk's 11-bit digits in parallel, scans the counts digit-major (chunk order within a
+     * digit, so the pass stays stable) and scatters the chunks in parallel. A pass where every key
+     * has the same digit is skipped, as in radixSort().
+     */
+    private void radixSort(ForkJoinPool pool, int chunks) {
+        if (chunkCount.length < chunks * CHUNK_RADIX) chunkCount = new int[chunks * CHUNK_RADIX];
+        final int[] count = chunkCount;
+        long[] src = keys, dst = keysTmp;
+
+        for (int shift = 32; shift < 64; shift += CHUNK_BITS) {
+            pool.invoke(new ChunkTask(this, shift == 32 ? ChunkTask.FILL : ChunkTask.COUNT,
+                    shift, src, dst, chunks, 0, chunks));
+
+            int first = (int) (src[0] >>> shift) & (CHUNK_RADIX - 1);
+            int firstTotal = 0;
+            for (int c = 0; c < chunks; c++) firstTotal += count[c * CHUNK_RADIX + first];
+            if (firstTotal == n) continue;
+
+            int sum = 0;
+            for (int d = 0; d < CHUNK_RADIX; d++) {
+                for (int c = d; c < chunks * CHUNK_RADIX; c += CHUNK_RADIX) {
+                    int v = count[c];
+                    count[c] = sum;
+                    sum += v;
+                }
+            }
+            pool.invoke(new ChunkTask(this, ChunkTask.SCATTER, shift, src, dst, chunks, 0, chunks));
+
+            long[] t = src; src = dst; dst = t;
+        }
+
+        finish(src);
+    }
+
+    /** One chunk's share of a parallel phase (depths, or a radixSort(pool, chunks) step). */
+    private void chunk(int phase, int shift, long[] src, long[] dst, int chunks, int c) {
+        final int from = (int) ((long) n * c / chunks), to = (int) ((long) n * (c + 1) / chunks);
+        if (phase == ChunkTask.DEPTH) {
+            depths(from, to);
+            return;
+        }
+
+        final int[] count = chunkCount;
+        final int base = c * CHUNK_RADIX;
+        if (phase == ChunkTask.SCATTER) {
+            for (int i = from; i < to; i++) {
+                long k = src[i];
+                dst[count[base + ((int) (k >>> shift) & (CHUNK_RADIX - 1))]++] = k;
+            }
+            return;
+        }
+
+        Arrays.fill(count, base, base + CHUNK_RADIX, 0);
+        if (phase == ChunkTask.FILL) {
+            for (int i = from; i < to; i++) {
+                src[i] = ((long) (0x7FFFFFFF - Float.floatToRawIntBits((float) depth[i])) << 32) | i;
+            }
+        }
+        for (int i = from; i < to; i++) count[base + ((int) (src[i] >>> shift) & (CHUNK_RADIX - 1))]++;
+    }
+
+    /** Splits a chunk range in halves down to single chunks. */
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        static final int DEPTH = 0, FILL = 1, COUNT = 2, SCATTER = 3; // FILL: build the keys, then count
+
+        private final DepthOrder order;
+        private final int phase, shift;
+        private final long[] src, dst;
+        private final int chunks, from, to;
+
+        ChunkTask(DepthOrder order, int phase, int shift, long[] src, long[] dst, int chunks, int from, int to) {
+            this.order = order;
+            this.phase = phase;
+            this.shift = shift;
+            this.src = src;
+            this.dst = dst;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                order.chunk(phase, shift, src, dst, chunks, from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new ChunkTask(order, phase, shift, src, dst, chunks, from, mid),
+                    new ChunkTask(order, phase, shift, src, dst, chunks, mid, to)
+            );
+        }
+    }
+
+    private void grow(int capacity) {
+        bodies = Arrays.copyOf(bodies, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        order = Arrays.copyOf(order, capacity);
+        ordered = Arrays.copyOf(ordered, capacity);
+        keys = new long[capacity];
+        keysTmp = new long[capacity];
+    }
+}
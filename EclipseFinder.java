@@ -0,0 +1,441 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Predicts eclipses, transits and occultations between the star, planets and moons of an
+ * OrbitalStateStore over a time range, without touching the live system: orbits are read from
+ * OrbitalStateStore.snapshotOrbits as of construction, so handoffs and burns the simulation
+ * thread makes meanwhile are not seen half done.
+ *
+ * Every event is one geometry: a receiver inside the penumbral cone that an occluder casts from
+ * a source (the sphere-sphere shadow cone Lighting and RingSystem.shadowFactor shade with):
+ * - eclipses: source is the star, receiver is a planet or moon (any point of its disk counts),
+ *   occluder another body of the same planetary system
+ * - transits and occultations: source and occluder are any two bodies, the receiver is an
+ *   observer's center; a body seen inside the source's disk transits it, a larger one occults it
+ * Cross-system shadows (Venus on Earth) are penumbral grazes only; seen from a planet they are
+ * transits, so findTransits covers them.
+ *
+ * Each (source, occluder, receiver) triple is scanned on its own with coarse-to-fine bracketing:
+ * f = distance of the receiver from the penumbral cone (negative inside) changes at most as fast
+ * as a bound from the bodies' maximum speeds (see rateBound), so stepping by |f| / rate cannot
+ * step over a contact. Far from alignment the steps are long (a distant moon pair is checked a
+ * few times per orbit, not per period of its fastest member); each sign change is bisected to
+ * the contact times and the maximum (the least f) is found by golden-section search in
+ * between. Only events shorter than the minimum step (shortest relevant period /
+ * MIN_STEP_FRACTION) can be missed. Triples run in parallel on a ForkJoinPool.
+ *
+ * Times are in nanoseconds; events overlapping the range ends are clipped to them.
+ */
+public final class EclipseFinder {
+
+    // --- Tunables ---
+    /** Contact times and maxima are refined to this bracket (seconds). */
+    public static double REFINE_TOLERANCE_SECONDS = 1.0;
+    /** Shortest scan step: the triple's shortest relevant period divided by this. */
+    public static int MIN_STEP_FRACTION = 2048;
+    /** Margin on the rate bound (1 = exactly the bound). */
+    public static double RATE_SAFETY = 1.25;
+    /** Smallest number of triples handed to one fork-join task. */
+    public static int PARALLEL_GRAIN = 4;
+
+    private static final double INV_PHI = (java.lang.Math.sqrt(5.0) - 1.0) / 2.0;
+
+    public enum Kind {
+        /** The receiver passes through the occluder's shadow (source: the star). */
+        ECLIPSE,
+        /** Seen from the observer, the occluder crosses the larger disk of the source. */
+        TRANSIT,
+        /** Seen from the observer, the occluder hides (part of) the smaller source. */
+        OCCULTATION
+    }
+
+    public enum Type {
+        /** Only part of the source is covered anywhere on the receiver. */
+        PARTIAL,
+        /** The occluder's disk lies wholly inside the source's (annular eclipse, full transit). */
+        ANNULAR,
+        /** The source is wholly covered (total eclipse, full occultation). */
+        TOTAL
+    }
+
+    /** One eclipse, transit or occultation, at its deepest type. */
+    public static final class Event {
+        private final OrbitalStateStore store;
+        private final Kind kind;
+        private final Type type;
+        private final int source, occluder, receiver;
+        private final long startNanos, maximumNanos, endNanos;
+        private final double depth;
+
+        Event(OrbitalStateStore store, Kind kind, Type type, int source, int occluder, int receiver,
+              long startNanos, long maximumNanos, long endNanos, double depth) {
+            this.store = store;
+            this.kind = kind;
+            this.type = type;
+            this.source = source;
+            this.occluder = occluder;
+            this.receiver = receiver;
+            this.startNanos = startNanos;
+            this.maximumNanos = maximumNanos;
+            this.endNanos = endNanos;
+            this.depth = depth;
+        }
+
+        public Kind getKind() { return kind; }
+        public Type getType() { return type; }
+        public int getSourceSlot() { return source; }
+        public int getOccluderSlot() { return occluder; }
+        /** The shadowed body (ECLIPSE) or the observer. */
+        public int getReceiverSlot() { return receiver; }
+        public Body getSource() { return store.getBody(source); }
+        public Body getOccluder() { return store.getBody(occluder); }
+        public Body getReceiver() { return store.getBody(receiver); }
+        public long getStartNanos() { return startNanos; }
+        public long getMaximumNanos() { return maximumNanos; }
+        public long getEndNanos() { return endNanos; }
+        /** 0 at a grazing contact, 1 when the cone's axis passes through the receiver's center. */
+        public double getDepth() { return depth; }
+
+        @Override
+        public String toString() {
+            String what = (kind == Kind.ECLIPSE)
+                    ? getOccluder().getName() + " shadows " + getReceiver().getName()
+                    : getOccluder().getName() + ((kind == Kind.TRANSIT) ? " transits " : " occults ") + getSource().getName()
+                      + " from " + getReceiver().getName();
+            return type.name().toLowerCase() + " " + kind.name().toLowerCase() + ": " + what
+                    + ", t=" + startNanos + ".." + endNanos + " ns, max " + maximumNanos + " depth " + depth;
+        }
+    }
+
+    private final OrbitalStateStore store; // orbits as of construction (snapshotOrbits)
+    private final int[] slots;          // bodies taking part (star, planets, moons)
+    private final double[] maxSpeed;    // per store slot, relative to the root (units/s)
+    private final double[] radius;      // per store slot (units)
+
+    // Stats of the last search
+    private int triples;
+    private long evaluations;
+
+    /** The star, planets and moons of the store (asteroids are left out). */
+    public EclipseFinder(OrbitalStateStore store) {
+        this(store, nonAsteroidSlots(store));
+    }
+
+    public EclipseFinder(OrbitalStateStore store, int[] slots) {
+        this.store = store = store.snapshotOrbits();
+        this.slots = slots.clone();
+
+        int n = store.size();
+        maxSpeed = new double[n];
+        radius = new double[n];
+        for (int i = 0; i < n; i++) { // slot order: parents first
+            radius[i] = store.getBody(i).getRadius();
+            int p = store.getParentIndex(i);
+            if (p < 0) continue;
+            double v = store.getMaxOrbitalSpeed(i);
+            maxSpeed[i] = maxSpeed[p] + v;
+        }
+    }
+
+    private static int[] nonAsteroidSlots(OrbitalStateStore store) {
+        int k = 0;
+        int[] s = new int[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            if (!(store.getBody(i) instanceof Asteroid)) s[k++] = i;
+        }
+        return Arrays.copyOf(s, k);
+    }
+
+    public int getTriples() { return triples; }
+    /** Cone evaluations of the last search (scan, bisection and golden-section together). */
+    public long getEvaluations() { return evaluations; }
+
+    /** {@link #findEclipses(long, long, ForkJoinPool)} on the common pool. */
+    public List<Event> findEclipses(long fromNanos, long toNanos) {
+        return findEclipses(fromNanos, toNanos, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Shadows of planets and moons on the other bodies of their own planetary system (moon on
+     * planet, planet on moon, moon on moon) within [fromNanos, toNanos], sorted by start.
+     */
+    public List<Event> findEclipses(long fromNanos, long toNanos, ForkJoinPool pool) {
+        List<int[]> list = new ArrayList<>();
+        for (int o : slots) {
+            if (o == OrbitalStateStore.ROOT) continue;
+            for (int r : slots) {
+                if (r == o || r == OrbitalStateStore.ROOT) continue;
+                int c = store.commonAncestor(o, r);
+                if (c >= 0 && c != OrbitalStateStore.ROOT) list.add(new int[] { OrbitalStateStore.ROOT, o, r });
+            }
+        }
+        return search(list, fromNanos, toNanos, true, pool);
+    }
+
+    /** {@link #findTransits(int, long, long, ForkJoinPool)} on the common pool. */
+    public List<Event> findTransits(int observer, long fromNanos, long toNanos) {
+        return findTransits(observer, fromNanos, toNanos, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Transits and occultations between any two bodies as seen from the observer's center
+     * within [fromNanos, toNanos], sorted by start.
+     */
+    public List<Event> findTransits(int observer, long fromNanos, long toNanos, ForkJoinPool pool) {
+        if (observer < 0 || observer >= store.size()) throw new IllegalArgumentException("Slot " + observer + " is not in the store");
+        List<int[]> list = new ArrayList<>();
+        for (int l : slots) {
+            if (l == observer) continue;
+            for (int o : slots) {
+                if (o != l && o != observer) list.add(new int[] { l, o, observer });
+            }
+        }
+        return search(list, fromNanos, toNanos, false, pool);
+    }
+
+    private List<Event> search(List<int[]> list, long fromNanos, long toNanos, boolean eclipses, ForkJoinPool pool) {
+        if (toNanos < fromNanos) throw new IllegalArgumentException("Empty time range");
+        int[][] t = list.toArray(new int[0][]);
+        triples = t.length;
+
+        // One slot per triple, filled in place by the tasks
+        List<List<Event>> found = new ArrayList<>(Collections.nCopies(t.length, null));
+        long[] counts = new long[t.length];
+        ScanTask root = new ScanTask(this, t, eclipses, fromNanos, toNanos, found, counts, 0, t.length);
+        if (t.length <= PARALLEL_GRAIN) root.compute(); else pool.invoke(root);
+
+        evaluations = 0;
+        for (long c : counts) evaluations += c;
+        List<Event> out = new ArrayList<>();
+        for (List<Event> l : found) if (l != null) out.addAll(l);
+        out.sort(Comparator.comparingLong(Event::getStartNanos));
+        return out;
+    }
+
+    /** Per-scan cone evaluator: the triple, its frame and the last evaluation's geometry. */
+    private final class Cone {
+        final int source, occluder, receiver, ancestor;
+        final double receiverRadius;
+        final double[] ecc = new double[3], off = new double[3];
+        final double[] pl = new double[3], po = new double[3], pr = new double[3];
+        long evaluations;
+
+        // Geometry of the last evaluation
+        double u;        // |receiver - occluder|
+        double d;        // |occluder - source|
+        double s;        // receiver's distance behind the occluder along the axis
+        double p;        // receiver's distance from the axis
+        double penumbra; // cone radius at s
+        double umbra;    // umbral radius at s (negative past the tip: antumbra)
+
+        Cone(int source, int occluder, int receiver, double receiverRadius) {
+            this.source = source;
+            this.occluder = occluder;
+            this.receiver = receiver;
+            this.receiverRadius = receiverRadius;
+            this.ancestor = store.commonAncestor(store.commonAncestor(source, occluder), receiver);
+        }
+
+        /** Distance of the receiver's nearest point from the penumbral cone; <= 0 inside. */
+        double eval(long tNanos) {
+            evaluations++;
+            SimulationTime t = SimulationTime.ofNanos(tNanos);
+            store.chainOffset(source, ancestor, t, ecc, off, pl);
+            store.chainOffset(occluder, ancestor, t, ecc, off, po);
+            store.chainOffset(receiver, ancestor, t, ecc, off, pr);
+
+            double ax = po[0] - pl[0], ay = po[1] - pl[1], az = po[2] - pl[2];
+            double ux = pr[0] - po[0], uy = pr[1] - po[1], uz = pr[2] - po[2];
+            d = java.lang.Math.sqrt(ax * ax + ay * ay + az * az);
+            u = java.lang.Math.sqrt(ux * ux + uy * uy + uz * uz);
+            double rl = radius[source], ro = radius[occluder];
+
+            s = (d > 0.0) ? (ux * ax + uy * ay + uz * az) / d : 0.0;
+            if (s <= 0.0) {
+                // In front of the occluder: distance to its sphere (meets the cone at s = 0)
+                p = u;
+                penumbra = ro;
+                umbra = ro;
+                return u - ro - receiverRadius;
+            }
+            p = java.lang.Math.sqrt(java.lang.Math.max(0.0, u * u - s * s));
+
+            // Cone half-angles: penumbral tangents cross between the spheres, umbral ones don't
+            double sinP = java.lang.Math.min(0.999999, (rl + ro) / d);
+            double sinU = java.lang.Math.max(-0.999999, java.lang.Math.min(0.999999, (rl - ro) / d));
+            double cosP = java.lang.Math.sqrt(1.0 - sinP * sinP), cosU = java.lang.Math.sqrt(1.0 - sinU * sinU);
+            penumbra = ro / cosP + s * sinP / cosP;
+            umbra = ro / cosU - s * sinU / cosU;
+            return p - penumbra - receiverRadius;
+        }
+    }
+
+    /**
+     * Largest |df/dt| within horizon seconds of the last evaluation: the receiver moves off the
+     * axis at most at vRO, the axis turns at most at vOL / d, and the cone widens with s and d.
+     */
+    private double rateBound(Cone c, double vRO, double vOL, double horizon) {
+        double u = c.u + vRO * horizon;
+        double dLow = java.lang.Math.max(c.d - vOL * horizon, radius[c.source] + radius[c.occluder]);
+        dLow = java.lang.Math.max(dLow, 1e-9);
+        double turn = vOL / dLow;
+        double k = (radius[c.source] + radius[c.occluder]) / dLow;
+        double dp = vRO + 2.0 * u * turn;
+        double ds = vRO + u * turn;
+        double dk = k * vOL / dLow;
+        return RATE_SAFETY * (dp + k * ds + u * dk);
+    }
+
+    /** Scans one triple over [fromNanos, toNanos]. */
+    private List<Event> scan(int[] triple, boolean eclipse, long fromNanos, long toNanos, long[] count) {
+        int l = triple[0], o = triple[1], r = triple[2];
+        Cone c = new Cone(l, o, r, eclipse ? radius[r] : 0.0);
+
+        double shortest = java.lang.Math.min(chainPeriod(l, c.ancestor),
+                java.lang.Math.min(chainPeriod(o, c.ancestor), chainPeriod(r, c.ancestor)));
+        double span = (toNanos - fromNanos) / 1e9;
+        double minStep = java.lang.Math.min(span, java.lang.Math.max(REFINE_TOLERANCE_SECONDS, shortest / MIN_STEP_FRACTION));
+        // Relative speeds only count motion below each pair's own common ancestor
+        int ro = store.commonAncestor(r, o), ol = store.commonAncestor(o, l);
+        double vRO = chainSpeed(r, ro) + chainSpeed(o, ro);
+        double vOL = chainSpeed(o, ol) + chainSpeed(l, ol);
+
+        List<Event> out = new ArrayList<>();
+        long t = fromNanos;
+        double f = c.eval(t);
+        long start = (f <= 0.0) ? fromNanos : -1L;
+        while (t < toNanos) {
+            // A bound only holds within its horizon, and a shorter horizon gives a tighter one
+            // (close pairs can't come as close), so take the best of a few halvings
+            double dt = 0.0;
+            for (double h = span; h >= minStep && h > dt; h *= 0.5) {
+                double rate = rateBound(c, vRO, vOL, h);
+                dt = java.lang.Math.max(dt, (rate > 0.0) ? java.lang.Math.min(h, java.lang.Math.abs(f) / rate) : h);
+            }
+            dt = java.lang.Math.max(minStep, dt);
+            long next = (long) java.lang.Math.min((double) toNanos, t + dt * 1e9);
+            if (next <= t) next = toNanos;
+            double fn = c.eval(next);
+
+            if (start < 0 && fn <= 0.0) {
+                start = contact(c, t, next);
+                c.eval(next); // the rate bound reads the geometry at next
+            } else if (start >= 0 && fn > 0.0) {
+                long end = contact(c, next, t);
+                out.add(event(c, eclipse, start, end));
+                start = -1L;
+                c.eval(next);
+            }
+            t = next;
+            f = fn;
+        }
+        if (start >= 0) out.add(event(c, eclipse, start, toNanos));
+        count[0] = c.evaluations;
+        return out;
+    }
+
+    /** Contact time between outside (f > 0) and inside (f <= 0), to the tolerance. */
+    private long contact(Cone c, long outside, long inside) {
+        long tol = (long) (REFINE_TOLERANCE_SECONDS * 1e9);
+        while (java.lang.Math.abs(inside - outside) > tol) {
+            long mid = outside + (inside - outside) / 2;
+            if (c.eval(mid) <= 0.0) inside = mid; else outside = mid;
+        }
+        return inside;
+    }
+
+    /** Builds the event: golden-section search for the maximum, then type and depth there. */
+    private Event event(Cone c, boolean eclipse, long start, long end) {
+        double x0 = start, x3 = end;
+        double x1 = x3 - INV_PHI * (x3 - x0);
+        double x2 = x0 + INV_PHI * (x3 - x0);
+        double f1 = c.eval((long) x1);
+        double f2 = c.eval((long) x2);
+        double tol = REFINE_TOLERANCE_SECONDS * 1e9;
+        while (x3 - x0 > tol) {
+            if (f1 < f2) {
+                x3 = x2; x2 = x1; f2 = f1;
+                x1 = x3 - INV_PHI * (x3 - x0);
+                f1 = c.eval((long) x1);
+            } else {
+                x0 = x1; x1 = x2; f1 = f2;
+                x2 = x0 + INV_PHI * (x3 - x0);
+                f2 = c.eval((long) x2);
+            }
+        }
+        long max = (long) ((f1 < f2) ? x1 : x2);
+        c.eval(max);
+
+        double reach = c.penumbra + c.receiverRadius;
+        double depth = (reach > 0.0) ? java.lang.Math.max(0.0, java.lang.Math.min(1.0, 1.0 - c.p / reach)) : 0.0;
+        Type type = Type.PARTIAL;
+        if (c.umbra > 0.0 && c.p <= c.umbra + c.receiverRadius) type = Type.TOTAL;
+        else if (c.umbra < 0.0 && c.p <= -c.umbra + c.receiverRadius) type = Type.ANNULAR;
+
+        Kind kind = eclipse ? Kind.ECLIPSE : (c.umbra < 0.0) ? Kind.TRANSIT : Kind.OCCULTATION;
+        return new Event(store, kind, type, c.source, c.occluder, c.receiver, start, max, end, depth);
+    }
+
+    /** Shortest period on i's parent chain below the ancestor (infinite for none). */
+    private double chainPeriod(int i, int ancestor) {
+        double shortest = Double.POSITIVE_INFINITY;
+        for (int p = store.getParentIndex(i); i != ancestor && p >= 0; i = p, p = store.getParentIndex(i)) {
+            shortest = java.lang.Math.min(shortest, store.period[i]);
+        }
+        return shortest;
+    }
+
+    /** Largest speed of i relative to the ancestor (or to its root). */
+    private double chainSpeed(int i, int ancestor) {
+        return maxSpeed[i] - ((ancestor >= 0) ? maxSpeed[ancestor] : 0.0);
+    }
+
+    /** Splits the triples in halves until they are below the grain size. */
+    private static final class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final EclipseFinder f;
+        private final int[][] triples;
+        private final boolean eclipses;
+        private final long fromNanos, toNanos;
+        private final List<List<Event>> found;
+        private final long[] counts;
+        private final int from, to;
+
+        ScanTask(EclipseFinder f, int[][] triples, boolean eclipses, long fromNanos, long toNanos,
+                 List<List<Event>> found, long[] counts, int from, int to) {
+            this.f = f;
+            this.triples = triples;
+            this.eclipses = eclipses;
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+            this.found = found;
+            this.counts = counts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                long[] count = new long[1];
+                for (int k = from; k < to; k++) {
+                    found.set(k, f.scan(triples[k], eclipses, fromNanos, toNanos, count));
+                    counts[k] = count[0];
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new ScanTask(f, triples, eclipses, fromNanos, toNanos, found, counts, from, mid),
+                    new ScanTask(f, triples, eclipses, fromNanos, toNanos, found, counts, mid, to)
+            );
+        }
+    }
+}
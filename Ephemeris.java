@@ -0,0 +1,272 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chebyshev ephemeris layered over an OrbitalStateStore.
+ *
+ * Each body's parent-relative offset is split into segments (period / segmentsPerOrbit long)
+ * and every segment is fitted by a Chebyshev series the first time it is needed. Answering
+ * position(t) is then a Clenshaw evaluation instead of a Kepler solve.
+ *
+ * - Segments are generated lazily and kept in an LRU cache bounded by a memory cap.
+ * - Keplerian orbits repeat, so segment indices are taken modulo the orbit: one revolution's
+ *   worth of segments serves every later revolution (time warp and scrubbing hit the cache).
+ *   A perturbed trajectory source would fit absolute time instead of orbit phase.
+ * - Once the cache is full, a body only generates new segments if its previous segment paid
+ *   for itself (enough hits); otherwise it falls back to the direct solve, so a working set
+ *   larger than the cap degrades to plain Kepler instead of thrashing.
+ */
+public final class Ephemeris {
+
+    // --- Tunables ---
+    /** Chebyshev degree per axis. */
+    public static int DEGREE = 12;
+    /** Segments per revolution for a circular orbit (scaled up with eccentricity). */
+    public static int SEGMENTS_PER_ORBIT = 16;
+    /** Upper bound on segments per revolution (very high-e orbits). */
+    public static int MAX_SEGMENTS_PER_ORBIT = 4096;
+    /** Default memory cap for cached segments. */
+    public static long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final class Segment {
+        final int slot;
+        final int index;
+        final double mid;
+        final double invHalf;
+        final double[] c; // x, y, z coefficient runs; c0 pre-halved
+
+        Segment(int slot, int index, double mid, double invHalf, double[] c) {
+            this.slot = slot;
+            this.index = index;
+            this.mid = mid;
+            this.invHalf = invHalf;
+            this.c = c;
+        }
+    }
+
+    private final OrbitalStateStore store;
+    private final int n;            // coefficients per axis (degree + 1)
+    private final int maxSegments;
+
+    // Chebyshev nodes on [-1, 1] and the DCT table cos(π j (k + ½) / n)
+    private final double[] nodeU;
+    private final double[] dct;
+
+    // Per slot
+    private final int[] segmentsPerOrbit;
+    private final double[] segmentLength;
+    private final Segment[] current;        // fast path, no lock
+    private final int[] hitsSinceGeneration;
+
+    private final LinkedHashMap<Long, Segment> lru;
+
+    // Stats
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder direct = new LongAdder();
+    private long evictions = 0L;
+
+    public Ephemeris(OrbitalStateStore store, long maxBytes) {
+        this.store = store;
+        this.n = DEGREE + 1;
+
+        long segmentBytes = 24L * n + 112L; // coefficients + array/object/map-entry overhead
+        this.maxSegments = (int) java.lang.Math.max(1L, java.lang.Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes));
+
+        this.nodeU = new double[n];
+        this.dct = new double[n * n];
+        for (int k = 0; k < n; k++) {
+            nodeU[k] = java.lang.Math.cos(java.lang.Math.PI * (k + 0.5) / n);
+            for (int j = 0; j < n; j++) {
+                dct[j * n + k] = java.lang.Math.cos(java.lang.Math.PI * j * (k + 0.5) / n);
+            }
+        }
+
+        int count = store.size();
+        this.segmentsPerOrbit = new int[count];
+        this.segmentLength = new double[count];
+        this.current = new Segment[count];
+        this.hitsSinceGeneration = new int[count];
+
+        for (int i = 0; i < count; i++) layout(i);
+
+        this.lru = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Segment> eldest) {
+                if (size() <= maxSegments) return false;
+                Segment old = eldest.getValue();
+                if (current[old.slot] == old) current[old.slot] = null;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    public OrbitalStateStore getStore() { return store; }
+
+    public long getHits() { return hits.sum(); }
+    public long getGenerated() { return generated.sum(); }
+    public long getDirectSolves() { return direct.sum(); }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized int getCachedSegments() { return lru.size(); }
+
+    /** Drops every cached segment (call after editing elements in place). */
+    public synchronized void clear() {
+        lru.clear();
+        java.util.Arrays.fill(current, null);
+        java.util.Arrays.fill(hitsSinceGeneration, 0);
+    }
+
+    /** Segment table of slot i from its current elements; open orbits get none (always solved). */
+    private void layout(int i) {
+        if (!(store.period[i] < Double.POSITIVE_INFINITY)) {
+            segmentsPerOrbit[i] = 0;
+            segmentLength[i] = Double.POSITIVE_INFINITY;
+            return;
+        }
+        double e = store.e[i];
+        // Periapsis passage is faster by ~(1+e)^2 / (1-e^2)^1.5; spend segments accordingly
+        double scale = java.lang.Math.pow(1.0 - java.lang.Math.min(e, 0.999), -1.5);
+        int segs = (int) java.lang.Math.ceil(SEGMENTS_PER_ORBIT * scale);
+        segs = java.lang.Math.max(1, java.lang.Math.min(MAX_SEGMENTS_PER_ORBIT, segs));
+        segmentsPerOrbit[i] = segs;
+        segmentLength[i] = store.period[i] / segs;
+    }
+
+    /**
+     * Drops slot i's segments and re-plans them from its elements (call after they changed,
+     * e.g. an SOI handoff). Must not race a propagation pass.
+     */
+    public synchronized void invalidate(int i) {
+        for (int index = 0; index < segmentsPerOrbit[i]; index++) lru.remove(key(i, index));
+        current[i] = null;
+        hitsSinceGeneration[i] = 0;
+        layout(i);
+    }
+
+    /** Called by OrbitalStateStore.propagateRange with the per-range tallies. */
+    void recordStats(int hitCount, int directCount) {
+        hits.add(hitCount);
+        direct.add(directCount);
+    }
+
+    /**
+     * Parent-relative offset of slot i at tSeconds from the cache.
+     *
+     * @return false if the caller should solve Kepler directly instead
+     */
+    public boolean offset(int i, double tSeconds, double[] out) {
+        if (segmentsPerOrbit[i] == 0) return false;
+        double period = store.period[i];
+        double tOrbit = tSeconds % period;
+        if (tOrbit < 0.0) tOrbit += period;
+
+        int index = (int) (tOrbit / segmentLength[i]);
+        if (index >= segmentsPerOrbit[i]) index = segmentsPerOrbit[i] - 1;
+
+        Segment sg = current[i];
+        if (sg == null || sg.index != index) {
+            sg = lookup(i, index);
+            if (sg == null) return false;
+            current[i] = sg;
+        } else {
+            hitsSinceGeneration[i]++;
+        }
+
+        evaluate(sg, tOrbit, out);
+        return true;
+    }
+
+    /**
+     * Cache key of segment index of slot i. (slot << 32 | index) alone hashes to slot ^ index,
+     * which piles thousands of bodies into the same buckets; the odd multiplier is a bijection
+     * that spreads them.
+     */
+    private static Long key(int i, int index) {
+        return (((long) i << 32) | (index & 0xffffffffL)) * 0x9E3779B97F4A7C15L;
+    }
+
+    private Segment lookup(int i, int index) {
+        Long key = key(i, index);
+
+        synchronized (this) {
+            Segment sg = lru.get(key);
+            if (sg != null) return sg;
+
+            // At capacity, only bodies whose last segment was reused enough may evict others
+            if (lru.size() >= maxSegments && hitsSinceGeneration[i] < n) return null;
+        }
+
+        // Fit outside the lock so parallel chunks don't serialize on generation
+        Segment sg = generate(i, index);
+        generated.increment();
+
+        synchronized (this) {
+            Segment raced = lru.putIfAbsent(key, sg);
+            hitsSinceGeneration[i] = 0;
+            return (raced != null) ? raced : sg;
+        }
+    }
+
+    private Segment generate(int i, int index) {
+        double len = segmentLength[i];
+        double half = 0.5 * len;
+        double mid = (index + 0.5) * len;
+
+        double[] ecc = new double[3];
+        double[] off = new double[3];
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+
+        for (int k = 0; k < n; k++) {
+            store.computeOffset(i, mid + half * nodeU[k], ecc, off);
+            fx[k] = off[0];
+            fy[k] = off[1];
+            fz[k] = off[2];
+        }
+
+        double[] c = new double[3 * n];
+        double norm = 2.0 / n;
+        for (int j = 0; j < n; j++) {
+            double sx = 0.0, sy = 0.0, sz = 0.0;
+            int row = j * n;
+            for (int k = 0; k < n; k++) {
+                double w = dct[row + k];
+                sx += fx[k] * w;
+                sy += fy[k] * w;
+                sz += fz[k] * w;
+            }
+            c[j]         = norm * sx;
+            c[n + j]     = norm * sy;
+            c[2 * n + j] = norm * sz;
+        }
+        c[0] *= 0.5;
+        c[n] *= 0.5;
+        c[2 * n] *= 0.5;
+
+        return new Segment(i, index, mid, 1.0 / half, c);
+    }
+
+    /** Clenshaw recurrence on all three axes at once. */
+    private void evaluate(Segment sg, double tOrbit, double[] out) {
+        double u = (tOrbit - sg.mid) * sg.invHalf;
+        double u2 = 2.0 * u;
+        double[] c = sg.c;
+        int n = this.n;
+
+        double bx1 = 0.0, bx2 = 0.0;
+        double by1 = 0.0, by2 = 0.0;
+        double bz1 = 0.0, bz2 = 0.0;
+        for (int j = n - 1; j >= 1; j--) {
+            double bx = u2 * bx1 - bx2 + c[j];
+            double by = u2 * by1 - by2 + c[n + j];
+            double bz = u2 * bz1 - bz2 + c[2 * n + j];
+            bx2 = bx1; bx1 = bx;
+            by2 = by1; by1 = by;
+            bz2 = bz1; bz1 = bz;
+        }
+        out[0] = u * bx1 - bx2 + c[0];
+        out[1] = u * by1 - by2 + c[n];
+        out[2] = u * bz1 - bz2 + c[2 * n];
+    }
+}
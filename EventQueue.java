@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of event times (nanoseconds) over small integer ids.
+ *
+ * Each id 0..capacity-1 is queued at most once; {@link #set} inserts it or moves it to a new
+ * time in O(log n), which is what the simulation-side schedulers need when one body's next
+ * event is pulled forward (a new burn, a handoff) without touching the others. Ties pop in
+ * no particular order. Not thread-safe.
+ */
+final class EventQueue {
+
+    private final int[] heap;      // ids, heap-ordered by time
+    private final long[] time;     // per id
+    private final int[] position;  // per id: index in heap, -1 when not queued
+    private int size;
+
+    EventQueue(int capacity) {
+        heap = new int[capacity];
+        time = new long[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+    boolean contains(int id) { return position[id] >= 0; }
+
+    /** Earliest queued id (queue must not be empty). */
+    int peekId() { return heap[0]; }
+
+    /** Earliest queued time, Long.MAX_VALUE when empty. */
+    long peekTime() { return (size > 0) ? time[heap[0]] : Long.MAX_VALUE; }
+
+    /** Time id is queued at (only meaningful while it is queued). */
+    long timeOf(int id) { return time[id]; }
+
+    /** Queues id at t, or moves it there if already queued. */
+    void set(int id, long t) {
+        int at = position[id];
+        if (at < 0) {
+            at = size++;
+            heap[at] = id;
+            position[id] = at;
+            time[id] = t;
+            up(at);
+            return;
+        }
+        long old = time[id];
+        time[id] = t;
+        if (t < old) up(at); else down(at);
+    }
+
+    /** Removes and returns the earliest id (queue must not be empty). */
+    int poll() {
+        int id = heap[0];
+        removeAt(0);
+        return id;
+    }
+
+    /** Unqueues id if it is queued. */
+    void remove(int id) {
+        int at = position[id];
+        if (at >= 0) removeAt(at);
+    }
+
+    void clear() {
+        for (int k = 0; k < size; k++) position[heap[k]] = -1;
+        size = 0;
+    }
+
+    private void removeAt(int at) {
+        int id = heap[at];
+        position[id] = -1;
+        int last = heap[--size];
+        if (at == size) return;
+        heap[at] = last;
+        position[last] = at;
+        up(at);
+        down(position[last]);
+    }
+
+    private void up(int at) {
+        int id = heap[at];
+        long t = time[id];
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            int pid = heap[parent];
+            if (time[pid] <= t) break;
+            heap[at] = pid;
+            position[pid] = at;
+            at = parent;
+        }
+        heap[at] = id;
+        position[id] = at;
+    }
+
+    private void down(int at) {
+        int id = heap[at];
+        long t = time[id];
+        int half = size >>> 1;
+        while (at < half) {
+            int child = 2 * at + 1;
+            int right = child + 1;
+            if (right < size && time[heap[right]] < time[heap[child]]) child = right;
+            int cid = heap[child];
+            if (t <= time[cid]) break;
+            heap[at] = cid;
+            position[cid] = at;
+            at = child;
+        }
+        heap[at] = id;
+        position[id] = at;
+    }
+}
@@ -0,0 +1,299 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Direct pixel access to an int-packed RGB image, with our own blend routines.
+ *
+ * Wraps the int[] behind a TYPE_INT_RGB/ARGB BufferedImage (its DataBufferInt), so point-heavy
+ * drawing (stars, ring particles, sub-pixel bodies) is one array write per pixel instead of a
+ * Graphics2D fillRect with a composite and color change around it. Java2D can keep drawing into
+ * the same image (text, HUD); both see the same pixels. Taking the array leaves the image
+ * unaccelerated, which a software back buffer never was anyway.
+ *
+ * Pixels are treated as opaque (alpha forced to 0xFF): blending is SRC_OVER against an opaque
+ * frame (src * a + dst * (1 - a)), or additive with saturation; alpha is 0..255. Every write is
+ * clipped to the clip rectangle, the whole image unless this is a {@link #clip} view.
+ *
+ * Writes land immediately. {@link TiledFrameBuffer} records them instead and rasterizes them
+ * tile by tile on a pool in {@link #flush}; code that also draws through Graphics2D over these
+ * pixels hands that drawing to {@link #afterFlush} so it stays on top either way.
+ */
+public class FrameBuffer {
+
+    static final int OPAQUE = 0xFF000000;
+
+    final int[] pixels;
+    final int width, height;  // of the whole image; rows are width ints apart
+
+    // Writes land in [clipX0, clipX1) x [clipY0, clipY1)
+    final int clipX0, clipY0, clipX1, clipY1;
+
+    /** Pixels of image, which must be TYPE_INT_RGB or TYPE_INT_ARGB. */
+    public FrameBuffer(BufferedImage image) {
+        this(pixelsOf(image), image.getWidth(), image.getHeight());
+    }
+
+    public FrameBuffer(int[] pixels, int width, int height) {
+        this(pixels, width, height, 0, 0, width, height);
+    }
+
+    FrameBuffer(int[] pixels, int width, int height, int x0, int y0, int x1, int y1) {
+        if (pixels.length < width * height) throw new IllegalArgumentException("Pixel array smaller than " + width + "x" + height);
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.clipX0 = x0;
+        this.clipY0 = y0;
+        this.clipX1 = x1;
+        this.clipY1 = y1;
+    }
+
+    private static int[] pixelsOf(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            throw new IllegalArgumentException("Need an int-packed RGB image, got type " + type);
+        }
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /** A view of the same pixels whose writes are limited to [x0, x1) x [y0, y1) (within this clip). */
+    public FrameBuffer clip(int x0, int y0, int x1, int y1) {
+        return new FrameBuffer(pixels, width, height,
+                java.lang.Math.max(x0, clipX0), java.lang.Math.max(y0, clipY0),
+                java.lang.Math.min(x1, clipX1), java.lang.Math.min(y1, clipY1));
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getClipX0() { return clipX0; }
+    public int getClipY0() { return clipY0; }
+    public int getClipX1() { return clipX1; }
+    public int getClipY1() { return clipY1; }
+
+    /** True when writes are recorded and only reach the pixels in {@link #flush}. */
+    public boolean isDeferred() { return false; }
+
+    /** Puts every write so far into the pixels (nothing to do here: they already are). */
+    public void flush() {}
+
+    /** Runs Graphics2D drawing that goes over this buffer's pixels: now, or after the next flush when deferred. */
+    public void afterFlush(Runnable draw) {
+        draw.run();
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= clipX0 && x < clipX1 && y >= clipY0 && y < clipY1;
+    }
+
+    /** Fills the clip rectangle with rgb. */
+    public void clear(int rgb) {
+        int c = OPAQUE | rgb;
+        for (int y = clipY0; y < clipY1; y++) {
+            java.util.Arrays.fill(pixels, y * width + clipX0, y * width + clipX1, c);
+        }
+    }
+
+    public void set(int x, int y, int rgb) {
+        if (contains(x, y)) pixels[y * width + x] = OPAQUE | rgb;
+    }
+
+    /** SRC_OVER of rgb at alpha (0..255). */
+    public void blend(int x, int y, int rgb, int alpha) {
+        if (alpha <= 0 || !contains(x, y)) return;
+        int i = y * width + x;
+        pixels[i] = (alpha >= 255) ? OPAQUE | rgb : over(pixels[i], rgb, alpha);
+    }
+
+    /** Adds rgb scaled by alpha (0..255), saturating per channel. */
+    public void add(int x, int y, int rgb, int alpha) {
+        if (alpha <= 0 || !contains(x, y)) return;
+        int i = y * width + x;
+        int d = pixels[i];
+        int r = java.lang.Math.min(255, ((d >> 16) & 0xFF) + div255(((rgb >> 16) & 0xFF) * alpha));
+        int g = java.lang.Math.min(255, ((d >> 8) & 0xFF) + div255(((rgb >> 8) & 0xFF) * alpha));
+        int b = java.lang.Math.min(255, (d & 0xFF) + div255((rgb & 0xFF) * alpha));
+        pixels[i] = OPAQUE | (r << 16) | (g << 8) | b;
+    }
+
+    /** Opaque horizontal span x0..x1 (inclusive) on row y. */
+    public void fillSpan(int x0, int x1, int y, int rgb) {
+        if (y < clipY0 || y >= clipY1) return;
+        int from = java.lang.Math.max(x0, clipX0);
+        int to = java.lang.Math.min(x1 + 1, clipX1);
+        if (from >= to) return;
+        java.util.Arrays.fill(pixels, y * width + from, y * width + to, OPAQUE | rgb);
+    }
+
+    /** Shades a lit sphere's disk (see ShadedSphere). */
+    void sphere(ShadedSphere s) {
+        s.prepare();
+        s.rasterize(this);
+    }
+
+    /** Line from (x0, y0) to (x1, y1), both ends included, like Graphics.drawLine (Bresenham). */
+    public void line(int x0, int y0, int x1, int y1, int rgb, int alpha) {
+        if (alpha <= 0) return;
+        // Trivially outside the clip
+        if ((x0 < clipX0 && x1 < clipX0) || (x0 >= clipX1 && x1 >= clipX1)
+                || (y0 < clipY0 && y1 < clipY0) || (y0 >= clipY1 && y1 >= clipY1)) {
+            return;
+        }
+        if (!insideImage(x0, y0, x1, y1)) {
+            int[] seg = {x0, y0, x1, y1};
+            if (!clipToImage(seg)) return;
+            x0 = seg[0]; y0 = seg[1]; x1 = seg[2]; y1 = seg[3];
+        }
+        int dx = java.lang.Math.abs(x1 - x0), sx = (x0 < x1) ? 1 : -1;
+        int dy = -java.lang.Math.abs(y1 - y0), sy = (y0 < y1) ? 1 : -1;
+        int err = dx + dy;
+
+        // Start at the first step inside the clip rather than walking up to it (a tile in the
+        // middle of a long line). The walk's position after k steps along the major axis is
+        // lineMinor(k) along the other, and err follows from the position
+        boolean xMajor = dx >= -dy;
+        int major = xMajor ? dx : -dy, minor = xMajor ? -dy : dx;
+        int kMajor = xMajor ? stepsTo(x0, sx, clipX0, clipX1) : stepsTo(y0, sy, clipY0, clipY1);
+        int mMinor = xMajor ? stepsTo(y0, sy, clipY0, clipY1) : stepsTo(x0, sx, clipX0, clipX1);
+        int k = kMajor;
+        if (mMinor > 0) {
+            if (minor == 0) return;
+            // First k with lineMinor(k) >= mMinor: 2 minor k >= (2 mMinor - 1) major, rounded up
+            long twoMinor = 2L * minor;
+            k = java.lang.Math.max(k, (int) (((2L * mMinor - 1) * major + twoMinor - 1) / twoMinor));
+        }
+        if (k > major) return;
+        if (k > 0) {
+            int m = lineMinor(k, major, minor);
+            int kx = xMajor ? k : m, ky = xMajor ? m : k;
+            x0 += sx * kx;
+            y0 += sy * ky;
+            err += kx * dy + ky * dx;
+        }
+
+        while (true) {
+            // Past the clip in the direction of travel: nothing left to write
+            if ((sx > 0 ? x0 >= clipX1 : x0 < clipX0) || (sy > 0 ? y0 >= clipY1 : y0 < clipY0)) return;
+            blend(x0, y0, rgb, alpha);
+            if (x0 == x1 && y0 == y1) return;
+            int e2 = 2 * err;
+            if (e2 >= dy) { err += dy; x0 += sx; }
+            if (e2 <= dx) { err += dx; y0 += sy; }
+        }
+    }
+
+    final boolean insideImage(int x0, int y0, int x1, int y1) {
+        return x0 >= 0 && x0 < width && y0 >= 0 && y0 < height
+                && x1 >= 0 && x1 < width && y1 >= 0 && y1 < height;
+    }
+
+    /**
+     * Cuts the segment seg = {x0, y0, x1, y1} to the image (Liang-Barsky), in place; false when
+     * none of it is on the image. Far off-screen ends (projected orbit points can be) then don't
+     * make the walk long. The image, not the clip: every clip view (tile) then walks the same
+     * pixels, and lines meet across tile edges.
+     */
+    final boolean clipToImage(int[] seg) {
+        int x0 = seg[0], y0 = seg[1], x1 = seg[2], y1 = seg[3];
+        double ddx = (double) x1 - x0, ddy = (double) y1 - y0; // in int they can overflow
+        double[] t = {0.0, 1.0};
+        if (!clipT(-ddx, x0, t) || !clipT(ddx, (width - 1.0) - x0, t)
+                || !clipT(-ddy, y0, t) || !clipT(ddy, (height - 1.0) - y0, t)) {
+            return false;
+        }
+        seg[0] = (int) java.lang.Math.round(x0 + t[0] * ddx);
+        seg[1] = (int) java.lang.Math.round(y0 + t[0] * ddy);
+        seg[2] = (int) java.lang.Math.round(x0 + t[1] * ddx);
+        seg[3] = (int) java.lang.Math.round(y0 + t[1] * ddy);
+        return true;
+    }
+
+    /**
+     * Minor-axis steps a Bresenham walk ({@link #line}) has taken after k major-axis steps, for a
+     * line of major and minor steps in all (major >= minor): round(k minor / major), halves down.
+     */
+    static int lineMinor(int k, int major, int minor) {
+        return (major == 0) ? 0 : (int) ((2L * minor * k + major) / (2L * major));
+    }
+
+    /** Steps from p in direction s until [lo, hi) is reached; 0 when already in or past it. */
+    private static int stepsTo(int p, int s, int lo, int hi) {
+        int k = (s > 0) ? lo - p : p - (hi - 1);
+        return java.lang.Math.max(k, 0);
+    }
+
+    /** One Liang-Barsky edge test: narrows t = [tEnter, tExit], false when nothing is left. */
+    private static boolean clipT(double p, double q, double[] t) {
+        if (p == 0.0) return q >= 0.0;
+        double r = q / p;
+        if (p < 0.0) {
+            if (r > t[1]) return false;
+            if (r > t[0]) t[0] = r;
+        } else {
+            if (r < t[0]) return false;
+            if (r < t[1]) t[1] = r;
+        }
+        return true;
+    }
+
+    /**
+     * Disk inscribed in the d x d square at (x, y), like Graphics.fillOval(x, y, d, d): pixels
+     * whose centers are inside, blended at alpha.
+     */
+    public void fillOval(int x, int y, int d, int rgb, int alpha) {
+        if (d <= 0 || alpha <= 0) return;
+        double r = d * 0.5;
+        double cx = x + r, cy = y + r;
+        int yFrom = java.lang.Math.max(y, clipY0), yTo = java.lang.Math.min(y + d, clipY1);
+        for (int py = yFrom; py < yTo; py++) {
+            double ry = py + 0.5 - cy;
+            double half2 = r * r - ry * ry;
+            if (half2 <= 0.0) continue;
+            double half = java.lang.Math.sqrt(half2);
+            int x0 = (int) java.lang.Math.ceil(cx - half - 0.5);
+            int x1 = (int) java.lang.Math.floor(cx + half - 0.5);
+            if (alpha >= 255) {
+                fillSpan(x0, x1, py, rgb);
+            } else {
+                for (int px = java.lang.Math.max(x0, clipX0); px <= x1 && px < clipX1; px++) blend(px, py, rgb, alpha);
+            }
+        }
+    }
+
+    /** One-pixel outline of the same disk, like Graphics.drawOval(x, y, d, d) (icons). */
+    public void drawOval(int x, int y, int d, int rgb, int alpha) {
+        if (d <= 0 || alpha <= 0) return;
+        double r = d * 0.5;
+        double cx = x + r + 0.5, cy = y + r + 0.5; // drawOval spans d + 1 pixels
+        double in = (r - 0.5) * (r - 0.5), out = (r + 0.5) * (r + 0.5);
+        int yTo = java.lang.Math.min(y + d, clipY1 - 1), xTo = java.lang.Math.min(x + d, clipX1 - 1);
+        for (int py = java.lang.Math.max(y, clipY0); py <= yTo; py++) {
+            double ry = py + 0.5 - cy;
+            for (int px = java.lang.Math.max(x, clipX0); px <= xTo; px++) {
+                double rx = px + 0.5 - cx;
+                double r2 = rx * rx + ry * ry;
+                if (r2 >= in && r2 < out) blend(px, py, rgb, alpha);
+            }
+        }
+    }
+
+    /** SRC_OVER of an opaque dst pixel by rgb at alpha 0..255. */
+    static int over(int dst, int rgb, int alpha) {
+        int inv = 255 - alpha;
+        int r = div255(((rgb >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inv);
+        int g = div255(((rgb >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inv);
+        int b = div255((rgb & 0xFF) * alpha + (dst & 0xFF) * inv);
+        return OPAQUE | (r << 16) | (g << 8) | b;
+    }
+
+    /** Rounded x / 255 for x in [0, 255 * 255]. */
+    static int div255(int x) {
+        x += 128;
+        return (x + (x >> 8)) >> 8;
+    }
+
+    /** Float alpha (0..1) to 0..255, rounded and clamped. */
+    static int alpha255(float a) {
+        int i = (int) (a * 255f + 0.5f);
+        return (i < 0) ? 0 : java.lang.Math.min(i, 255);
+    }
+}
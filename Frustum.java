@@ -16,6 +16,11 @@ public class Frustum {
 
     private double[] projectionMatrix;
 
+    // Camera basis for worldToCameraSpaceDirect, rebuilt only when yaw/pitch change
+    private double basisYaw = Double.NaN, basisPitch = Double.NaN;
+    private double bfx, bfy, bfz, brx, bry, brz, bux, buy, buz;
+    private boolean basisDegenerate; // looking straight up/down: right vector undefined
+
     public Frustum(double fov, double aspectRatio, double near, double far) {
         this.fov = fov;
         this.aspectRatio = aspectRatio;
@@ -30,6 +35,25 @@ public class Frustum {
         this.cameraZ = z;
     }
 
+    /** Screen pixels covered by one radian near the view center. */
+    public double pixelsPerRadian(int screenHeight) {
+        return 0.5 * screenHeight / Math.tan(Math.toRadians(fov) / 2.0);
+    }
+
+    /** Unit view direction (world frame) into out[0..2]. */
+    public void viewDirection(double[] out) {
+        updateBasis();
+        out[0] = bfx;
+        out[1] = bfy;
+        out[2] = bfz;
+    }
+
+    /** Angle between the view direction and the screen's corners, radians (fov is vertical). */
+    public double cornerHalfAngle() {
+        double tanHalf = java.lang.Math.tan(java.lang.Math.toRadians(fov) / 2.0);
+        return java.lang.Math.atan(tanHalf * java.lang.Math.sqrt(1.0 + aspectRatio * aspectRatio));
+    }
+
     /**
      * Shared yaw/pitch -> forward/right/up for both view matrix and movement.
      * yawDeg  : rotation around world Y axis (degrees)
@@ -155,8 +179,12 @@ public class Frustum {
         return cameraSpacePosition;
     }
     
-    public void worldToCameraSpaceDirect(double x, double y, double z, double[] out4) {
-        // Compute camera basis (no array alloc)
+    /** Recomputes the cached camera basis if cameraYaw/cameraPitch moved since the last call. */
+    private void updateBasis() {
+        if (cameraYaw == basisYaw && cameraPitch == basisPitch) return;
+        basisYaw = cameraYaw;
+        basisPitch = cameraPitch;
+
         double yaw = java.lang.Math.toRadians(cameraYaw);
         double pitch = java.lang.Math.toRadians(cameraPitch);
 
@@ -168,13 +196,24 @@ public class Frustum {
         // right = worldUp(0,1,0) x forward = (fz, 0, -fx)
         double rx = fz, ry = 0.0, rz = -fx;
         double rLen = java.lang.Math.sqrt(rx*rx + ry*ry + rz*rz);
-        if (rLen < 1e-12) rLen = 1e-12;
+        basisDegenerate = rLen < 1e-12;
+        if (basisDegenerate) rLen = 1e-12;
         rx /= rLen; ry /= rLen; rz /= rLen;
 
+        bfx = fx; bfy = fy; bfz = fz;
+        brx = rx; bry = ry; brz = rz;
+
         // up = forward x right
-        double ux = fy*rz - fz*ry;
-        double uy = fz*rx - fx*rz;
-        double uz = fx*ry - fy*rx;
+        bux = fy*rz - fz*ry;
+        buy = fz*rx - fx*rz;
+        buz = fx*ry - fy*rx;
+    }
+
+    public void worldToCameraSpaceDirect(double x, double y, double z, double[] out4) {
+        updateBasis();
+        double fx = bfx, fy = bfy, fz = bfz;
+        double rx = brx, ry = bry, rz = brz;
+        double ux = bux, uy = buy, uz = buz;
 
         // Vector from camera to point
         double dx = x - cameraX;
@@ -260,22 +299,10 @@ public class Frustum {
             Frustum fr, double worldX, double worldY, double worldZ,
             double radiusUnits, Point2D.Double centerScreen)
     {
-        // Build camera basis (same logic as Frustum.computeCameraBasis)
-        double yaw = Math.toRadians(fr.cameraYaw);
-        double pitch = Math.toRadians(fr.cameraPitch);
-
-        double fx = Math.sin(yaw) * Math.cos(pitch);
-        double fy = Math.sin(pitch);
-        double fz = Math.cos(yaw) * Math.cos(pitch);
-
-        // right = worldUp x forward
-        double rx = fz - 0.0 * fy;   // (0,1,0) x (fx,fy,fz) = (fz,0,-fx)
-        double ry = 0.0;
-        double rz = -fx;
-
-        double rLen = Math.sqrt(rx*rx + ry*ry + rz*rz);
-        if (rLen < 1e-12) return 0.0;
-        rx /= rLen; ry /= rLen; rz /= rLen;
+        // Camera right vector (cached basis, same logic as Frustum.computeCameraBasis)
+        fr.updateBasis();
+        double rx = fr.brx, ry = fr.bry, rz = fr.brz;
+        if (fr.basisDegenerate) return 0.0;
 
         // boundary point in world space
         double bx = worldX + rx * radiusUnits;
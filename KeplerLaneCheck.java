@@ -0,0 +1,89 @@
+import java.util.Random;
+
+/**
+ * Headless check of KeplerLaneKernel against the scalar path (OrbitalStateStore.offsetAtPhase)
+ * it stands in for, plus the kernel's throughput on this machine.
+ *
+ * Builds a star with random asteroids spread over 0 <= e <= MAX_ECCENTRICITY, solves every one
+ * at a number of random times both ways and reports the largest position difference relative
+ * to the semi-major axis. Exits with status 1 when it is above TOLERANCE.
+ *
+ *     java KeplerLaneCheck [bodies] [times] [seed]
+ */
+public final class KeplerLaneCheck {
+
+    /** Largest accepted |lane - scalar| / a. */
+    static final double TOLERANCE = 2e-8;
+
+    private KeplerLaneCheck() {}
+
+    public static void main(String[] args) {
+        int bodies = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+        int times = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1L;
+
+        OrbitalStateStore store = randomSystem(bodies, new Random(seed)).getOrbitStore();
+        Random rng = new Random(seed + 1);
+        KeplerLaneKernel lanes = new KeplerLaneKernel();
+        double[] ecc = new double[3];
+        double[] out = new double[3];
+
+        double worst = 0.0;
+        int worstSlot = -1;
+        long solved = 0, kernelNanos = 0;
+        for (int k = 0; k < times; k++) {
+            SimulationTime t = SimulationTime.ofNanos((long) (rng.nextDouble() * 3.0e18));
+            for (int i = 0, n = store.size(); i < n; ) {
+                // Fill a block with the lane-routed slots from i on
+                lanes.clear();
+                for (; i < n && !lanes.isFull(); i++) {
+                    if (store.getParentIndex(i) < 0 || store.e[i] > KeplerLaneKernel.MAX_ECCENTRICITY) continue;
+                    lanes.add(store, i, t.phase(store.period[i]));
+                }
+                long t0 = System.nanoTime();
+                lanes.solve();
+                kernelNanos += System.nanoTime() - t0;
+                solved += lanes.count;
+
+                for (int q = 0; q < lanes.count; q++) {
+                    int s = lanes.slot[q];
+                    store.offsetAtPhase(s, lanes.t[q], ecc, out);
+                    double dx = lanes.outX[q] - out[0], dy = lanes.outY[q] - out[1], dz = lanes.outZ[q] - out[2];
+                    double err = java.lang.Math.sqrt(dx * dx + dy * dy + dz * dz) / store.a[s];
+                    if (err > worst) {
+                        worst = err;
+                        worstSlot = s;
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%d solves, FastTrig %s: max |lane - scalar| / a = %.3e%s (tolerance %.0e)%n",
+                solved, FastTrig.ENABLED ? "on" : "off", worst,
+                (worstSlot >= 0) ? String.format(" at e = %.4f", store.e[worstSlot]) : "", TOLERANCE);
+        System.out.printf("kernel: %.2f M bodies/s on this thread (warm-up included)%n",
+                solved / (kernelNanos * 1e-9) / 1e6);
+        if (!(worst <= TOLERANCE)) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /** A star with bodies asteroids on random orbits, periods from Kepler's third law. */
+    private static SolarSystem randomSystem(int bodies, Random rng) {
+        Star star = new Star(80000000, 80000000, 6963.4);
+        SolarSystem system = new SolarSystem(star);
+        double au = Lighting.AU_KM / SimulationView.SCALE_KM_PER_UNIT;
+        for (int k = 0; k < bodies; k++) {
+            double a = au * (0.3 + rng.nextDouble() * 40.0);
+            double e = rng.nextDouble() * KeplerLaneKernel.MAX_ECCENTRICITY;
+            double periodDays = 365.25 * java.lang.Math.pow(a / au, 1.5);
+            system.getAsteroids().add(new Asteroid("0 0 0 1 128 128 128 " + a + " " + e + " "
+                    + rng.nextDouble() * 30.0 + " " + rng.nextDouble() * 360.0 + " "
+                    + rng.nextDouble() * 360.0 + " " + rng.nextDouble() * 360.0 + " "
+                    + periodDays + " check" + k, star));
+        }
+        return system;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Batched Kepler propagation over blocks of bodies, written for the JIT's auto-vectorizer.
+ *
+ * OrbitalStateStore gathers the elements of up to BLOCK due bodies into the lane arrays below;
+ * every stage is then a separate counted loop over those arrays with no calls, no branches and
+ * no cross-lane dependencies, which C2 compiles to packed SIMD (SSE2/AVX) arithmetic:
+ * - mean anomaly from time, wrapped to [-π, π] (rint is an intrinsic)
+ * - E0 = M + e sin M, then a fixed number of Newton steps chosen from the block's largest e
+ *   (enough for |ΔE| < 1e-14 over the whole band, measured against an iterated reference)
+ * - position in the orbital plane, rotated into the engine frame with the cached P/Q basis
+ *
+ * sin/cos come from FastTrig's polynomials instead of Math.sin/cos (calls don't vectorize; the
+ * small FastTrig helpers are inlined before vectorization). With FastTrig.ENABLED off the lanes
+ * fall back to java.lang.Math, for comparison.
+ *
+ * Only bodies with e <= MAX_ECCENTRICITY are routed here; comets take the scalar
+ * KeplerSolver path, whose iteration count adapts per body.
+ */
+public final class KeplerLaneKernel {
+
+    /** Bodies per block (lane array length). */
+    public static final int BLOCK = 256;
+    /** Above this eccentricity a body is solved by the scalar KeplerSolver instead. */
+    public static final double MAX_ECCENTRICITY = 0.8;
+
+    private static final double TWO_PI = 2.0 * java.lang.Math.PI;
+    private static final double INV_TWO_PI = 1.0 / TWO_PI;
+
+    // Lanes: inputs gathered by the caller
+    final int[] slot = new int[BLOCK];
+    final double[] t = new double[BLOCK];      // time since epoch wrapped to [0, period)
+    final double[] m0 = new double[BLOCK];
+    final double[] n = new double[BLOCK];
+    final double[] e = new double[BLOCK];
+    final double[] a = new double[BLOCK];
+    final double[] b = new double[BLOCK];
+    final double[] px = new double[BLOCK], py = new double[BLOCK], pz = new double[BLOCK];
+    final double[] qx = new double[BLOCK], qy = new double[BLOCK], qz = new double[BLOCK];
+    int count;
+    int iterations;                            // Newton steps for this block
+
+    // Lanes: working values and outputs
+    private final double[] mean = new double[BLOCK];
+    private final double[] ecc = new double[BLOCK];
+    private final double[] sin = new double[BLOCK];
+    private final double[] cos = new double[BLOCK];
+    final double[] outX = new double[BLOCK], outY = new double[BLOCK], outZ = new double[BLOCK];
+
+    /** Newton steps needed from the E0 = M + e sin M starter for |ΔE| < 1e-14. */
+    static int iterationsFor(double e) {
+        if (e <= 0.05) return 2;
+        if (e <= 0.3) return 3;
+        if (e <= 0.6) return 4;
+        return 5;
+    }
+
+    /**
+     * Adds slot i of the store at tOrbit (time since epoch, wrapped to [0, period)) to the block;
+     * the caller flushes with {@link #solve} when full.
+     */
+    void add(OrbitalStateStore s, int i, double tOrbit) {
+        int k = count++;
+        slot[k] = i;
+        t[k] = tOrbit;
+        m0[k] = s.M0[i];
+        n[k] = s.meanMotion[i];
+        e[k] = s.e[i];
+        a[k] = s.a[i];
+        b[k] = s.b[i];
+        px[k] = s.px[i]; py[k] = s.py[i]; pz[k] = s.pz[i];
+        qx[k] = s.qx[i]; qy[k] = s.qy[i]; qz[k] = s.qz[i];
+
+        int it = iterationsFor(e[k]);
+        if (it > iterations) iterations = it;
+    }
+
+    boolean isFull() { return count == BLOCK; }
+
+    /** Empties the block for reuse. */
+    void clear() {
+        count = 0;
+        iterations = 0;
+    }
+
+    /** Parent-relative offsets of every lane into outX/outY/outZ. */
+    void solve() {
+        final int len = count;
+
+        // Mean anomaly, wrapped to [-π, π]
+        for (int k = 0; k < len; k++) {
+            double M = m0[k] + n[k] * t[k];
+            mean[k] = M - TWO_PI * java.lang.Math.rint(M * INV_TWO_PI);
+        }
+
+        sincos(mean, len);
+        for (int k = 0; k < len; k++) {
+            ecc[k] = mean[k] + e[k] * sin[k];
+        }
+
+        for (int it = 0; it < iterations; it++) {
+            sincos(ecc, len);
+            for (int k = 0; k < len; k++) {
+                double E = ecc[k];
+                double f = E - e[k] * sin[k] - mean[k];
+                double fp = 1.0 - e[k] * cos[k];
+                ecc[k] = E - f / fp;
+            }
+        }
+
+        sincos(ecc, len);
+        for (int k = 0; k < len; k++) {
+            double xP = a[k] * (cos[k] - e[k]);
+            double yP = b[k] * sin[k];
+            outX[k] = xP * px[k] + yP * qx[k];
+            outY[k] = xP * py[k] + yP * qy[k];
+            outZ[k] = xP * pz[k] + yP * qz[k];
+        }
+    }
+
+    /** sin/cos of every lane of angle into sin/cos (see class comment). */
+    private void sincos(double[] angle, int len) {
+        if (!FastTrig.ENABLED) {
+            for (int k = 0; k < len; k++) {
+                sin[k] = java.lang.Math.sin(angle[k]);
+                cos[k] = java.lang.Math.cos(angle[k]);
+            }
+            return;
+        }
+        for (int k = 0; k < len; k++) {
+            double y = FastTrig.halfAngle(angle[k]);
+            double y2 = y * y;
+            double s = FastTrig.halfSin(y, y2);
+            double c = FastTrig.halfCos(y2);
+            sin[k] = 2.0 * s * c;
+            cos[k] = (c - s) * (c + s);
+        }
+    }
+}
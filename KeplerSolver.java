@@ -0,0 +1,143 @@
+/**
+ * Solves Kepler's equation M = E - e sin E for the eccentric anomaly E (elliptic orbits);
+ * {@link #solveHyperbolic} covers M = e sinh H - H for the hyperbolic ones (e > 1).
+ *
+ * Implementations write E, sin E and cos E into {@code out[0..2]} (the propagator needs all
+ * three, and a converged solver already has them) and return the number of iterations used,
+ * which the engine aggregates as metrics.
+ *
+ * Selected per body class via {@link OrbitingBody#keplerSolver()}. Trig goes through FastTrig
+ * (polynomial sin/cos, both from one evaluation).
+ */
+public interface KeplerSolver {
+
+    /** Convergence tolerance on |ΔE| (radians). */
+    double TOLERANCE = 1e-12;
+    /** Hard cap so a pathological input can never stall a frame. */
+    int MAX_ITERATIONS = 32;
+
+    /** Legacy behaviour: exactly five Newton steps from E = M. */
+    KeplerSolver FIXED_NEWTON = new FixedNewton();
+    /** Tolerance-driven Newton with a cheap starter; best for near-circular orbits. */
+    KeplerSolver NEWTON = new Newton();
+    /** Tolerance-driven Halley (cubic convergence) with Danby's starter; for high-e comets. */
+    KeplerSolver HALLEY = new Halley();
+
+    /**
+     * @param M mean anomaly, normalized to [-π, π]
+     * @param e eccentricity in [0, 1)
+     * @param out receives E, sin E, cos E
+     * @return iterations performed
+     */
+    int solve(double M, double e, double[] out);
+
+    /**
+     * Starting guess.
+     * Low e: E0 = M + e sin M (error O(e²)).
+     * High e: Danby's E0 = M + 0.85 e sign(M), which keeps Newton/Halley from overshooting
+     * near periapsis where 1 - e cos E is tiny.
+     */
+    static double starter(double M, double e) {
+        if (e < 0.8) return M + e * FastTrig.sin(M);
+        return M + 0.85 * e * ((M >= 0.0) ? 1.0 : -1.0);
+    }
+
+    /**
+     * Stores the result. When the last step was below tolerance, sin/cos from the start of that
+     * step are advanced by the step (first order) instead of being recomputed.
+     */
+    static void finish(double E, double dE, double sinE, double cosE, double[] out) {
+        out[0] = E;
+        if (java.lang.Math.abs(dE) < TOLERANCE) {
+            out[1] = sinE - dE * cosE;
+            out[2] = cosE + dE * sinE;
+        } else {
+            FastTrig.sincos(E, out, 1);
+        }
+    }
+
+    /**
+     * Hyperbolic Kepler equation M = e sinh H - H (e > 1, M unbounded, not wrapped), by Newton
+     * from H0 = sign(M) ln(2|M| / e + 1.8), which is within a step or two of the root for large
+     * |M| where sinh grows exponentially.
+     *
+     * @param out receives H, sinh H, cosh H
+     * @return iterations performed
+     */
+    static int solveHyperbolic(double M, double e, double[] out) {
+        double H = (M >= 0.0 ? 1.0 : -1.0) * java.lang.Math.log(2.0 * java.lang.Math.abs(M) / e + 1.8);
+        double sinhH = 0.0, coshH = 1.0;
+        int it = 0;
+        while (it < MAX_ITERATIONS) {
+            sinhH = java.lang.Math.sinh(H);
+            coshH = java.lang.Math.cosh(H);
+            double dH = (e * sinhH - H - M) / (e * coshH - 1.0);
+            H -= dH;
+            it++;
+            if (java.lang.Math.abs(dH) < TOLERANCE * java.lang.Math.max(1.0, java.lang.Math.abs(H))) break;
+        }
+        out[0] = H;
+        out[1] = java.lang.Math.sinh(H);
+        out[2] = java.lang.Math.cosh(H);
+        return it;
+    }
+
+    final class FixedNewton implements KeplerSolver {
+        @Override
+        public int solve(double M, double e, double[] out) {
+            double E = M;
+            for (int i = 0; i < 5; i++) {
+                FastTrig.sincos(E, out, 1);
+                double f  = E - e * out[1] - M;
+                double fp = 1.0 - e * out[2];
+                E -= f / fp;
+            }
+            out[0] = E;
+            FastTrig.sincos(E, out, 1);
+            return 5;
+        }
+    }
+
+    final class Newton implements KeplerSolver {
+        @Override
+        public int solve(double M, double e, double[] out) {
+            double E = starter(M, e);
+            double sinE = 0.0, cosE = 1.0, dE = Double.POSITIVE_INFINITY;
+            int it = 0;
+            while (it < MAX_ITERATIONS) {
+                FastTrig.sincos(E, out, 1);
+                sinE = out[1];
+                cosE = out[2];
+                dE = (E - e * sinE - M) / (1.0 - e * cosE);
+                E -= dE;
+                it++;
+                if (java.lang.Math.abs(dE) < TOLERANCE) break;
+            }
+            finish(E, dE, sinE, cosE, out);
+            return it;
+        }
+    }
+
+    final class Halley implements KeplerSolver {
+        @Override
+        public int solve(double M, double e, double[] out) {
+            double E = starter(M, e);
+            double sinE = 0.0, cosE = 1.0, dE = Double.POSITIVE_INFINITY;
+            int it = 0;
+            while (it < MAX_ITERATIONS) {
+                FastTrig.sincos(E, out, 1);
+                sinE = out[1];
+                cosE = out[2];
+                double f   = E - e * sinE - M;
+                double fp  = 1.0 - e * cosE;
+                double fpp = e * sinE;
+                dE = (f * fp) / (fp * fp - 0.5 * f * fpp);
+                E -= dE;
+                it++;
+                if (java.lang.Math.abs(dE) < TOLERANCE) break;
+            }
+            finish(E, dE, sinE, cosE, out);
+            return it;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Executes Spacecraft burns on the simulation side, in time order, from a priority queue.
+ *
+ * The queue (EventQueue) holds one entry per vessel, keyed by its earliest pending burn, so a
+ * step with nothing due costs one peek however many vessels and burns are scheduled; each
+ * executed burn costs O(log vessels) plus one state solve. Timeline edits (Spacecraft.schedule
+ * and friends, any thread) only post the vessel's slot here; the queue is fixed up for those
+ * slots at the next update.
+ *
+ * A burn at time t: the vessel's state relative to its parent at t, plus the delta-v along
+ * the local prograde/normal/radial axes, becomes its new orbit, derived into the store
+ * (OrbitalStateStore.rebind; the Spacecraft's fields follow on the render side). Burns and
+ * SOI handoffs are interleaved: handoffs due before a burn run first, and the vessel is
+ * re-checked from the burn on. A burn that was scheduled in the past executes at the previous
+ * step's time, not before it.
+ *
+ * Runs on the simulation side after each propagation (SimulationEngine).
+ */
+public final class ManeuverScheduler {
+
+    private final OrbitalStateStore store;
+    private final int[] slots;           // per vessel index
+    private final int[] vesselIndex;     // per slot, -1 if not a spacecraft
+    private final EventQueue queue;
+    private final ConcurrentLinkedQueue<Integer> changed = new ConcurrentLinkedQueue<>();
+    private long lastUpdate = Long.MIN_VALUE;
+    private int[] burned = new int[16];  // slots burned during the current update
+
+    // Scratch
+    private final double[] ecc = new double[3], pos = new double[3], vel = new double[3];
+
+    // Stats
+    private long burns;
+
+    /** Every vessel's timeline is read at the first update (edits made before then are seen). */
+    public ManeuverScheduler(OrbitalStateStore store) {
+        this.store = store;
+        this.slots = store.getSpacecraftSlots();
+        this.vesselIndex = new int[store.size()];
+        java.util.Arrays.fill(vesselIndex, -1);
+        for (int k = 0; k < slots.length; k++) {
+            vesselIndex[slots[k]] = k;
+            changed.add(slots[k]);
+        }
+        this.queue = new EventQueue(slots.length);
+    }
+
+    public OrbitalStateStore getStore() { return store; }
+    public int getVesselCount() { return slots.length; }
+    public long getBurns() { return burns; }
+
+    /** Any thread: slot's timeline was edited. */
+    void timelineChanged(int slot) {
+        changed.add(slot);
+    }
+
+    /**
+     * Simulation side, after the store was propagated to simulationTime: executes every burn due
+     * up to then (with the SOI handoffs due before each, when soi is not null) and re-places the
+     * vessels that burned. Returns the number of burns executed.
+     */
+    public int update(long simulationTime, SoiHandoff soi) {
+        long floor = (lastUpdate == Long.MIN_VALUE) ? simulationTime : java.lang.Math.min(lastUpdate, simulationTime);
+        lastUpdate = simulationTime;
+
+        for (Integer slot; (slot = changed.poll()) != null; ) refresh(vesselIndex[slot]);
+        if (queue.peekTime() > simulationTime) return 0;
+
+        int executed = 0;
+        while (queue.peekTime() <= simulationTime) {
+            int k = queue.peekId();
+            int slot = slots[k];
+            Spacecraft.Maneuver m = ((Spacecraft) store.getBody(slot)).pollDue(simulationTime);
+            if (m == null) { // edited since it was queued
+                refresh(k);
+                continue;
+            }
+            long t = java.lang.Math.max(m.timeNanos, floor);
+            if (soi != null) soi.advance(t, simulationTime);
+
+            burn(slot, m, t);
+            if (soi != null) soi.reschedule(slot, t);
+            refresh(k);
+            if (executed == burned.length) burned = java.util.Arrays.copyOf(burned, executed * 2);
+            burned[executed++] = slot;
+        }
+        burns += executed;
+        store.repropagate(burned, executed, simulationTime);
+        if (soi != null) soi.placeMoved(simulationTime);
+        return executed;
+    }
+
+    /** Re-keys vessel k by its earliest pending burn. */
+    private void refresh(int k) {
+        long next = ((Spacecraft) store.getBody(slots[k])).nextManeuverTime();
+        if (next == Long.MAX_VALUE) queue.remove(k);
+        else queue.set(k, next);
+    }
+
+    /** Applies m to slot at time t. */
+    private void burn(int slot, Spacecraft.Maneuver m, long t) {
+        SimulationTime st = SimulationTime.ofNanos(t);
+        int parent = store.getParentIndex(slot);
+        store.stateAt(slot, st, ecc, pos, vel);
+
+        // Local axes: prograde along v, normal along r × v, radial = prograde × normal
+        double v = java.lang.Math.max(1e-300, java.lang.Math.sqrt(vel[0] * vel[0] + vel[1] * vel[1] + vel[2] * vel[2]));
+        double tx = vel[0] / v, ty = vel[1] / v, tz = vel[2] / v;
+        double nx = pos[1] * vel[2] - pos[2] * vel[1];
+        double ny = pos[2] * vel[0] - pos[0] * vel[2];
+        double nz = pos[0] * vel[1] - pos[1] * vel[0];
+        double nLen = java.lang.Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (nLen == 0.0) { // radial trajectory: any normal will do
+            nx = -ty; ny = tx; nz = 0.0;
+            nLen = java.lang.Math.sqrt(nx * nx + ny * ny);
+            if (nLen == 0.0) { nx = 1.0; nLen = 1.0; }
+        }
+        nx /= nLen;
+        ny /= nLen;
+        nz /= nLen;
+        double rx = ty * nz - tz * ny, ry = tz * nx - tx * nz, rz = tx * ny - ty * nx;
+
+        double scale = 1.0 / SimulationView.SCALE_KM_PER_UNIT; // km/s → units/s
+        double dp = m.prograde * scale, dn = m.normal * scale, dr = m.radial * scale;
+        vel[0] += dp * tx + dn * nx + dr * rx;
+        vel[1] += dp * ty + dn * ny + dr * ry;
+        vel[2] += dp * tz + dn * nz + dr * rz;
+
+        store.rebind(slot, parent, pos, vel, st);
+    }
+}
@@ -5,11 +5,11 @@ import java.util.Scanner;
 public class Moon extends OrbitingBody {
 	private static final int ICON_RADIUS = 3;
 	
-	private final Planet planet;
+	private final Planet planet; // planet whose system this moon belongs to (null for asteroid moons)
 	
-    public Moon(String serialization, Planet parentPlanet) {
-        super(parentPlanet);
-        this.planet = parentPlanet;
+    public Moon(String serialization, OrbitingBody host) {
+        super(host);
+        this.planet = findHostPlanet(host);
 
         Scanner load = new Scanner(serialization);
 
@@ -43,10 +43,25 @@ public class Moon extends OrbitingBody {
 
         this.periodSeconds = periodDays * 86400.0;
         this.meanMotion    = (2.0 * Math.PI) / this.periodSeconds;
+
+        updateOrbitBasis();
     }
 	
+	private static Planet findHostPlanet(Body b) {
+		while (b instanceof OrbitingBody) {
+			if (b instanceof Planet) return (Planet) b;
+			b = ((OrbitingBody) b).getParent();
+		}
+		return null;
+	}
+	
 	public String getPlanetName() {
-		return planet.getName();
+		return (planet != null) ? planet.getName() : getParentName();
+	}
+	
+	/** Name of the body this moon directly orbits (a planet, another moon, or an asteroid). */
+	public String getParentName() {
+		return parent.getName();
 	}
 	
 	public Planet getPlanet() {
@@ -56,7 +71,7 @@ public class Moon extends OrbitingBody {
     public String save() {
         double periodDays = periodSeconds / 86400.0;
 
-        return x + " " + y + " " + z + " " +
+        return getWorldX() + " " + getWorldY() + " " + getWorldZ() + " " +
                 radius + " " +
                 color.getRed() + " " + color.getGreen() + " " + color.getBlue() + " " +
                 a + " " + e + " " +
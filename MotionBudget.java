@@ -0,0 +1,223 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motion-budget scheduler for OrbitalStateStore: re-solves a body only when its apparent motion
+ * since it was last solved could have reached PIXEL_BUDGET pixels.
+ *
+ * Per slot it keeps the last parent-relative offset, the time it was solved for, and an upper
+ * bound on its orbital speed (relative speed at periapsis). A skipped body is placed at
+ * parent + cached offset, so it still follows its parent exactly and only its own orbital motion
+ * is deferred. The deferred motion is at most maxSpeed * (t - lastSolved); it is due again once
+ * that, divided by the distance to the camera and scaled to pixels, crosses the budget.
+ *
+ * Distant asteroids move a fraction of a pixel per frame, so most of a catalog is re-solved only
+ * every few dozen ticks. Queried bodies (lock target, info HUD) are always solved. The budget is
+ * per body, so a moon's error can add its planet's (up to one budget per hierarchy level).
+ *
+ * Bodies off screen are deferred regardless of the budget: while a body's radius plus its
+ * deferred motion stays outside the cone through the screen's corners, it cannot be in view.
+ * That padding grows until it reaches the cone, so the body is solved before it can drift in.
+ * Only bodies without satellites qualify (the others carry their satellites' positions), and a
+ * fast camera turn can show a deferred body one pass late.
+ *
+ * The viewer is set from the UI thread ({@link #setViewer}); the store reads it once per pass.
+ */
+public final class MotionBudget {
+
+    // --- Tunables ---
+    /** Largest deferred motion allowed, in pixels. */
+    public static double PIXEL_BUDGET = 0.25;
+
+    /** Camera state published by the render side. */
+    private static final class Viewer {
+        final double x, y, z;
+        final double fx, fy, fz;      // unit view direction
+        final double halfAngle;       // view direction to the screen's corners, radians
+        final double pixelsPerRadian;
+        final int[] forced;
+
+        Viewer(double x, double y, double z, double fx, double fy, double fz, double halfAngle,
+               double pixelsPerRadian, int[] forced) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.fx = fx;
+            this.fy = fy;
+            this.fz = fz;
+            this.halfAngle = halfAngle;
+            this.pixelsPerRadian = pixelsPerRadian;
+            this.forced = forced;
+        }
+    }
+
+    private final OrbitalStateStore store;
+
+    // Per slot
+    private final double[] offX, offY, offZ;
+    private final double[] solvedAt;
+    private final double[] maxSpeed;
+    private final double[] reach;          // body radius
+    private final boolean[] forced;
+    private final boolean[] hasSatellites;
+    private volatile boolean satellitesStale = true;
+
+    private volatile Viewer viewer;
+
+    // Set per pass by beginPass (simulation side)
+    private double camX, camY, camZ;
+    private double viewX, viewY, viewZ, cosHalf, sinHalf;
+    private boolean cone;
+    private double pixelsPerRadian;
+    private int[] forcedSlots = new int[0];
+
+    // Stats
+    private final LongAdder solved = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public MotionBudget(OrbitalStateStore store) {
+        this.store = store;
+        int n = store.size();
+        this.offX = new double[n];
+        this.offY = new double[n];
+        this.offZ = new double[n];
+        this.solvedAt = new double[n];
+        this.maxSpeed = new double[n];
+        this.reach = new double[n];
+        this.forced = new boolean[n];
+        this.hasSatellites = new boolean[n];
+
+        java.util.Arrays.fill(solvedAt, Double.NaN);
+        for (int i = 0; i < n; i++) {
+            maxSpeed[i] = store.getMaxOrbitalSpeed(i);
+            reach[i] = store.getBody(i).getRadius();
+        }
+    }
+
+    /**
+     * Forgets slot i's cached offset and re-reads its speed bound (its elements changed, maybe
+     * its parent too).
+     */
+    void invalidate(int i) {
+        solvedAt[i] = Double.NaN;
+        maxSpeed[i] = store.getMaxOrbitalSpeed(i);
+        satellitesStale = true;
+    }
+
+    public OrbitalStateStore getStore() { return store; }
+
+    public long getSolved() { return solved.sum(); }
+    public long getSkipped() { return skipped.sum(); }
+    public void resetStats() {
+        solved.reset();
+        skipped.reset();
+    }
+
+    /**
+     * Render side: where the camera is and looks (unit direction, angle to the screen's corners;
+     * a half angle of π or more turns off-screen deferral off), how many pixels one radian covers,
+     * and which bodies are being looked at closely (always solved). Slots outside the store are
+     * ignored.
+     */
+    public void setViewer(double camX, double camY, double camZ, double viewX, double viewY, double viewZ,
+                          double halfAngle, double pixelsPerRadian, int... forcedSlots) {
+        viewer = new Viewer(camX, camY, camZ, viewX, viewY, viewZ, halfAngle, pixelsPerRadian, forcedSlots.clone());
+    }
+
+    /** Simulation side: latches the viewer for one propagation pass. */
+    void beginPass() {
+        for (int s : forcedSlots) forced[s] = false;
+
+        Viewer v = viewer;
+        if (v == null) {
+            pixelsPerRadian = Double.POSITIVE_INFINITY; // no camera yet: solve everything
+            forcedSlots = new int[0];
+            return;
+        }
+        camX = v.x;
+        camY = v.y;
+        camZ = v.z;
+        viewX = v.fx;
+        viewY = v.fy;
+        viewZ = v.fz;
+        cone = v.halfAngle < java.lang.Math.PI;
+        cosHalf = java.lang.Math.cos(v.halfAngle);
+        sinHalf = java.lang.Math.sin(v.halfAngle);
+        pixelsPerRadian = v.pixelsPerRadian;
+
+        if (satellitesStale) {
+            satellitesStale = false;
+            java.util.Arrays.fill(hasSatellites, false);
+            for (int i = 0, n = hasSatellites.length; i < n; i++) {
+                int p = store.getParentIndex(i);
+                if (p >= 0) hasSatellites[p] = true;
+            }
+        }
+
+        int k = 0;
+        int[] slots = new int[v.forced.length];
+        for (int s : v.forced) {
+            if (s >= 0 && s < forced.length) {
+                forced[s] = true;
+                slots[k++] = s;
+            }
+        }
+        forcedSlots = java.util.Arrays.copyOf(slots, k);
+    }
+
+    /**
+     * Whether slot i must be solved at tSeconds. Uses its position from the previous pass for
+     * the camera distance.
+     */
+    boolean isDue(int i, double tSeconds) {
+        double last = solvedAt[i];
+        if (last != last || forced[i]) return true; // never solved (NaN) or queried
+
+        double dx = store.x[i] - camX;
+        double dy = store.y[i] - camY;
+        double dz = store.z[i] - camZ;
+        double dist2 = dx * dx + dy * dy + dz * dz;
+        double drift = maxSpeed[i] * (tSeconds - last);
+
+        if (cone && !hasSatellites[i] && offScreen(dx, dy, dz, dist2, reach[i] + drift)) return false;
+
+        // drift * pixelsPerRadian > budget * dist, squared to avoid the sqrt
+        double px = drift * pixelsPerRadian;
+        return px * px > PIXEL_BUDGET * PIXEL_BUDGET * dist2;
+    }
+
+    /**
+     * Whether every point within pad of (dx, dy, dz) (camera relative) is outside the view cone:
+     * its distance from the cone, D sin(θ - half) at angle θ off the view direction (D once past
+     * a right angle), is above pad.
+     */
+    private boolean offScreen(double dx, double dy, double dz, double dist2, double pad) {
+        double dist = java.lang.Math.sqrt(dist2);
+        if (!(dist > pad)) return false;
+        double cosT = (dx * viewX + dy * viewY + dz * viewZ) / dist;
+        double sinT = java.lang.Math.sqrt(java.lang.Math.max(0.0, 1.0 - cosT * cosT));
+        double sinOff = sinT * cosHalf - cosT * sinHalf; // sin(θ - half)
+        if (sinOff <= 0.0) return false;                 // inside the cone
+        double cosOff = cosT * cosHalf + sinT * sinHalf;
+        return ((cosOff > 0.0) ? dist * sinOff : dist) > pad;
+    }
+
+    /** Records a fresh solve of slot i. */
+    void record(int i, double tSeconds, double[] off) {
+        offX[i] = off[0];
+        offY[i] = off[1];
+        offZ[i] = off[2];
+        solvedAt[i] = tSeconds;
+    }
+
+    /** Writes the cached offset of slot i into out. */
+    void cached(int i, double[] out) {
+        out[0] = offX[i];
+        out[1] = offY[i];
+        out[2] = offZ[i];
+    }
+
+    void recordStats(int solvedCount, int skippedCount) {
+        solved.add(solvedCount);
+        skipped.add(skippedCount);
+    }
+}
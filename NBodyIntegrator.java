@@ -0,0 +1,317 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Optional N-body mode: integrates the system with mutual gravity instead of analytic Kepler orbits.
+ *
+ * - Massive bodies (star, planets, moons, asteroids that host moons) attract each other.
+ * - Test particles (plain asteroids) feel the massive bodies but exert no force, so they cost
+ *   O(massive) each instead of O(all). ASTEROIDS_MASSIVE makes every asteroid interact.
+ * - Past BARNES_HUT_MIN_MASSIVE massive bodies, forces come from a BarnesHutTree rebuilt each
+ *   substep (O(N log N)) instead of the exact pairwise sum.
+ * - Kick-drift-kick leapfrog (symplectic, time-reversible: energy error oscillates instead of
+ *   drifting) with a fixed substep chosen from the shortest massive orbit. The substep does not
+ *   depend on frame rate; frames consume whole substeps from an accumulator and the leftover
+ *   fraction is drifted for display only.
+ * - State is primitive arrays relative to the star's starting position (keeps moon-planet
+ *   distances precise); results are written into the store's x/y/z.
+ *
+ * Initial state is taken from the Kepler elements at the start time, with GM from
+ * {@link OrbitalStateStore#getMu(int)}.
+ */
+public final class NBodyIntegrator {
+
+    // --- Tunables ---
+    /** Substeps per revolution of the fastest massive orbit. */
+    public static int STEPS_PER_ORBIT = 128;
+    /** Cap on substeps per frame; beyond it the simulation clock slows down instead of the frame. */
+    public static int MAX_SUBSTEPS_PER_STEP = 512;
+    /** Wall-clock budget for substeps per frame (ns); same effect as the cap when exceeded. */
+    public static long FRAME_BUDGET_NANOS = 8_000_000L;
+    /** Force loops with fewer pair interactions than this run on the calling thread. */
+    public static long PARALLEL_MIN_INTERACTIONS = 1L << 16;
+    /** Smallest range of bodies handed to one fork-join task. */
+    public static int PARALLEL_GRAIN = 64;
+    /** Plummer softening length (units); keeps close encounters finite. */
+    public static double SOFTENING = 1e-3;
+    /** Treat every asteroid as a massive, interacting body (not just asteroids with moons). */
+    public static boolean ASTEROIDS_MASSIVE = false;
+    /** Massive body count from which forces are evaluated with the Barnes–Hut tree. */
+    public static int BARNES_HUT_MIN_MASSIVE = 512;
+    /** Barnes–Hut opening angle; smaller is more accurate and slower (0 = exact). */
+    public static double THETA = 0.5;
+
+    /** computeEnergy is O(massive²); above this it reports NaN instead. */
+    private static final int ENERGY_MAX_BODIES = 20_000;
+
+    private final OrbitalStateStore store;
+    private final ForkJoinPool pool;
+
+    private final int massiveCount;
+    private final int total;
+    private final int[] slot;          // body k -> store slot (massive first, then test particles)
+
+    private final double[] px, py, pz; // position relative to origin
+    private final double[] vx, vy, vz;
+    private final double[] ax, ay, az;
+    private final double[] mu;         // massive bodies only
+
+    private final BarnesHutTree tree = new BarnesHutTree();
+    private boolean useTree = false;   // per accelerate() call
+
+    private final double originX, originY, originZ;
+
+    private final long stepNanos;
+    private final double h;
+
+    private long timeNanos;            // integrated state time
+    private long clockNanos;           // last time handed back to the caller
+    private long substeps = 0L;
+
+    public NBodyIntegrator(OrbitalStateStore store, long startNanos, ForkJoinPool pool) {
+        this.store = store;
+        this.pool = pool;
+
+        int n = store.size();
+        boolean[] massive = new boolean[n];
+        boolean[] hasChildren = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            int p = store.getParentIndex(i);
+            if (p >= 0) hasChildren[p] = true;
+        }
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            massive[i] = ASTEROIDS_MASSIVE || !(store.getBody(i) instanceof Asteroid) || hasChildren[i];
+            if (massive[i]) m++;
+        }
+
+        this.massiveCount = m;
+        this.total = n;
+        this.slot = new int[n];
+        int nextMassive = 0, nextTest = m;
+        for (int i = 0; i < n; i++) {
+            if (massive[i]) slot[nextMassive++] = i;
+            else slot[nextTest++] = i;
+        }
+
+        this.px = new double[n]; this.py = new double[n]; this.pz = new double[n];
+        this.vx = new double[n]; this.vy = new double[n]; this.vz = new double[n];
+        this.ax = new double[n]; this.ay = new double[n]; this.az = new double[n];
+        this.mu = new double[m];
+
+        // Absolute state in store slot order (level-major, so parents come first)
+        SimulationTime t = SimulationTime.ofNanos(startNanos);
+        double[] sx = new double[n], sy = new double[n], sz = new double[n];
+        double[] svx = new double[n], svy = new double[n], svz = new double[n];
+        double[] ecc = new double[3], off = new double[3], vel = new double[3];
+        double shortest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            int p = store.getParentIndex(i);
+            if (p < 0 || !(store.period[i] > 0.0) || !Double.isFinite(store.period[i])) {
+                sx[i] = store.x[i]; sy[i] = store.y[i]; sz[i] = store.z[i];
+                if (p >= 0) { svx[i] = svx[p]; svy[i] = svy[p]; svz[i] = svz[p]; }
+                continue;
+            }
+            store.stateAt(i, t, ecc, off, vel);
+            sx[i] = sx[p] + off[0];   sy[i] = sy[p] + off[1];   sz[i] = sz[p] + off[2];
+            svx[i] = svx[p] + vel[0]; svy[i] = svy[p] + vel[1]; svz[i] = svz[p] + vel[2];
+            if (massive[i] && massive[p]) shortest = java.lang.Math.min(shortest, store.period[i]);
+        }
+
+        this.originX = sx[0];
+        this.originY = sy[0];
+        this.originZ = sz[0];
+
+        // Remove the net momentum of the massive bodies so the system doesn't drift away
+        double mSum = 0.0, momX = 0.0, momY = 0.0, momZ = 0.0;
+        for (int k = 0; k < m; k++) {
+            int i = slot[k];
+            mu[k] = store.getMu(i);
+            mSum += mu[k];
+            momX += mu[k] * svx[i]; momY += mu[k] * svy[i]; momZ += mu[k] * svz[i];
+        }
+        double cvx = (mSum > 0.0) ? momX / mSum : 0.0;
+        double cvy = (mSum > 0.0) ? momY / mSum : 0.0;
+        double cvz = (mSum > 0.0) ? momZ / mSum : 0.0;
+
+        for (int k = 0; k < n; k++) {
+            int i = slot[k];
+            px[k] = sx[i] - originX; py[k] = sy[i] - originY; pz[k] = sz[i] - originZ;
+            vx[k] = svx[i] - cvx;    vy[k] = svy[i] - cvy;    vz[k] = svz[i] - cvz;
+        }
+
+        if (!Double.isFinite(shortest)) shortest = 86_400.0;
+        this.stepNanos = java.lang.Math.max(1L, (long) (shortest / STEPS_PER_ORBIT * 1e9));
+        this.h = stepNanos / 1e9;
+
+        this.timeNanos = startNanos;
+        this.clockNanos = startNanos;
+
+        accelerate();
+        writeBack(0.0);
+    }
+
+    public OrbitalStateStore getStore() { return store; }
+    public int getMassiveCount() { return massiveCount; }
+    public int getTestParticleCount() { return total - massiveCount; }
+    /** Fixed substep (seconds). */
+    public double getStepSeconds() { return h; }
+    /** Total substeps integrated so far. */
+    public long getSubsteps() { return substeps; }
+    /** The time last returned by {@link #advanceTo(long)}. */
+    public long getClockNanos() { return clockNanos; }
+
+    /**
+     * Integrates whole substeps up to targetNanos and writes positions into the store.
+     *
+     * @return the simulation time the caller should show: targetNanos, or less if the
+     *         substep cap or frame budget was hit (the clock slows instead of the frame)
+     */
+    public long advanceTo(long targetNanos) {
+        long pending = targetNanos - timeNanos;
+        if (pending < 0L) pending = 0L; // the integrator only runs forward
+
+        long wanted = pending / stepNanos;
+        int limit = (int) java.lang.Math.min(wanted, (long) MAX_SUBSTEPS_PER_STEP);
+        long deadline = System.nanoTime() + FRAME_BUDGET_NANOS;
+        int steps = 0;
+        while (steps < limit) {
+            substep();
+            steps++;
+            if ((steps & 7) == 0 && System.nanoTime() - deadline > 0L) break;
+        }
+        timeNanos += steps * stepNanos;
+        substeps += steps;
+
+        if (steps < wanted) {
+            clockNanos = timeNanos;
+            writeBack(0.0);
+        } else {
+            clockNanos = java.lang.Math.max(targetNanos, timeNanos);
+            writeBack((clockNanos - timeNanos) / 1e9);
+        }
+        return clockNanos;
+    }
+
+    /** Kick-drift-kick. */
+    private void substep() {
+        double half = 0.5 * h;
+        for (int k = 0; k < total; k++) {
+            vx[k] += ax[k] * half; vy[k] += ay[k] * half; vz[k] += az[k] * half;
+            px[k] += vx[k] * h;    py[k] += vy[k] * h;    pz[k] += vz[k] * h;
+        }
+        accelerate();
+        for (int k = 0; k < total; k++) {
+            vx[k] += ax[k] * half; vy[k] += ay[k] * half; vz[k] += az[k] * half;
+        }
+    }
+
+    private void accelerate() {
+        useTree = massiveCount >= BARNES_HUT_MIN_MASSIVE;
+        if (useTree) tree.build(px, py, pz, mu, massiveCount, pool);
+
+        long interactions = useTree
+                ? (long) total * (32 - Integer.numberOfLeadingZeros(massiveCount)) * BarnesHutTree.LEAF_CAPACITY
+                : (long) total * massiveCount;
+        if (pool != null && interactions >= PARALLEL_MIN_INTERACTIONS && total > PARALLEL_GRAIN) {
+            pool.invoke(new ForceTask(0, total));
+        } else {
+            accelerateRange(0, total);
+        }
+    }
+
+    /**
+     * Acceleration of bodies [from, to) from every massive body. Each body sums its own row,
+     * so ranges are independent (no pairwise write-back, no contention).
+     */
+    private void accelerateRange(int from, int to) {
+        if (useTree) {
+            accelerateRangeTree(from, to);
+            return;
+        }
+        final int m = massiveCount;
+        final double eps2 = SOFTENING * SOFTENING;
+        for (int k = from; k < to; k++) {
+            double xk = px[k], yk = py[k], zk = pz[k];
+            double sx = 0.0, sy = 0.0, sz = 0.0;
+            for (int j = 0; j < m; j++) {
+                if (j == k) continue;
+                double dx = px[j] - xk;
+                double dy = py[j] - yk;
+                double dz = pz[j] - zk;
+                double r2 = dx * dx + dy * dy + dz * dz + eps2;
+                double inv = 1.0 / java.lang.Math.sqrt(r2);
+                double f = mu[j] * inv * inv * inv;
+                sx += f * dx;
+                sy += f * dy;
+                sz += f * dz;
+            }
+            ax[k] = sx;
+            ay[k] = sy;
+            az[k] = sz;
+        }
+    }
+
+    private void accelerateRangeTree(int from, int to) {
+        final double eps2 = SOFTENING * SOFTENING;
+        final double theta = THETA;
+        final int m = massiveCount;
+        double[] acc = new double[3];
+        for (int k = from; k < to; k++) {
+            tree.accelerationAt(px[k], py[k], pz[k], (k < m) ? k : -1, theta, eps2, acc);
+            ax[k] = acc[0];
+            ay[k] = acc[1];
+            az[k] = acc[2];
+        }
+    }
+
+    private void writeBack(double extrapolateSeconds) {
+        final double[] x = store.x, y = store.y, z = store.z;
+        double dt = extrapolateSeconds;
+        for (int k = 0; k < total; k++) {
+            int i = slot[k];
+            x[i] = originX + px[k] + vx[k] * dt;
+            y[i] = originY + py[k] + vy[k] * dt;
+            z[i] = originZ + pz[k] + vz[k] * dt;
+        }
+    }
+
+    /** Total energy of the massive bodies (per unit G), for drift diagnostics. O(massive²). */
+    public double computeEnergy() {
+        final int m = massiveCount;
+        if (m > ENERGY_MAX_BODIES) return Double.NaN;
+        final double eps2 = SOFTENING * SOFTENING;
+        double kinetic = 0.0, potential = 0.0;
+        for (int k = 0; k < m; k++) {
+            kinetic += 0.5 * mu[k] * (vx[k] * vx[k] + vy[k] * vy[k] + vz[k] * vz[k]);
+            for (int j = k + 1; j < m; j++) {
+                double dx = px[j] - px[k];
+                double dy = py[j] - py[k];
+                double dz = pz[j] - pz[k];
+                potential -= mu[k] * mu[j] / java.lang.Math.sqrt(dx * dx + dy * dy + dz * dz + eps2);
+            }
+        }
+        return kinetic + potential;
+    }
+
+    private final class ForceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        ForceTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                accelerateRange(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ForceTask(from, mid), new ForceTask(mid, to));
+        }
+    }
+}
@@ -0,0 +1,1123 @@
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Structure-of-arrays orbital element store.
+ *
+ * Holds the Keplerian elements and output positions of every body in the system in
+ * primitive arrays so SimulationEngine can propagate the whole catalog in one tight
+ * loop instead of chasing Planet/Moon/Asteroid objects around the heap.
+ *
+ * Layout (level-major, built by walking parent links):
+ * - level 0: the root star (fixed, parentIndex = -1) plus any body whose parent is not in the system
+ * - level 1: bodies orbiting the star (planets, asteroids, spacecraft not SOI-tracked)
+ * - level 2: moons, level 3: moons of moons / asteroid satellites, and so on
+ * - SOI-tracked bodies after all of those, so their parent can change in place (SoiHandoff)
+ *
+ * Every parent lives in an earlier level than its children, so a level only reads positions
+ * that are already final and can be propagated as one independent batch.
+ *
+ * Body instances are bound to a slot and read their position back from here.
+ *
+ * Threading (see SimulationThread): the simulation side propagates into x/y/z, commits ticks
+ * and publishes snapshots; the render side interpolates the newest snapshot into its own
+ * arrays, which is what Body.getX() and friends read from then on. The two sides only meet in
+ * a lock-free triple buffer.
+ *
+ * Frames (floating origin): x/y/z are relative to the root star (origin, its world position at
+ * build), so sums of parent offsets stay small instead of riding on the star's ~4e7 units.
+ * The render arrays are relative to a render origin the view moves along with the camera
+ * ({@link #setRenderOrigin}); getX() returns those, and camera positions live in the same
+ * frame, so projection differences are taken between small numbers. getWorldX() adds the
+ * render origin back.
+ */
+public final class OrbitalStateStore {
+
+    public static final int ROOT = 0;
+
+    private static final double TWO_PI = 2.0 * java.lang.Math.PI;
+
+    // Mass estimation for bodies without satellites
+    private static final double G_KM3_PER_KG_S2 = 6.674e-20;
+    private static final double PLANET_DENSITY_KG_KM3 = 5.0e12;     // 5000 kg/m³ (rocky)
+    private static final double SMALL_BODY_DENSITY_KG_KM3 = 2.0e12; // 2000 kg/m³ (icy/rubble)
+
+    private final int count;
+    private final Body[] bodies;
+
+    // Elements (sim units / radians / seconds)
+    final int[] parentIndex;
+    final double[] a;
+    final double[] e;
+    final double[] incl;
+    final double[] omegaBig;
+    final double[] omegaSmall;
+    final double[] M0;
+    final double[] meanMotion;
+    final double[] period;
+    final KeplerSolver[] solver;
+
+    // Gravitational parameter GM (sim units³ / s²), estimated at build (see estimateGravitationalParameters)
+    final double[] mu;
+
+    // Cached perifocal → engine basis (P, Q) and semi-minor axis, copied from the body
+    final double[] px, py, pz;
+    final double[] qx, qy, qz;
+    final double[] b;
+
+    // Output positions (simulation side), relative to the origin below
+    final double[] x;
+    final double[] y;
+    final double[] z;
+
+    // Kepler solver metrics (accumulated per propagated range)
+    private final LongAdder keplerSolves = new LongAdder();
+    private final LongAdder keplerIterations = new LongAdder();
+    private final LongAccumulator keplerMaxIterations = new LongAccumulator(java.lang.Math::max, 0L);
+
+    // Last two committed tick states (simulation side); lazily allocated
+    private double[] prevX, prevY, prevZ;
+    private double[] currX, currY, currZ;
+    private long prevTickTime, currTickTime;
+    private int committedTicks = 0;
+
+    // Triple buffer: back is filled by the simulation side, front is held by the render side,
+    // ready is the newest published one
+    private Snapshot back, front;
+    private final AtomicReference<Snapshot> ready = new AtomicReference<>();
+    private long publishedSequence = 0L;
+
+    // Render side: interpolated positions; what getX() reads once the first one was produced
+    private double[] renderX, renderY, renderZ;
+    private double[] viewX, viewY, viewZ;
+
+    // World position of the frame x/y/z are kept in (the root star), and of the render frame
+    private double originX, originY, originZ;
+    private double renderOriginX, renderOriginY, renderOriginZ;
+
+    // Optional Chebyshev ephemeris answering positions instead of the Kepler solver
+    private volatile Ephemeris ephemeris;
+
+    // Optional scheduler deferring bodies whose apparent motion is below a pixel
+    private volatile MotionBudget motionBudget;
+
+    // Solve direct (non-ephemeris) bodies in SIMD-friendly blocks (see KeplerLaneKernel), with one
+    // kernel per propagating thread (~45 KB of lanes, kept rather than allocated per range)
+    private volatile boolean laneKernel = false;
+    private static final ThreadLocal<KeplerLaneKernel> LANES = ThreadLocal.withInitial(KeplerLaneKernel::new);
+
+    // Secular node/periapsis drift applied to every offset (null = fixed ellipses)
+    private volatile SecularPerturbations secular;
+
+    // Level schedule: slots [levelStart[l], levelStart[l + 1]) form level l
+    private int[] levelStart;
+
+    // Bodies whose parent follows SOI crossings (placed in trailing levels), and their monitor
+    private int soiTrackedCount;
+    private volatile SoiHandoff soiHandoff;
+
+    // Spacecraft slots (ascending) and the scheduler executing their burns
+    private int[] spacecraftSlots;
+    private volatile ManeuverScheduler maneuverScheduler;
+
+    // Sizes the store was built from (used to detect list edits)
+    private final int planetCount, moonCount, asteroidCount, spacecraftCount;
+
+    // Held while rebind rewrites a slot's orbit, so snapshotOrbits and syncOrbits never copy half
+    // of one; orbitChanged marks the slots whose bodies have not been given theirs yet
+    private final Object orbitLock = new Object();
+    private final boolean[] orbitChanged;
+    private volatile boolean orbitsChanged;
+    private final boolean snapshot; // a snapshotOrbits copy, which nothing rebinds
+
+    private OrbitalStateStore(int count, int planetCount, int moonCount, int asteroidCount, int spacecraftCount) {
+        this.count = count;
+        this.planetCount = planetCount;
+        this.moonCount = moonCount;
+        this.asteroidCount = asteroidCount;
+        this.spacecraftCount = spacecraftCount;
+        this.snapshot = false;
+        this.orbitChanged = new boolean[count];
+
+        this.bodies = new Body[count];
+        this.parentIndex = new int[count];
+        this.a = new double[count];
+        this.e = new double[count];
+        this.incl = new double[count];
+        this.omegaBig = new double[count];
+        this.omegaSmall = new double[count];
+        this.M0 = new double[count];
+        this.meanMotion = new double[count];
+        this.period = new double[count];
+        this.solver = new KeplerSolver[count];
+        this.mu = new double[count];
+        this.px = new double[count];
+        this.py = new double[count];
+        this.pz = new double[count];
+        this.qx = new double[count];
+        this.qy = new double[count];
+        this.qz = new double[count];
+        this.b = new double[count];
+        this.x = new double[count];
+        this.viewX = this.x;
+        this.y = new double[count];
+        this.viewY = this.y;
+        this.z = new double[count];
+        this.viewZ = this.z;
+    }
+
+    /** Orbits-only copy of src (see snapshotOrbits): bodies shared, parents and elements cloned. */
+    private OrbitalStateStore(OrbitalStateStore src) {
+        this.count = src.count;
+        this.planetCount = src.planetCount;
+        this.moonCount = src.moonCount;
+        this.asteroidCount = src.asteroidCount;
+        this.spacecraftCount = src.spacecraftCount;
+        this.snapshot = true;
+        this.orbitChanged = new boolean[count]; // the bodies belong to src
+
+        this.bodies = src.bodies;
+        this.parentIndex = src.parentIndex.clone();
+        this.a = src.a.clone();
+        this.e = src.e.clone();
+        this.incl = src.incl.clone();
+        this.omegaBig = src.omegaBig.clone();
+        this.omegaSmall = src.omegaSmall.clone();
+        this.M0 = src.M0.clone();
+        this.meanMotion = src.meanMotion.clone();
+        this.period = src.period.clone();
+        this.solver = src.solver.clone();
+        this.mu = src.mu.clone();
+        this.px = src.px.clone();
+        this.py = src.py.clone();
+        this.pz = src.pz.clone();
+        this.qx = src.qx.clone();
+        this.qy = src.qy.clone();
+        this.qz = src.qz.clone();
+        this.b = src.b.clone();
+        this.x = src.x.clone();
+        this.viewX = this.x;
+        this.y = src.y.clone();
+        this.viewY = this.y;
+        this.z = src.z.clone();
+        this.viewZ = this.z;
+
+        this.levelStart = src.levelStart;
+        this.soiTrackedCount = src.soiTrackedCount;
+        this.spacecraftSlots = src.spacecraftSlots;
+        this.secular = src.secular;
+        this.originX = src.originX;
+        this.originY = src.originY;
+        this.originZ = src.originZ;
+    }
+
+    /**
+     * Builds a store for the given system and binds every body to its slot.
+     * Current body positions are copied in so views stay continuous until the next step.
+     */
+    public static OrbitalStateStore build(Star star, List<Planet> planets, List<Moon> moons, List<Asteroid> asteroids) {
+        return build(star, planets, moons, asteroids, Collections.emptyList());
+    }
+
+    /** Same, with spacecraft (placed after the natural bodies, see ManeuverScheduler). */
+    public static OrbitalStateStore build(Star star, List<Planet> planets, List<Moon> moons, List<Asteroid> asteroids,
+                                          List<Spacecraft> spacecraft) {
+        int n = 1 + planets.size() + moons.size() + asteroids.size() + spacecraft.size();
+        OrbitalStateStore s = new OrbitalStateStore(n, planets.size(), moons.size(), asteroids.size(), spacecraft.size());
+
+        // Gather in list order; the level sort below is stable, so this stays the tie-break
+        Body[] all = new Body[n];
+        int k = 0;
+        all[k++] = star;
+        for (Planet p : planets)     all[k++] = p;
+        for (Moon m : moons)         all[k++] = m;
+        for (Asteroid a : asteroids) all[k++] = a;
+        for (Spacecraft c : spacecraft) all[k++] = c;
+
+        IdentityHashMap<Body, Integer> listIndex = new IdentityHashMap<>(n * 2);
+        for (int i = 0; i < n; i++) listIndex.put(all[i], i);
+
+        int[] depth = computeDepths(all, listIndex);
+        s.soiTrackedCount = placeTrackedLast(all, listIndex, depth);
+
+        // Counting sort by depth → level-major slot order
+        int maxDepth = 0;
+        for (int d : depth) maxDepth = java.lang.Math.max(maxDepth, d);
+
+        int[] levelStart = new int[maxDepth + 2];
+        for (int d : depth) levelStart[d + 1]++;
+        for (int l = 0; l <= maxDepth; l++) levelStart[l + 1] += levelStart[l];
+
+        int[] next = levelStart.clone();
+        int[] slotOf = new int[n];
+        for (int i = 0; i < n; i++) slotOf[i] = next[depth[i]]++;
+
+        s.levelStart = levelStart;
+        s.addRoot(slotOf[0], star);
+        for (int i = 1; i < n; i++) {
+            OrbitingBody ob = (OrbitingBody) all[i];
+            Integer p = (ob.parent != null) ? listIndex.get(ob.parent) : null;
+            s.addOrbiting(slotOf[i], ob, (p != null) ? slotOf[p] : -1);
+        }
+
+        s.estimateGravitationalParameters();
+
+        int[] craft = new int[spacecraft.size()];
+        int c = 0;
+        for (int slot = 0; slot < n; slot++) {
+            s.bodies[slot].bindToStore(s, slot);
+            if (s.bodies[slot] instanceof Spacecraft) craft[c++] = slot;
+        }
+        s.spacecraftSlots = craft;
+        return s;
+    }
+
+    /**
+     * The save format carries no masses, so GM is recovered from the orbits:
+     * - a body with satellites: Kepler's third law, μ ≈ n² a³, averaged over its satellites
+     * - otherwise: a bulk density estimate from its radius
+     */
+    private void estimateGravitationalParameters() {
+        double[] sum = new double[count];
+        int[] satellites = new int[count];
+        for (int i = 0; i < count; i++) {
+            int p = parentIndex[i];
+            if (p < 0 || period[i] <= 0.0 || !Double.isFinite(period[i])) continue;
+            sum[p] += meanMotion[i] * meanMotion[i] * a[i] * a[i] * a[i];
+            satellites[p]++;
+        }
+
+        double kmPerUnit = SimulationView.SCALE_KM_PER_UNIT;
+        for (int i = 0; i < count; i++) {
+            if (satellites[i] > 0) {
+                mu[i] = sum[i] / satellites[i];
+                continue;
+            }
+            double density = (bodies[i] instanceof Planet) ? PLANET_DENSITY_KG_KM3 : SMALL_BODY_DENSITY_KG_KM3;
+            double rKm = bodies[i].getRadius() * kmPerUnit;
+            double massKg = density * (4.0 / 3.0) * java.lang.Math.PI * rKm * rKm * rKm;
+            double muKm = G_KM3_PER_KG_S2 * massKg;
+            mu[i] = muKm / (kmPerUnit * kmPerUnit * kmPerUnit);
+        }
+    }
+
+    /**
+     * Depth of each body in the parent hierarchy (star = 0, planets = 1, moons = 2, ...).
+     * Bodies whose parent is missing from the system are fixed and get depth 0.
+     */
+    private static int[] computeDepths(Body[] all, IdentityHashMap<Body, Integer> listIndex) {
+        int n = all.length;
+        int[] depth = new int[n];
+        java.util.Arrays.fill(depth, -1);
+        depth[0] = 0;
+
+        int[] chain = new int[n];
+        for (int i = 1; i < n; i++) {
+            // Walk up until we hit a body with a known depth, then unwind
+            int len = 0;
+            int cur = i;
+            while (cur >= 0 && depth[cur] < 0) {
+                if (len == n) throw new IllegalStateException("Cycle in orbital parent links at " + all[i].getName());
+                chain[len++] = cur;
+                Body parent = (all[cur] instanceof OrbitingBody ob) ? ob.parent : null;
+                Integer p = (parent != null) ? listIndex.get(parent) : null;
+                cur = (p != null) ? p : -1;
+            }
+            int d = (cur >= 0) ? depth[cur] : -1;
+            for (int c = len - 1; c >= 0; c--) depth[chain[c]] = ++d;
+        }
+        return depth;
+    }
+
+    /**
+     * Moves SOI-tracked bodies (and whatever orbits them) below every other level, so a handoff
+     * can give them any untracked parent without reordering slots (see SoiHandoff).
+     *
+     * @return number of tracked bodies
+     */
+    private static int placeTrackedLast(Body[] all, IdentityHashMap<Body, Integer> listIndex, int[] depth) {
+        int n = all.length;
+        boolean[] below = new boolean[n]; // tracked, or orbiting a tracked body
+        int tracked = 0;
+        for (int i = 1; i < n; i++) {
+            if (((OrbitingBody) all[i]).isSoiTracked()) tracked++;
+            for (Body b = all[i]; b instanceof OrbitingBody ob; ) {
+                if (ob.isSoiTracked()) {
+                    below[i] = true;
+                    break;
+                }
+                Integer p = (ob.parent != null) ? listIndex.get(ob.parent) : null;
+                b = (p != null) ? all[p] : null;
+            }
+        }
+        if (tracked == 0) return 0;
+
+        int trackedLevel = 1;
+        for (int i = 0; i < n; i++) if (!below[i]) trackedLevel = java.lang.Math.max(trackedLevel, depth[i] + 1);
+
+        // Parents first (by original depth), so a moved parent's new depth is known
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        java.util.Arrays.sort(order, java.util.Comparator.comparingInt(i -> depth[i]));
+        for (int i : order) {
+            if (!below[i]) continue;
+            OrbitingBody ob = (OrbitingBody) all[i];
+            Integer p = (ob.parent != null) ? listIndex.get(ob.parent) : null;
+            int d = (p != null) ? depth[p] + 1 : 0;
+            depth[i] = ob.isSoiTracked() ? java.lang.Math.max(trackedLevel, d) : d;
+        }
+        return tracked;
+    }
+
+    private void addRoot(int i, Star star) {
+        bodies[i] = star;
+        parentIndex[i] = -1;
+        originX = renderOriginX = star.getWorldX();
+        originY = renderOriginY = star.getWorldY();
+        originZ = renderOriginZ = star.getWorldZ();
+        x[i] = 0.0;
+        y[i] = 0.0;
+        z[i] = 0.0;
+    }
+
+    private void addOrbiting(int i, OrbitingBody ob, int parentSlot) {
+        bodies[i] = ob;
+        parentIndex[i] = parentSlot;
+        loadElements(i, ob);
+
+        x[i] = ob.getWorldX() - originX;
+        y[i] = ob.getWorldY() - originY;
+        z[i] = ob.getWorldZ() - originZ;
+    }
+
+    private void loadElements(int i, OrbitingBody ob) {
+        a[i]          = ob.a;
+        e[i]          = ob.e;
+        incl[i]       = ob.inclRad;
+        omegaBig[i]   = ob.omegaBigRad;
+        omegaSmall[i] = ob.omegaSmallRad;
+        M0[i]         = ob.M0Rad;
+        meanMotion[i] = ob.meanMotion;
+        period[i]     = ob.periodSeconds;
+        solver[i]     = ob.keplerSolver();
+
+        px[i] = ob.pX; py[i] = ob.pY; pz[i] = ob.pZ;
+        qx[i] = ob.qX; qy[i] = ob.qY; qz[i] = ob.qZ;
+        b[i]  = ob.semiMinor;
+    }
+
+    /**
+     * Simulation side: slot i (an SOI-tracked body or a spacecraft after a burn) now orbits
+     * parentSlot, with the elements of state (pos, vel) relative to it at t
+     * (OrbitingBody.stateToElements). Only the store's arrays change here; the body's fields
+     * follow on the render side (syncOrbits). Caches keyed on the old orbit are dropped; the
+     * position is left for the next propagation.
+     */
+    void rebind(int i, int parentSlot, double[] pos, double[] vel, SimulationTime t) {
+        double[] el = new double[OrbitingBody.EL_COUNT];
+        double[] pq = new double[6];
+        OrbitingBody.stateToElements(mu[parentSlot], pos, vel, t, el);
+        OrbitingBody.perifocalBasis(el[OrbitingBody.EL_NODE], el[OrbitingBody.EL_INCL], el[OrbitingBody.EL_ARG_PERI], pq);
+        double ei = el[OrbitingBody.EL_E];
+
+        synchronized (orbitLock) {
+            parentIndex[i] = parentSlot;
+            a[i]          = el[OrbitingBody.EL_A];
+            e[i]          = ei;
+            incl[i]       = el[OrbitingBody.EL_INCL];
+            omegaBig[i]   = el[OrbitingBody.EL_NODE];
+            omegaSmall[i] = el[OrbitingBody.EL_ARG_PERI];
+            M0[i]         = el[OrbitingBody.EL_M0];
+            meanMotion[i] = el[OrbitingBody.EL_N];
+            period[i]     = el[OrbitingBody.EL_PERIOD];
+            px[i] = pq[0]; py[i] = pq[1]; pz[i] = pq[2];
+            qx[i] = pq[3]; qy[i] = pq[4]; qz[i] = pq[5];
+            b[i]  = a[i] * java.lang.Math.sqrt(java.lang.Math.abs(1.0 - ei * ei));
+            if (!orbitChanged[i]) {
+                orbitChanged[i] = true;
+                orbitsChanged = true;
+            }
+        }
+
+        Ephemeris eph = this.ephemeris;
+        if (eph != null) eph.invalidate(i);
+        MotionBudget mb = this.motionBudget;
+        if (mb != null) mb.invalidate(i);
+    }
+
+    /**
+     * Render side: copies the orbits rebound since the last call into their bodies (parent and
+     * elements, which the orbit paths, the HUD and save() read). Bodies only ever see a whole
+     * orbit, and the simulation side never writes their fields.
+     */
+    public void syncOrbits() {
+        if (!orbitsChanged) return;
+        synchronized (orbitLock) {
+            for (int i = 0; i < count; i++) {
+                if (!orbitChanged[i]) continue;
+                orbitChanged[i] = false;
+                ((OrbitingBody) bodies[i]).setElements(bodies[parentIndex[i]], a[i], e[i], incl[i],
+                        omegaBig[i], omegaSmall[i], M0[i], meanMotion[i], period[i]);
+            }
+            orbitsChanged = false;
+        }
+    }
+
+    /**
+     * Simulation side: re-places slots[0 .. count) at time t after they were rebound, always
+     * solving; levels below the shallowest of them are re-propagated too (their satellites).
+     * Parents must not be among the slots unless they are in an earlier level.
+     */
+    void repropagate(int[] slots, int count, long t) {
+        SimulationTime st = SimulationTime.ofNanos(t);
+        int last = getLevelCount() - 1;
+        int below = last + 1;
+        final double[] ecc = new double[3];
+        final double[] off = new double[3];
+        for (int k = 0; k < count; k++) {
+            // Solved directly: the ephemeris was just invalidated for these
+            int i = slots[k];
+            int p = parentIndex[i];
+            offsetAt(i, st, ecc, off);
+            x[i] = x[p] + off[0];
+            y[i] = y[p] + off[1];
+            z[i] = z[p] + off[2];
+            if (i < levelStart[last]) below = java.lang.Math.min(below, levelOf(i) + 1);
+        }
+        for (int l = below; l <= last; l++) propagateRange(levelStart[l], levelStart[l + 1], st, null);
+    }
+
+    private int levelOf(int i) {
+        int l = java.util.Arrays.binarySearch(levelStart, i);
+        if (l < 0) return -l - 2;
+        while (levelStart[l + 1] == i) l++; // empty levels share a start
+        return l;
+    }
+
+    /**
+     * True if this store still describes the given system: same star, same list sizes, and every
+     * listed body bound to this store (a body swapped in since the build is not).
+     */
+    public boolean matches(Star star, List<Planet> planets, List<Moon> moons, List<Asteroid> asteroids) {
+        return matches(star, planets, moons, asteroids, Collections.emptyList());
+    }
+
+    public boolean matches(Star star, List<Planet> planets, List<Moon> moons, List<Asteroid> asteroids,
+                           List<Spacecraft> spacecraft) {
+        return bodies[ROOT] == star
+                && planetCount == planets.size()
+                && moonCount == moons.size()
+                && asteroidCount == asteroids.size()
+                && spacecraftCount == spacecraft.size()
+                && boundHere(planets) && boundHere(moons) && boundHere(asteroids) && boundHere(spacecraft);
+    }
+
+    private boolean boundHere(List<? extends Body> list) {
+        for (int i = 0, n = list.size(); i < n; i++) {
+            if (list.get(i).store != this) return false;
+        }
+        return true;
+    }
+
+    public int size() { return count; }
+    public Body getBody(int i) { return bodies[i]; }
+    public int getParentIndex(int i) { return parentIndex[i]; }
+    /** Estimated gravitational parameter GM of slot i (sim units³ / s²). */
+    public double getMu(int i) { return mu[i]; }
+
+    /**
+     * Upper bound on slot i's speed relative to its parent (units/s): the periapsis speed
+     * n a sqrt((1 + e) / |1 - e|), which holds for hyperbolic orbits too (a is |a| there).
+     */
+    public double getMaxOrbitalSpeed(int i) {
+        double ei = e[i];
+        return meanMotion[i] * a[i] * java.lang.Math.sqrt((1.0 + ei) / java.lang.Math.max(1e-6, java.lang.Math.abs(1.0 - ei)));
+    }
+
+    /** Kepler solves since the last {@link #resetKeplerMetrics()}. */
+    public long getKeplerSolves() { return keplerSolves.sum(); }
+    /** Total solver iterations since the last reset. */
+    public long getKeplerIterations() { return keplerIterations.sum(); }
+    /** Worst single solve since the last reset. */
+    public long getKeplerMaxIterations() { return keplerMaxIterations.get(); }
+
+    public void resetKeplerMetrics() {
+        keplerSolves.reset();
+        keplerIterations.reset();
+        keplerMaxIterations.reset();
+    }
+
+    public Ephemeris getEphemeris() { return ephemeris; }
+
+    /** Routes propagation through the given ephemeris (null = solve Kepler directly). */
+    public void setEphemeris(Ephemeris ephemeris) {
+        if (ephemeris != null && ephemeris.getStore() != this) {
+            throw new IllegalArgumentException("Ephemeris was built for a different store");
+        }
+        this.ephemeris = ephemeris;
+    }
+
+    public MotionBudget getMotionBudget() { return motionBudget; }
+
+    /** Lets propagation skip bodies whose on-screen motion stays within budget (null = solve all). */
+    public void setMotionBudget(MotionBudget motionBudget) {
+        if (motionBudget != null && motionBudget.getStore() != this) {
+            throw new IllegalArgumentException("MotionBudget was built for a different store");
+        }
+        this.motionBudget = motionBudget;
+    }
+
+    /** Bodies built as SOI-tracked (OrbitingBody.isSoiTracked). */
+    public int getSoiTrackedCount() { return soiTrackedCount; }
+
+    public SoiHandoff getSoiHandoff() { return soiHandoff; }
+
+    /** Attaches (or detaches, with null) the SOI handoff monitor; it must belong to this store. */
+    public void setSoiHandoff(SoiHandoff soiHandoff) {
+        if (soiHandoff != null && soiHandoff.getStore() != this) {
+            throw new IllegalArgumentException("SOI handoff belongs to another store");
+        }
+        this.soiHandoff = soiHandoff;
+    }
+
+    /**
+     * The parents and elements as they are now, for readers off the simulation side
+     * (TrajectorySampler, CloseApproachFinder, EclipseFinder). Slots are only rebound when the
+     * store has SOI-tracked bodies or spacecraft; then this is a copy taken between two rebinds,
+     * otherwise the store itself. A copy shares the bodies and the secular model, keeps the
+     * positions last propagated and is never propagated itself.
+     */
+    public OrbitalStateStore snapshotOrbits() {
+        if (snapshot || (soiTrackedCount == 0 && spacecraftSlots.length == 0)) return this;
+        synchronized (orbitLock) {
+            return new OrbitalStateStore(this);
+        }
+    }
+
+    /** Slots of the spacecraft in this store, ascending (do not modify). */
+    public int[] getSpacecraftSlots() { return spacecraftSlots; }
+
+    public ManeuverScheduler getManeuverScheduler() { return maneuverScheduler; }
+
+    /** Attaches (or detaches, with null) the maneuver scheduler; it must belong to this store. */
+    public void setManeuverScheduler(ManeuverScheduler maneuverScheduler) {
+        if (maneuverScheduler != null && maneuverScheduler.getStore() != this) {
+            throw new IllegalArgumentException("Maneuver scheduler belongs to another store");
+        }
+        this.maneuverScheduler = maneuverScheduler;
+    }
+
+    public SecularPerturbations getSecularPerturbations() { return secular; }
+
+    /**
+     * Attaches (or detaches, with null) secular drift; it must belong to this store. Cached
+     * motion-budget offsets were rotated for the old model, so they are dropped.
+     */
+    public void setSecularPerturbations(SecularPerturbations secular) {
+        if (secular != null && secular.getStore() != this) {
+            throw new IllegalArgumentException("Secular perturbations belong to another store");
+        }
+        this.secular = secular;
+        MotionBudget mb = this.motionBudget;
+        if (mb != null) for (int i = 0; i < count; i++) mb.invalidate(i);
+    }
+
+    public boolean isLaneKernel() { return laneKernel; }
+
+    /** Solves Kepler in blocks with KeplerLaneKernel instead of one body at a time. */
+    public void setLaneKernel(boolean laneKernel) { this.laneKernel = laneKernel; }
+
+    /** Number of hierarchy levels (star = level 0). */
+    public int getLevelCount() { return levelStart.length - 1; }
+    public int getLevelStart(int level) { return levelStart[level]; }
+    public int getLevelEnd(int level) { return levelStart[level + 1]; }
+
+    /** Position as seen by readers: the rendered state once one exists, else the propagated one. */
+    public double getX(int i) { return viewX[i]; }
+    public double getY(int i) { return viewY[i]; }
+    public double getZ(int i) { return viewZ[i]; }
+
+    public double getWorldX(int i) { return viewX[i] + renderOriginX; }
+    public double getWorldY(int i) { return viewY[i] + renderOriginY; }
+    public double getWorldZ(int i) { return viewZ[i] + renderOriginZ; }
+
+    /** World position of the simulation frame (the root star at build). */
+    public double getOriginX() { return originX; }
+    public double getOriginY() { return originY; }
+    public double getOriginZ() { return originZ; }
+
+    public double getRenderOriginX() { return renderOriginX; }
+    public double getRenderOriginY() { return renderOriginY; }
+    public double getRenderOriginZ() { return renderOriginZ; }
+
+    /**
+     * Render side: world position that getX() and friends are relative to from now on. The
+     * visible positions are moved right away, so the caller moves its camera by the same amount.
+     */
+    public void setRenderOrigin(double wx, double wy, double wz) {
+        double dx = wx - renderOriginX, dy = wy - renderOriginY, dz = wz - renderOriginZ;
+        if (dx == 0.0 && dy == 0.0 && dz == 0.0) return;
+        renderOriginX = wx;
+        renderOriginY = wy;
+        renderOriginZ = wz;
+
+        if (renderX == null) {
+            // No snapshot drawn yet: start the render arrays from the simulation side's
+            renderX = x.clone(); renderY = y.clone(); renderZ = z.clone();
+            dx = wx - originX; dy = wy - originY; dz = wz - originZ;
+            viewX = renderX; viewY = renderY; viewZ = renderZ;
+        }
+        for (int i = 0; i < count; i++) {
+            renderX[i] -= dx;
+            renderY[i] -= dy;
+            renderZ[i] -= dz;
+        }
+    }
+
+    /**
+     * Positions of the last two committed ticks, as handed to the render side. The simulation
+     * side never touches a snapshot between publishing it and getting it back from the buffer,
+     * so a reader may treat it as immutable while it holds it.
+     */
+    public static final class Snapshot {
+        final double[] prevX, prevY, prevZ;
+        final double[] currX, currY, currZ;
+        volatile long sequence;       // written last, so a recycled snapshot never looks newer
+        long prevTime, currTime;      // simulation time of the two ticks (ns)
+        long publishedAtNanos;        // System.nanoTime() at publication
+        long pendingNanos;            // real time already accumulated towards the next tick
+
+        Snapshot(int n) {
+            prevX = new double[n]; prevY = new double[n]; prevZ = new double[n];
+            currX = new double[n]; currY = new double[n]; currZ = new double[n];
+        }
+
+        public long getPrevTime() { return prevTime; }
+        public long getCurrTime() { return currTime; }
+        public long getPublishedAtNanos() { return publishedAtNanos; }
+        public long getPendingNanos() { return pendingNanos; }
+    }
+
+    /**
+     * Simulation side: records the positions just propagated (at simulation time tickTime) as
+     * the newest tick; the previous newest becomes the interpolation start.
+     */
+    public void commitTick(long tickTime) {
+        if (currX == null) {
+            prevX = new double[count]; prevY = new double[count]; prevZ = new double[count];
+            currX = new double[count]; currY = new double[count]; currZ = new double[count];
+        }
+        double[] t;
+        t = prevX; prevX = currX; currX = t;
+        t = prevY; prevY = currY; currY = t;
+        t = prevZ; prevZ = currZ; currZ = t;
+        prevTickTime = currTickTime;
+        currTickTime = tickTime;
+
+        System.arraycopy(x, 0, currX, 0, count);
+        System.arraycopy(y, 0, currY, 0, count);
+        System.arraycopy(z, 0, currZ, 0, count);
+
+        if (committedTicks == 0) {
+            System.arraycopy(x, 0, prevX, 0, count);
+            System.arraycopy(y, 0, prevY, 0, count);
+            System.arraycopy(z, 0, prevZ, 0, count);
+            prevTickTime = tickTime;
+        }
+        committedTicks++;
+    }
+
+    /** Simulation side: hands the last two committed ticks to the render side (no-op before the first commit). */
+    public void publish(long publishedAtNanos, long pendingNanos) {
+        if (committedTicks == 0) return;
+        if (back == null) back = new Snapshot(count);
+
+        System.arraycopy(prevX, 0, back.prevX, 0, count);
+        System.arraycopy(prevY, 0, back.prevY, 0, count);
+        System.arraycopy(prevZ, 0, back.prevZ, 0, count);
+        System.arraycopy(currX, 0, back.currX, 0, count);
+        System.arraycopy(currY, 0, back.currY, 0, count);
+        System.arraycopy(currZ, 0, back.currZ, 0, count);
+        back.prevTime = prevTickTime;
+        back.currTime = currTickTime;
+        back.publishedAtNanos = publishedAtNanos;
+        back.pendingNanos = pendingNanos;
+        back.sequence = ++publishedSequence;
+
+        // Whatever was ready (possibly the render side's previous front) becomes the next back
+        back = ready.getAndSet(back);
+    }
+
+    /** Render side: the newest published snapshot, or null if nothing was published yet. */
+    public Snapshot acquireSnapshot() {
+        Snapshot r = ready.get();
+        if (r != null && (front == null || r.sequence > front.sequence)) {
+            Snapshot old = front;
+            front = ready.getAndSet(old);
+        }
+        return front;
+    }
+
+    /**
+     * Render side: writes prev + (curr - prev) * alpha of the snapshot into the render arrays
+     * and makes them what getX() reads.
+     */
+    public void interpolate(Snapshot s, double alpha) {
+        if (renderX == null) {
+            renderX = new double[count]; renderY = new double[count]; renderZ = new double[count];
+        }
+        // Simulation frame -> render frame
+        double sx = renderOriginX - originX, sy = renderOriginY - originY, sz = renderOriginZ - originZ;
+        for (int i = 0; i < count; i++) {
+            renderX[i] = s.prevX[i] + (s.currX[i] - s.prevX[i]) * alpha - sx;
+            renderY[i] = s.prevY[i] + (s.currY[i] - s.prevY[i]) * alpha - sy;
+            renderZ[i] = s.prevZ[i] + (s.currZ[i] - s.prevZ[i]) * alpha - sz;
+        }
+        viewX = renderX;
+        viewY = renderY;
+        viewZ = renderZ;
+    }
+
+    /** Moves every body to its position at the given simulation time (nanoseconds). */
+    public void propagate(long simulationTime) {
+        // Level by level: a level only reads parents from earlier levels
+        SimulationTime t = SimulationTime.ofNanos(simulationTime);
+        MotionBudget mb = beginPass();
+        for (int l = 1; l < getLevelCount(); l++) {
+            propagateRange(levelStart[l], levelStart[l + 1], t, mb);
+        }
+    }
+
+    private MotionBudget beginPass() {
+        MotionBudget mb = this.motionBudget;
+        if (mb != null) mb.beginPass();
+        return mb;
+    }
+
+    /**
+     * Parallel variant of {@link #propagate(long)}.
+     *
+     * Levels run one after another; within a level every body only reads positions from
+     * earlier levels, so the level is split into chunks on the pool. Small levels (planets,
+     * most moon systems) stay on the calling thread.
+     *
+     * @param grain smallest chunk handed to a single task
+     */
+    public void propagateParallel(long simulationTime, ForkJoinPool pool, int grain) {
+        SimulationTime t = SimulationTime.ofNanos(simulationTime);
+        MotionBudget mb = beginPass();
+
+        for (int l = 1; l < getLevelCount(); l++) {
+            int from = levelStart[l];
+            int to = levelStart[l + 1];
+            if (to - from <= grain) {
+                propagateRange(from, to, t, mb);
+            } else {
+                pool.invoke(new PropagateTask(this, from, to, t, grain, mb));
+            }
+        }
+    }
+
+    /** Propagates a single slot, always solving it (parent position must already be current). */
+    void propagateOne(int i, long simulationTime) {
+        propagateRange(i, i + 1, SimulationTime.ofNanos(simulationTime), null);
+    }
+
+    /**
+     * Propagates slots [from, to) to time t (each body at its exact phase, see SimulationTime).
+     * Parents are read from the output arrays, so they must already be propagated, and the range
+     * must not contain both a body and its parent (lane blocks are written back when flushed).
+     *
+     * Offsets come from the ephemeris when one is attached and has the segment, else from the
+     * Kepler solver (in lane blocks when enabled), and are then precessed by the secular model
+     * if one is attached; with a motion budget, bodies that aren't due keep their cached offset.
+     */
+    void propagateRange(int from, int to, SimulationTime t, MotionBudget mb) {
+        final double tSeconds = t.seconds(); // motion budget bookkeeping and secular drift only
+        final Ephemeris eph = this.ephemeris;
+        final SecularPerturbations sec = this.secular;
+        final KeplerLaneKernel lanes = laneKernel ? LANES.get() : null;
+        if (lanes != null) lanes.clear();
+        final int[] parentIndex = this.parentIndex;
+        final double[] x = this.x, y = this.y, z = this.z;
+
+        final double[] ecc = new double[3]; // E, sin E, cos E
+        final double[] off = new double[3];
+        long iterations = 0;
+        int maxIterations = 0;
+        int solves = 0;
+        int hits = 0;
+        int skipped = 0;
+
+        for (int i = from; i < to; i++) {
+            int p = parentIndex[i];
+            if (p < 0) continue; // non-orbiting
+
+            if (mb != null && !mb.isDue(i, tSeconds)) {
+                mb.cached(i, off);
+                skipped++;
+            } else {
+                double tOrbit = t.phase(period[i]);
+                if (eph != null && eph.offset(i, tOrbit, off)) {
+                    hits++;
+                } else if (lanes != null && e[i] <= KeplerLaneKernel.MAX_ECCENTRICITY) {
+                    lanes.add(this, i, tOrbit);
+                    if (lanes.isFull()) {
+                        iterations += flushLanes(lanes, tSeconds, mb, sec);
+                        solves += KeplerLaneKernel.BLOCK;
+                        maxIterations = java.lang.Math.max(maxIterations, lanes.iterations);
+                        lanes.clear();
+                    }
+                    continue; // written when the block is flushed
+                } else {
+                    int it = offsetAtPhase(i, tOrbit, ecc, off);
+                    iterations += it;
+                    if (it > maxIterations) maxIterations = it;
+                    solves++;
+                }
+                if (sec != null) sec.applyPropagated(i, tSeconds, off);
+                if (mb != null) mb.record(i, tSeconds, off);
+            }
+
+            x[i] = x[p] + off[0];
+            y[i] = y[p] + off[1];
+            z[i] = z[p] + off[2];
+        }
+
+        if (lanes != null && lanes.count > 0) {
+            iterations += flushLanes(lanes, tSeconds, mb, sec);
+            solves += lanes.count;
+            maxIterations = java.lang.Math.max(maxIterations, lanes.iterations);
+        }
+
+        recordKeplerMetrics(solves, iterations, maxIterations);
+        if (eph != null) eph.recordStats(hits, solves);
+        if (mb != null) mb.recordStats(hits + solves, skipped);
+    }
+
+    /** Solves a lane block and writes it back; returns the Newton iterations spent. */
+    private long flushLanes(KeplerLaneKernel lanes, double tSeconds, MotionBudget mb, SecularPerturbations sec) {
+        lanes.solve();
+
+        final double[] off = new double[3];
+        for (int k = 0; k < lanes.count; k++) {
+            int i = lanes.slot[k];
+            int p = parentIndex[i];
+            off[0] = lanes.outX[k];
+            off[1] = lanes.outY[k];
+            off[2] = lanes.outZ[k];
+            if (sec != null) sec.applyPropagated(i, tSeconds, off);
+            if (mb != null) mb.record(i, tSeconds, off);
+
+            x[i] = x[p] + off[0];
+            y[i] = y[p] + off[1];
+            z[i] = z[p] + off[2];
+        }
+        return (long) lanes.count * lanes.iterations;
+    }
+
+    /**
+     * Position of slot i relative to its parent at time tSeconds (engine frame).
+     * Pure: reads only the element arrays, so it is safe from any thread.
+     *
+     * @param ecc scratch for the solver (E, sin E, cos E)
+     * @param out receives the x/y/z offset
+     * @return Kepler solver iterations used
+     */
+    int computeOffset(int i, double tSeconds, double[] ecc, double[] out) {
+        // Wrap to [0, period) for stability (an infinite period leaves it as is)
+        double tOrbit = tSeconds % period[i];
+        if (tOrbit < 0.0 && period[i] < Double.POSITIVE_INFINITY) tOrbit += period[i];
+        return offsetAtPhase(i, tOrbit, ecc, out);
+    }
+
+    /**
+     * Position of slot i relative to its parent at t as propagation places it: the Kepler
+     * offset, precessed when secular drift is attached. Pure, like {@link #computeOffset}.
+     */
+    int offsetAt(int i, SimulationTime t, double[] ecc, double[] out) {
+        int it = offsetAtPhase(i, t.phase(period[i]), ecc, out);
+        SecularPerturbations sec = this.secular;
+        if (sec != null) sec.apply(i, t.seconds(), out, ecc);
+        return it;
+    }
+
+    /**
+     * Position of slot i relative to slot ancestor at t: the {@link #offsetAt} of each slot on
+     * the way up, summed. With no ancestor (-1) that is the simulation frame: the chain ends at a
+     * root, the star at the frame origin or a fixed orphan, whose position is added. Pure.
+     *
+     * @param off scratch for one slot's offset
+     */
+    void chainOffset(int i, int ancestor, SimulationTime t, double[] ecc, double[] off, double[] out) {
+        out[0] = out[1] = out[2] = 0.0;
+        int c = i;
+        for (int p = parentIndex[c]; c != ancestor && p >= 0; c = p, p = parentIndex[c]) {
+            offsetAt(c, t, ecc, off);
+            out[0] += off[0];
+            out[1] += off[1];
+            out[2] += off[2];
+        }
+        if (c != ancestor) {
+            out[0] += x[c];
+            out[1] += y[c];
+            out[2] += z[c];
+        }
+    }
+
+    /** Deepest slot that both a and b are or orbit (directly or not), or -1 if they share no root. */
+    int commonAncestor(int a, int b) {
+        if (a < 0 || b < 0) return -1;
+        int da = depth(a), db = depth(b);
+        for (; da > db; da--) a = parentIndex[a];
+        for (; db > da; db--) b = parentIndex[b];
+        while (a != b && a >= 0 && b >= 0) {
+            a = parentIndex[a];
+            b = parentIndex[b];
+        }
+        return (a == b) ? a : -1;
+    }
+
+    /** Parents above slot i (0 for a root). Walked, as handoffs move slots between parents. */
+    private int depth(int i) {
+        int d = 0;
+        for (int p = parentIndex[i]; p >= 0; p = parentIndex[p]) d++;
+        return d;
+    }
+
+    /** {@link #computeOffset} for a time already wrapped to [0, period). */
+    int offsetAtPhase(int i, double tOrbit, double[] ecc, double[] out) {
+        double ei = e[i];
+        if (ei >= 1.0) return hyperbolicOffset(i, tOrbit, ecc, out);
+
+        // Mean anomaly M(t) = M0 + n t, normalized to [-π, π]
+        double M = M0[i] + meanMotion[i] * tOrbit;
+        M -= TWO_PI * java.lang.Math.rint(M / TWO_PI);
+
+        // Solve Kepler’s equation: M = E - e sin E
+        int it = solver[i].solve(M, ei, ecc);
+
+        double sinE = ecc[1];
+        double cosE = ecc[2];
+
+        // Orbit-plane position, rotated into the engine frame by the cached P/Q basis
+        double xP = a[i] * (cosE - ei);
+        double yP = b[i] * sinE;
+
+        out[0] = xP * px[i] + yP * qx[i];
+        out[1] = xP * py[i] + yP * qy[i];
+        out[2] = xP * pz[i] + yP * qz[i];
+        return it;
+    }
+
+    /**
+     * Hyperbolic orbits (e > 1, SOI handoffs; see SoiHandoff): period is infinite, so tOrbit is
+     * the plain time since epoch and M is not wrapped; a holds |a| and b = a sqrt(e² - 1).
+     * ecc receives H, sinh H, cosh H.
+     */
+    private int hyperbolicOffset(int i, double tOrbit, double[] ecc, double[] out) {
+        double ei = e[i];
+        double M = M0[i] + meanMotion[i] * tOrbit;
+        int it = KeplerSolver.solveHyperbolic(M, ei, ecc);
+
+        double xP = a[i] * (ei - ecc[2]);
+        double yP = b[i] * ecc[1];
+
+        out[0] = xP * px[i] + yP * qx[i];
+        out[1] = xP * py[i] + yP * qy[i];
+        out[2] = xP * pz[i] + yP * qz[i];
+        return it;
+    }
+
+    /**
+     * Parent-relative position and velocity of slot i at tSeconds (engine frame, units and units/s).
+     * Pure, like {@link #computeOffset}.
+     */
+    void computeState(int i, double tSeconds, double[] ecc, double[] pos, double[] vel) {
+        computeOffset(i, tSeconds, ecc, pos);
+
+        double ei = e[i];
+        if (ei >= 1.0) {
+            // dH/dt = n / (e cosh H - 1)
+            double dHdt = meanMotion[i] / (ei * ecc[2] - 1.0);
+            double vxP = -a[i] * ecc[1] * dHdt;
+            double vyP =  b[i] * ecc[2] * dHdt;
+            vel[0] = vxP * px[i] + vyP * qx[i];
+            vel[1] = vxP * py[i] + vyP * qy[i];
+            vel[2] = vxP * pz[i] + vyP * qz[i];
+            return;
+        }
+        double sinE = ecc[1];
+        double cosE = ecc[2];
+
+        // dE/dt = n / (1 - e cos E)
+        double dEdt = meanMotion[i] / (1.0 - ei * cosE);
+        double vxP = -a[i] * sinE * dEdt;
+        double vyP =  b[i] * cosE * dEdt;
+
+        vel[0] = vxP * px[i] + vyP * qx[i];
+        vel[1] = vxP * py[i] + vyP * qy[i];
+        vel[2] = vxP * pz[i] + vyP * qz[i];
+    }
+
+    /**
+     * {@link #computeState} at t, precessed like {@link #offsetAt}. The drift's own velocity
+     * (rates times distance) is left out; it is orders of magnitude below the orbital speed.
+     */
+    void stateAt(int i, SimulationTime t, double[] ecc, double[] pos, double[] vel) {
+        computeState(i, t.phase(period[i]), ecc, pos, vel);
+        SecularPerturbations sec = this.secular;
+        if (sec != null) {
+            double tSeconds = t.seconds();
+            sec.apply(i, tSeconds, pos, ecc);
+            sec.apply(i, tSeconds, vel, ecc);
+        }
+    }
+
+    void recordKeplerMetrics(int solves, long iterations, int maxIterations) {
+        if (solves > 0) {
+            keplerSolves.add(solves);
+            keplerIterations.add(iterations);
+            keplerMaxIterations.accumulate(maxIterations);
+        }
+    }
+
+    /** Splits a slot range in halves until it is below the grain size. */
+    private static final class PropagateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final OrbitalStateStore store;
+        private final int from, to;
+        private final SimulationTime t;
+        private final int grain;
+        private final MotionBudget mb;
+
+        PropagateTask(OrbitalStateStore store, int from, int to, SimulationTime t, int grain, MotionBudget mb) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+            this.t = t;
+            this.grain = grain;
+            this.mb = mb;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                store.propagateRange(from, to, t, mb);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new PropagateTask(store, from, mid, t, grain, mb),
+                    new PropagateTask(store, mid, to, t, grain, mb)
+            );
+        }
+    }
+}
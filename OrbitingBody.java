@@ -14,11 +14,25 @@ public abstract class OrbitingBody extends Body {
     protected double M0Rad;     // mean anomaly at t=0
     protected double periodSeconds;
     protected double meanMotion;    // n = 2π / period
+
+    // Perifocal → engine-frame basis: P points at periapsis, Q is 90° ahead in the orbit plane.
+    // Depends only on Ω, i, ω, so it is built once on construction/edit (see updateOrbitBasis).
+    protected double pX, pY, pZ;
+    protected double qX, qY, qZ;
+    protected double semiMinor;     // b = a sqrt(1 - e²); a sqrt(e² - 1) on hyperbolic orbits
+
+    // Parent follows sphere-of-influence crossings (see SoiHandoff); rebuild the store after changing
+    protected boolean soiTracked;
     
     // Cache shaded colors to avoid allocating new Color in hot loops
     private transient int shadeBaseRGB = 0;
     private transient int shadeBaseR = 0, shadeBaseG = 0, shadeBaseB = 0;
     private transient Color[] shadeLUT = new Color[256];
+    private transient int shadeTableRGB = 0;
+    private transient int[] shadeTable = new int[256];
+    private transient int paletteRGB = 0;
+    private transient float paletteSolar = -1f;
+    private transient int[] impostorPalette = new int[256];
 
     public OrbitingBody(Body parent) {
         this.parent = parent;
@@ -79,74 +93,205 @@ public abstract class OrbitingBody extends Body {
             return;
         }
 
-        // simulationTime in ns → seconds
-        double tSeconds = simulationTime / 1_000_000_000.0;
-
-        // Optionally wrap to [0, period) for stability
-        double tOrbit = tSeconds % periodSeconds;
-        if (tOrbit < 0.0) tOrbit += periodSeconds;
-
-        // Mean anomaly M(t) = M0 + n t
-        double M = M0Rad + meanMotion * tOrbit;
-        // Normalize to [-π, π]
-        M = Math.atan2(Math.sin(M), Math.cos(M));
+        // Bound bodies are views over the engine's store; propagate our slot there.
+        if (store != null) {
+            store.propagateOne(storeIndex, simulationTime);
+            return;
+        }
 
-        // Solve Kepler’s equation: M = E - e sin E
-        double E = M;
-        for (int i = 0; i < 5; i++) {
-            double f  = E - e * Math.sin(E) - M;
-            double fp = 1.0 - e * Math.cos(E);
-            E -= f / fp;
+        // simulationTime in ns → time since epoch wrapped to [0, period), phase-exact
+        double tOrbit = SimulationTime.ofNanos(simulationTime).phase(periodSeconds);
+
+        double[] ecc = new double[3];
+        double xP, yP;
+        if (e >= 1.0) {
+            // Hyperbolic: M = e sinh H - H, unwrapped
+            KeplerSolver.solveHyperbolic(M0Rad + meanMotion * tOrbit, e, ecc);
+            xP = a * (e - ecc[2]);
+            yP = semiMinor * ecc[1];
+        } else {
+            // Mean anomaly M(t) = M0 + n t, normalized to [-π, π]
+            double M = M0Rad + meanMotion * tOrbit;
+            M -= (2.0 * Math.PI) * java.lang.Math.rint(M / (2.0 * Math.PI));
+
+            // Solve Kepler’s equation: M = E - e sin E
+            keplerSolver().solve(M, e, ecc);
+
+            // Position in the orbit plane, rotated into the engine frame by the cached basis
+            xP = a * (ecc[2] - e);
+            yP = semiMinor * ecc[1];
         }
 
-        double cosE = Math.cos(E);
-        double sinE = Math.sin(E);
+	    double cx = parent.getX();
+	    double cy = parent.getY();
+	    double cz = parent.getZ();
 
-        double r = a * (1.0 - e * cosE);
+	    this.x = cx + xP * pX + yP * qX;
+	    this.y = cy + xP * pY + yP * qY;
+	    this.z = cz + xP * pZ + yP * qZ;
+    }
 
-        // compute true anomaly
-        double sqrtOneMinusESq = Math.sqrt(1.0 - e*e);
-        double cosNu = (cosE - e) / (1.0 - e * cosE);
-        double sinNu = (sqrtOneMinusESq * sinE) / (1.0 - e * cosE);
-        double nu    = Math.atan2(sinNu, cosNu);
+    /**
+     * Rebuilds the cached orbit basis from a, e, i, Ω, ω.
+     * Call after constructing or editing elements.
+     */
+    protected void updateOrbitBasis() {
+        double[] pq = new double[6];
+        perifocalBasis(omegaBigRad, inclRad, omegaSmallRad, pq);
+        pX = pq[0]; pY = pq[1]; pZ = pq[2];
+        qX = pq[3]; qY = pq[4]; qZ = pq[5];
+
+        semiMinor = a * Math.sqrt(java.lang.Math.abs(1.0 - e * e));
+    }
 
-        // θ = ω + ν
-        double theta = omegaSmallRad + nu;
+    /** P then Q (engine frame) for the given Ω, i, ω, into pq[0..6). */
+    static void perifocalBasis(double omegaBigRad, double inclRad, double omegaSmallRad, double[] pq) {
+        double cosO = Math.cos(omegaBigRad);
+        double sinO = Math.sin(omegaBigRad);
+        double cosI = Math.cos(inclRad);
+        double sinI = Math.sin(inclRad);
+        double cosw = Math.cos(omegaSmallRad);
+        double sinw = Math.sin(omegaSmallRad);
+
+        // Standard perifocal → inertial (astro frame, XY plane), then
+        // ECLIPTIC -> ENGINE remap: engine y is astro z (vertical), engine z is astro y
+        pq[0] =  cosw * cosO - sinw * sinO * cosI;
+        pq[2] =  cosw * sinO + sinw * cosO * cosI;
+        pq[1] =  sinw * sinI;
+
+        pq[3] = -sinw * cosO - cosw * sinO * cosI;
+        pq[5] = -sinw * sinO + cosw * cosO * cosI;
+        pq[4] =  cosw * sinI;
+    }
 
-        double cosTheta = Math.cos(theta);
-        double sinTheta = Math.sin(theta);
-        double cosO     = Math.cos(omegaBigRad);
-        double sinO     = Math.sin(omegaBigRad);
-        double cosI     = Math.cos(inclRad);
-        double sinI     = Math.sin(inclRad);
+    // Layout of the elements stateToElements fills in
+    static final int EL_A = 0, EL_E = 1, EL_INCL = 2, EL_NODE = 3, EL_ARG_PERI = 4, EL_M0 = 5, EL_N = 6, EL_PERIOD = 7;
+    static final int EL_COUNT = 8;
+
+    /**
+     * Re-derives the elements from a state vector relative to a new parent (patched conics):
+     * position (units) and velocity (units/s) in the engine frame at simulation time t, with
+     * the new parent's gravitational parameter mu (units³/s²). Bound orbits keep the usual
+     * wrapped mean anomaly; open ones (e >= 1) get a = |a|, an infinite period and M0 against
+     * unwrapped time (see KeplerSolver.solveHyperbolic).
+     *
+     * For bodies not yet in a store (a new Spacecraft). The simulation side derives into the
+     * store instead (OrbitalStateStore.rebind), and the render side copies that back here
+     * (OrbitalStateStore.syncOrbits).
+     */
+    public void setStateVector(Body newParent, double mu, double[] pos, double[] vel, SimulationTime t) {
+        double[] el = new double[EL_COUNT];
+        stateToElements(mu, pos, vel, t, el);
+        setElements(newParent, el[EL_A], el[EL_E], el[EL_INCL], el[EL_NODE], el[EL_ARG_PERI],
+                el[EL_M0], el[EL_N], el[EL_PERIOD]);
+    }
 
-        // Standard orbital-frame → inertial coordinates (astro frame, XY plane)
-        double xOrb = r * (cosO * cosTheta - sinO * sinTheta * cosI);
-	    double yOrb = r * (sinO * cosTheta + cosO * sinTheta * cosI);
-	    double zOrb = r * (sinTheta * sinI);
+    /** setStateVector's elements, into el (EL_A ... EL_PERIOD) instead of a body. */
+    static void stateToElements(double mu, double[] pos, double[] vel, SimulationTime t, double[] el) {
+        // Engine → astro frame (engine y is astro z), where the element formulas live
+        double rx = pos[0], ry = pos[2], rz = pos[1];
+        double vx = vel[0], vy = vel[2], vz = vel[1];
+        double r = java.lang.Math.sqrt(rx * rx + ry * ry + rz * rz);
+        double v2 = vx * vx + vy * vy + vz * vz;
+        double rv = rx * vx + ry * vy + rz * vz;
+
+        // Angular momentum, node line, eccentricity vector
+        double hx = ry * vz - rz * vy, hy = rz * vx - rx * vz, hz = rx * vy - ry * vx;
+        double h = java.lang.Math.sqrt(hx * hx + hy * hy + hz * hz);
+        double k = v2 - mu / r;
+        double ex = (k * rx - rv * vx) / mu, ey = (k * ry - rv * vy) / mu, ez = (k * rz - rv * vz) / mu;
+        double ecc = java.lang.Math.sqrt(ex * ex + ey * ey + ez * ez);
+        if (java.lang.Math.abs(ecc - 1.0) < 1e-9) ecc = 1.0 + 1e-9; // parabolic: nudge to the hyperbolic branch
+
+        double energy = 0.5 * v2 - mu / r;
+        double semiMajor = java.lang.Math.abs(mu / (2.0 * energy));
+
+        double incl = java.lang.Math.acos(java.lang.Math.max(-1.0, java.lang.Math.min(1.0, hz / h)));
+        double nx = -hy, ny = hx;
+        double nLen = java.lang.Math.sqrt(nx * nx + ny * ny);
+        double node;
+        if (nLen < 1e-12 * h) { // equatorial: node on +x
+            node = 0.0;
+            nx = 1.0; ny = 0.0; nLen = 1.0;
+        } else {
+            node = java.lang.Math.atan2(ny, nx);
+        }
+        nx /= nLen;
+        ny /= nLen;
+
+        // In-plane axes: m = ĥ × n̂ is 90° ahead of the node
+        double ux = hx / h, uy = hy / h, uz = hz / h;
+        double mx = uy * 0.0 - uz * ny, my = uz * nx - ux * 0.0, mz = ux * ny - uy * nx;
+
+        // Argument of periapsis (0 on circular orbits: periapsis at the node) and true anomaly
+        double argPeri = (ecc > 1e-12) ? java.lang.Math.atan2(ex * mx + ey * my + ez * mz, ex * nx + ey * ny) : 0.0;
+        double lat = java.lang.Math.atan2(rx * mx + ry * my + rz * mz, rx * nx + ry * ny);
+        double nu = lat - argPeri;
+
+        double n = java.lang.Math.sqrt(mu / (semiMajor * semiMajor * semiMajor));
+        double M, M0, period;
+        if (ecc < 1.0) {
+            double E = java.lang.Math.atan2(java.lang.Math.sqrt(1.0 - ecc * ecc) * java.lang.Math.sin(nu), ecc + java.lang.Math.cos(nu));
+            M = E - ecc * java.lang.Math.sin(E);
+            period = 2.0 * java.lang.Math.PI / n;
+            M0 = M - n * t.phase(period);
+            M0 -= (2.0 * java.lang.Math.PI) * java.lang.Math.rint(M0 / (2.0 * java.lang.Math.PI));
+        } else {
+            double sinhH = java.lang.Math.sqrt(ecc * ecc - 1.0) * java.lang.Math.sin(nu) / (1.0 + ecc * java.lang.Math.cos(nu));
+            double H = java.lang.Math.log(sinhH + java.lang.Math.sqrt(sinhH * sinhH + 1.0)); // asinh
+            M = ecc * sinhH - H;
+            period = Double.POSITIVE_INFINITY;
+            M0 = M - n * t.seconds();
+        }
 
-	    double cx = parent.getX();
-	    double cy = parent.getY();
-	    double cz = parent.getZ();
+        el[EL_A] = semiMajor;
+        el[EL_E] = ecc;
+        el[EL_INCL] = incl;
+        el[EL_NODE] = node;
+        el[EL_ARG_PERI] = argPeri;
+        el[EL_M0] = M0;
+        el[EL_N] = n;
+        el[EL_PERIOD] = period;
+    }
 
-	    this.x = cx + xOrb;
-	    this.y = cy + zOrb;  // vertical
-	    this.z = cz + yOrb;  // in-plane
+    /** Replaces parent and elements at once and rebuilds the basis. */
+    void setElements(Body parent, double a, double e, double inclRad, double omegaBigRad, double omegaSmallRad,
+                     double M0Rad, double meanMotion, double periodSeconds) {
+        this.parent = parent;
+        this.a = a;
+        this.e = e;
+        this.inclRad = inclRad;
+        this.omegaBigRad = omegaBigRad;
+        this.omegaSmallRad = omegaSmallRad;
+        this.M0Rad = M0Rad;
+        this.meanMotion = meanMotion;
+        this.periodSeconds = periodSeconds;
+        updateOrbitBasis();
     }
     
     public Body getParent() { 
     	return parent; 
     }
+
+    public boolean isSoiTracked() { return soiTracked; }
+
+    /** Takes effect at the next store build (SolarSystem.invalidateOrbitStore). */
+    public void setSoiTracked(boolean soiTracked) { this.soiTracked = soiTracked; }
+
+    /** Kepler solver used to propagate this body; override per body class. */
+    protected KeplerSolver keplerSolver() {
+        return KeplerSolver.NEWTON;
+    }
     
     @Override
-    public void draw(Graphics g, SimulationView s, Frustum frustum) {
+    public void draw(FrameBuffer fb, Graphics g, SimulationView s, Frustum frustum) {
         if (!(g instanceof Graphics2D g2)) {
             return;
         }
 
-        double worldX = x;
-        double worldY = y;
-        double worldZ = z;
+        double worldX = getX();
+        double worldY = getY();
+        double worldZ = getZ();
 
         // Project center
         double[] camPos = frustum.worldToCameraSpaceDirect(worldX, worldY, worldZ);
@@ -189,6 +334,18 @@ public abstract class OrbitingBody extends Body {
         if (pixelRadius < 1.0) {
         	if (!allowOverlays || overlayAlpha <= 0f) return;
 
+            if (fb != null) {
+                if (drawFallbackIcon(s)) {
+                    int iconR = getIconRadiusPx();
+                    fb.drawOval((int)(projectedPoint.x - iconR / 2.0), (int)(projectedPoint.y - iconR / 2.0),
+                            iconR, color.getRGB() & 0xFFFFFF, FrameBuffer.alpha255(overlayAlpha));
+                } else {
+                    renderSubpixelPoint(fb, projectedPoint, pixelRadius);
+                }
+                drawOverlay(fb, g2, s, frustum, projectedPoint, pixelRadius);
+                return;
+            }
+
             java.awt.Composite oldComp = g2.getComposite();
             g2.setComposite(java.awt.AlphaComposite.getInstance(java.awt.AlphaComposite.SRC_OVER, overlayAlpha));
         	
@@ -207,7 +364,7 @@ public abstract class OrbitingBody extends Body {
             
             g2.setComposite(oldComp);
 
-            drawOverlay(g2, s, frustum, projectedPoint, pixelRadius);
+            drawOverlay(fb, g2, s, frustum, projectedPoint, pixelRadius);
             return;
         }
         
@@ -217,20 +374,19 @@ public abstract class OrbitingBody extends Body {
             // No star? Just draw flat colored sphere as before.
             g2.setColor(color);
             int d = (int)(2.0 * pixelRadius);
-            g2.fillOval(
-                    (int)(projectedPoint.x - pixelRadius),
-                    (int)(projectedPoint.y - pixelRadius),
-                    d, d
-            );
-            drawOverlay(g2, s, frustum, projectedPoint, pixelRadius);
+            int ox = (int)(projectedPoint.x - pixelRadius);
+            int oy = (int)(projectedPoint.y - pixelRadius);
+            if (fb != null) fb.fillOval(ox, oy, d, color.getRGB() & 0xFFFFFF, 255);
+            else g2.fillOval(ox, oy, d, d);
+            drawOverlay(fb, g2, s, frustum, projectedPoint, pixelRadius);
             return;
         }
 
         // Direction from this body to the star (world space)
         Vector3d toStarWorld = new Vector3d(
-                star.x - worldX,
-                star.y - worldY,
-                star.z - worldZ
+                star.getX() - worldX,
+                star.getY() - worldY,
+                star.getZ() - worldZ
         ).normalize();
 
         // Light direction in camera space: transform center and a point toward the star
@@ -255,12 +411,29 @@ public abstract class OrbitingBody extends Body {
 
         final int SEGMENTS = 128; // 24/48/64 - tune. Higher = nicer, slower.
         
-        float solar = Lighting.solarIllumAt(x, y, z, star.getX(), star.getY(), star.getZ());
+        float solar = Lighting.solarIllumAt(worldX, worldY, worldZ, star.getX(), star.getY(), star.getZ());
 
         double fovRad = Math.toRadians(frustum.fov);
         double nearHalfH = frustum.near * java.lang.Math.tan(fovRad * 0.5);
         double nearHalfW = nearHalfH * frustum.aspectRatio;
 
+        if (fb != null) {
+            ShadedSphere sphere = new ShadedSphere();
+            sphere.cx = cx; sphere.cy = cy; sphere.rPix = rPix;
+            sphere.centerX = camPos[0]; sphere.centerY = camPos[1]; sphere.centerZ = camPos[2];
+            sphere.radius = radius;
+            sphere.lightX = lightDirCam.x; sphere.lightY = lightDirCam.y; sphere.lightZ = lightDirCam.z;
+            sphere.solar = solar;
+            sphere.near = frustum.near; sphere.nearHalfW = nearHalfW; sphere.nearHalfH = nearHalfH;
+            sphere.viewW = W; sphere.viewH = H;
+            sphere.shade = getShadeTable();
+            if (SphereImpostorCache.SHARED.attach(sphere)) sphere.palette = getImpostorPalette(solar);
+            fb.sphere(sphere);
+
+            drawOverlay(fb, g2, s, frustum, projectedPoint, pixelRadius);
+            return;
+        }
+
         // Sphere in camera space:
         double Cx = camPos[0], Cy = camPos[1], Cz = camPos[2];
         double R  = radius;
@@ -349,9 +522,33 @@ public abstract class OrbitingBody extends Body {
 
 
         // Labels, trails, etc.
-        drawOverlay(g2, s, frustum, projectedPoint, pixelRadius);
+        drawOverlay(fb, g2, s, frustum, projectedPoint, pixelRadius);
     }
     
+    /** getShadedColor as rgb for every intensity, filled up front so raster workers only read it. */
+    private int[] getShadeTable() {
+        int rgb = this.color.getRGB();
+        if (rgb != shadeTableRGB) {
+            for (int i = 0; i < 256; i++) shadeTable[i] = getShadedColor(i).getRGB() & 0xFFFFFF;
+            shadeTableRGB = rgb;
+        }
+        return shadeTable;
+    }
+
+    /** Shade table rgb by Lambert term 0..255 at this solar factor, for impostor sprites. */
+    private int[] getImpostorPalette(float solar) {
+        int[] shade = getShadeTable();
+        if (solar != paletteSolar || shadeTableRGB != paletteRGB) {
+            for (int i = 0; i < 256; i++) {
+                float intensity = Lighting.planetIntensity(i / 255f, solar);
+                impostorPalette[i] = shade[(int) (intensity * 255.0f + 0.5f)];
+            }
+            paletteSolar = solar;
+            paletteRGB = shadeTableRGB;
+        }
+        return impostorPalette;
+    }
+
     private Color getShadedColor(int intensityIdx) {
         // Re-init cache if the base color changed
         int rgb = this.color.getRGB();
@@ -46,15 +46,18 @@ public class Planet extends OrbitingBody {
 
 	    periodSeconds = periodDays * 86400.0;
 	    meanMotion    = (2.0 * Math.PI) / periodSeconds;
+
+	    updateOrbitBasis();
 	}
 	
-	public void draw(Graphics g, SimulationView s, Frustum frustum) {
+	public void draw(FrameBuffer fb, Graphics g, SimulationView s, Frustum frustum) {
         // draw the planet itself
-        super.draw(g, s, frustum);
+        super.draw(fb, g, s, frustum);
 
         // then draw rings if any
         if (rings != null) {
-            rings.draw(g, frustum, s.getSimulationTime());
+            if (fb != null) rings.draw(fb, frustum, s.getSimulationTime());
+            else rings.draw(g, frustum, s.getSimulationTime());
         }
     }
 	
@@ -65,7 +68,7 @@ public class Planet extends OrbitingBody {
 	public String save() {
 		double periodDays = periodSeconds / 86400.0;
 
-		return x + " " + y + " " + z + " " +
+		return getWorldX() + " " + getWorldY() + " " + getWorldZ() + " " +
 				radius + " " +
 				color.getRed() + " " + color.getGreen() + " " + color.getBlue() + " " +
 				a + " " + e + " " +
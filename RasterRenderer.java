@@ -0,0 +1,34 @@
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * SoftwareRenderer with the pixel work done on the back buffer's int[] directly.
+ *
+ * Same frame as {@link SoftwareRenderer} (clear, orbits, stars, sorted bodies, HUD), but stars,
+ * ring particles, orbit lines, sub-pixel bodies and shaded disks are written through a
+ * {@link FrameBuffer} with our own additive / SRC_OVER blending instead of one Graphics2D
+ * fillRect/drawLine (plus setComposite/setColor) each. Text stays on Graphics2D.
+ *
+ * With TILED the writes are binned into screen tiles and rasterized in parallel on the common
+ * ForkJoinPool (see TiledFrameBuffer); labels then go on top of all bodies.
+ */
+public final class RasterRenderer extends SoftwareRenderer {
+
+    // --- Tunables ---
+    /** Rasterize per screen tile on the common pool (only used when it has more than one worker). */
+    public static boolean TILED = true;
+
+    private BufferedImage fbImage;
+    private FrameBuffer fb;
+
+    @Override
+    FrameBuffer frameBuffer(BufferedImage back) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        boolean tiled = TILED && pool.getParallelism() > 1;
+        if (back != fbImage || tiled != (fb instanceof TiledFrameBuffer)) {
+            fbImage = back;
+            fb = tiled ? new TiledFrameBuffer(back, pool) : new FrameBuffer(back);
+        }
+        return fb;
+    }
+}
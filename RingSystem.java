@@ -10,6 +10,7 @@ public class RingSystem {
     private static class Particle {
         double radius;     // distance from planet center, in sim units
         double baseAngle;  // initial angle around ring
+        double cosBase, sinBase; // cos/sin of baseAngle, so a frame needs no per-particle trig
         double height;     // small up/down offset
         float brightness;  // 0..1, used to vary opacity or color
         double sizeUnits;   // physical radius of particle in world/sim units
@@ -84,6 +85,20 @@ public class RingSystem {
 	public void draw(Graphics g, Frustum frustum, long simulationTime) {
 	    if (!(g instanceof Graphics2D g2)) return;
 
+	    Color oldColor = g2.getColor();
+	    java.awt.Composite oldComp = g2.getComposite();
+	    render(g2, null, frustum, simulationTime);
+	    g2.setComposite(oldComp);
+	    g2.setColor(oldColor);
+	}
+
+	/** Same particles blended straight into the frame buffer (RasterRenderer). */
+	public void draw(FrameBuffer fb, Frustum frustum, long simulationTime) {
+	    render(null, fb, frustum, simulationTime);
+	}
+
+	/** Draws through fb when it is not null, else through g2. */
+	private void render(Graphics2D g2, FrameBuffer fb, Frustum frustum, long simulationTime) {
         if (bands.isEmpty()) return;
 
 	    double px = planet.getX();
@@ -120,10 +135,12 @@ public class RingSystem {
 	                planet.getRadius(), planetScreen);
 	    }
 
-	    double tSeconds = simulationTime / 1_000_000_000.0;
-
-	    Color oldColor = g2.getColor();
-	    java.awt.Composite oldComp = g2.getComposite();
+	    // One rotation for the whole ring this frame (same angular speed for every particle),
+	    // taken from the phase within one turn so it stays exact on long runs
+	    double spinPeriod = 2.0 * java.lang.Math.PI / java.lang.Math.abs(angularSpeed);
+	    double spin = angularSpeed * SimulationTime.ofNanos(simulationTime).phase(spinPeriod);
+	    double cosSpin = java.lang.Math.cos(spin);
+	    double sinSpin = java.lang.Math.sin(spin);
 
 	    // Precompute planet->camera vector (primitives)
 	    double pcx = frustum.cameraX - px;
@@ -159,12 +176,14 @@ public class RingSystem {
 	        double maxVisible = band.outerRadius * 100.0;
 	        if (distanceToCamera > maxVisible) continue;
 
-	        g2.setColor(band.color);
+	        int bandRGB = band.color.getRGB() & 0xFFFFFF;
+	        float bandAlpha = band.color.getAlpha() / 255f; // Java2D applies the color's own alpha too
+	        if (fb == null) g2.setColor(band.color);
 
 	        for (Particle p : particles) {
-	            double angleAround = p.baseAngle + angularSpeed * tSeconds;
-	            double cosA = Math.cos(angleAround);
-	            double sinA = Math.sin(angleAround);
+	            // angle = baseAngle + spin: rotate the particle's base direction by the frame's spin
+	            double cosA = p.cosBase * cosSpin - p.sinBase * sinSpin;
+	            double sinA = p.sinBase * cosSpin + p.cosBase * sinSpin;
 
 	            double radialX = p.radius * cosA;
 	            double radialZ = p.radius * sinA;
@@ -218,17 +237,18 @@ public class RingSystem {
 	            if (alpha <= 0.0f) continue;
 
 
-	            // Composite (cached)
-	            g2.setComposite(comp(alpha));
-
 	            int xPix = (int) Math.round(screenTmp.x);
 	            int yPix = (int) Math.round(screenTmp.y);
+	            if (fb != null) {
+	                fb.blend(xPix, yPix, bandRGB, FrameBuffer.alpha255(java.lang.Math.min(alpha, 1f) * bandAlpha));
+	                continue;
+	            }
+
+	            // Composite (cached)
+	            g2.setComposite(comp(alpha));
 	            g2.fillRect(xPix, yPix, 1, 1);
 	        }
 	    }
-
-	    g2.setComposite(oldComp);
-	    g2.setColor(oldColor);
 	}
 
     
@@ -299,6 +319,8 @@ public class RingSystem {
             p.radius = band.innerRadius + t * radialSpan;
 
             p.baseAngle = rng.nextDouble() * (2.0 * Math.PI);
+            p.cosBase = java.lang.Math.cos(p.baseAngle);
+            p.sinBase = java.lang.Math.sin(p.baseAngle);
             p.height = (rng.nextDouble() - 0.5) * thickness;
 
             // Particle "kernel" size
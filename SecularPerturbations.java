@@ -0,0 +1,280 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Secular (orbit-averaged) drift of the node and periapsis, applied analytically on top of the
+ * fixed Kepler ellipses: Ω(t) = Ω0 + dΩ/dt t and ω(t) = ω0 + dω/dt t, so long time-warp runs show
+ * nodal and apsidal precession without any numeric integration.
+ *
+ * Rates are first-order secular theory, summed per slot at construction:
+ * - J2 of the parent (oblateness): dΩ/dt = -3/2 n J2 (R/p)² cos i, dω/dt = 3/4 n J2 (R/p)² (5 cos²i - 1)
+ * - the parent's own primary, for moons (third body on a circular orbit, n3 = the parent's mean motion):
+ *   dΩ/dt = -3/4 n3²/n cos i (1 + 3/2 e²) / √(1 - e²), dω/dt = 3/4 n3²/n (2 - 5/2 sin²i + e²/2) / √(1 - e²)
+ * - massive siblings (planets on each other, large moons): the Laplace-Lagrange diagonal term
+ *   A = n/4 Σ m'/M α ᾱ b(α) advances the periapsis longitude by A and regresses the node by A
+ * - da/dt = 0: none of these exchange energy with the orbit (that takes tides or drag)
+ *
+ * Simplifications: the J2 equator and the perturbers' orbits are taken to lie in the reference
+ * plane, so all precession is about the engine y axis (i is measured from that plane); the save
+ * format carries no spin axes. Pairs closer than MAX_AXIS_RATIO are clamped to it, where the
+ * Laplace coefficient would diverge. SOI-tracked bodies and anything orbiting them get no drift
+ * (their elements are re-derived at every handoff or burn), and neither do open orbits.
+ *
+ * Applying it is O(1) per body: the offset a solve (or the ephemeris, or the lane kernel)
+ * produced is rotated by Δω about the orbit normal and by ΔΩ about the pole ({@link #apply}),
+ * two sin/cos pairs; propagation keeps each slot's rotation and corrects it by the small
+ * angles drifted since, with a few dozen flops. The element arrays, their cached P/Q basis and
+ * everything fitted from them stay untouched. OrbitalStateStore applies it while attached; so
+ * do the finders and samplers that read positions through OrbitalStateStore.offsetAt.
+ */
+public final class SecularPerturbations {
+
+    // --- Tunables ---
+    /** J2 of bodies not listed in J2_BY_NAME (0 = spherical). */
+    public static double DEFAULT_J2 = 0.0;
+
+    /** Known J2 by body name (unnormalized, for the body's own radius); edit before building. */
+    public static final Map<String, Double> J2_BY_NAME = new HashMap<>(Map.of(
+            "Sun", 2.2e-7,
+            "Mercury", 5.03e-5,
+            "Venus", 4.46e-6,
+            "Earth", 1.08263e-3,
+            "Moon", 2.03e-4,
+            "Mars", 1.9555e-3,
+            "Jupiter", 1.4696e-2,
+            "Saturn", 1.6291e-2,
+            "Uranus", 3.5107e-3,
+            "Neptune", 3.4088e-3));
+
+    /** Siblings lighter than this fraction of their parent's GM do not perturb. */
+    public static double MIN_PERTURBER_MASS_RATIO = 1e-8;
+
+    /** At most this many perturbers per parent (the heaviest), so building stays O(N). */
+    public static int MAX_PERTURBERS = 32;
+
+    /** Semi-major axis ratio cap for the Laplace-Lagrange terms. */
+    public static double MAX_AXIS_RATIO = 0.9;
+
+    /** Drift (rad) after which propagation rebuilds a slot's kept rotation (applyPropagated). */
+    public static double SMALL_ANGLE = 0.01;
+
+    private final OrbitalStateStore store;
+
+    // Per slot: rates (rad/s) and the unit orbit normal of the fixed ellipse
+    private final double[] nodeRate;
+    private final double[] periRate;
+    private final double[] hx, hy, hz;
+    private int drifting;
+
+    // Propagation only: per slot the rotation last rebuilt (sin ω', cos ω', sin Ω', cos Ω') and its time
+    private final double[] rot;
+    private final double[] rotAt;
+
+    public SecularPerturbations(OrbitalStateStore store) {
+        this.store = store;
+        int n = store.size();
+        this.nodeRate = new double[n];
+        this.periRate = new double[n];
+        this.hx = new double[n];
+        this.hy = new double[n];
+        this.hz = new double[n];
+        this.rot = new double[4 * n];
+        this.rotAt = new double[n];
+        java.util.Arrays.fill(rotAt, Double.NaN);
+
+        // Parents come first, so one pass finds everything at or below a tracked body
+        boolean[] below = new boolean[n];
+        boolean[] frozen = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            int p = store.getParentIndex(i);
+            boolean tracked = store.getBody(i) instanceof OrbitingBody ob && ob.isSoiTracked();
+            below[i] = tracked || (p >= 0 && below[p]);
+            frozen[i] = p < 0 || below[i] || !(store.e[i] < 1.0) || !Double.isFinite(store.period[i]);
+        }
+
+        int[][] perturbers = collectPerturbers(frozen);
+        for (int i = 0; i < n; i++) {
+            if (frozen[i]) continue;
+            addOblateness(i);
+            addThirdBody(i);
+            addSiblings(i, perturbers[store.getParentIndex(i)]);
+
+            if (nodeRate[i] != 0.0 || periRate[i] != 0.0) {
+                drifting++;
+                double nx = store.py[i] * store.qz[i] - store.pz[i] * store.qy[i];
+                double ny = store.pz[i] * store.qx[i] - store.px[i] * store.qz[i];
+                double nz = store.px[i] * store.qy[i] - store.py[i] * store.qx[i];
+                double len = java.lang.Math.sqrt(nx * nx + ny * ny + nz * nz);
+                hx[i] = nx / len;
+                hy[i] = ny / len;
+                hz[i] = nz / len;
+            }
+        }
+    }
+
+    public OrbitalStateStore getStore() { return store; }
+
+    /** dΩ/dt of slot i (rad/s). */
+    public double getNodeRate(int i) { return nodeRate[i]; }
+
+    /** dω/dt of slot i (rad/s). */
+    public double getPeriapsisRate(int i) { return periRate[i]; }
+
+    /** Slots with any drift. */
+    public int getDriftingCount() { return drifting; }
+
+    /**
+     * Rotates v, an orbit-plane vector of slot i's fixed ellipse (offset, velocity, P or Q), to
+     * its precessed orientation at tSeconds. Pure; safe from any thread.
+     *
+     * @param sc scratch, at least 2 long (offsetAt's ecc will do)
+     */
+    public void apply(int i, double tSeconds, double[] v, double[] sc) {
+        double wDot = periRate[i], oDot = nodeRate[i];
+        if (wDot == 0.0 && oDot == 0.0) return;
+
+        FastTrig.sincos(wDot * tSeconds, sc, 0);
+        double sw = sc[0], cw = sc[1];
+        FastTrig.sincos(oDot * tSeconds, sc, 0);
+        rotate(i, sw, cw, sc[0], sc[1], v);
+    }
+
+    /**
+     * {@link #apply} for propagation (simulation side, one caller per slot at a time): the
+     * rotation is kept per slot and only corrected by the small angles drifted since, with short
+     * series, until they pass SMALL_ANGLE and it is rebuilt. Same result to ~1e-15.
+     */
+    void applyPropagated(int i, double tSeconds, double[] v) {
+        double wDot = periRate[i], oDot = nodeRate[i];
+        if (wDot == 0.0 && oDot == 0.0) return;
+
+        final double[] rot = this.rot;
+        int r = 4 * i;
+        double dt = tSeconds - rotAt[i]; // NaN until the first rebuild
+        double dw = wDot * dt, dO = oDot * dt;
+        if (!(java.lang.Math.abs(dw) <= SMALL_ANGLE && java.lang.Math.abs(dO) <= SMALL_ANGLE)) {
+            FastTrig.sincos(wDot * tSeconds, rot, r);
+            FastTrig.sincos(oDot * tSeconds, rot, r + 2);
+            rotAt[i] = tSeconds;
+            rotate(i, rot[r], rot[r + 1], rot[r + 2], rot[r + 3], v);
+            return;
+        }
+
+        // sin/cos of the increments (error below d⁶/720), added to the kept angles
+        double dw2 = dw * dw, dO2 = dO * dO;
+        double sdw = dw * (1.0 - dw2 * (1.0 / 6.0) * (1.0 - dw2 * 0.05));
+        double cdw = 1.0 - dw2 * 0.5 * (1.0 - dw2 * (1.0 / 12.0));
+        double sdO = dO * (1.0 - dO2 * (1.0 / 6.0) * (1.0 - dO2 * 0.05));
+        double cdO = 1.0 - dO2 * 0.5 * (1.0 - dO2 * (1.0 / 12.0));
+        double sw = rot[r], cw = rot[r + 1], sO = rot[r + 2], cO = rot[r + 3];
+        rotate(i, sw * cdw + cw * sdw, cw * cdw - sw * sdw, sO * cdO + cO * sdO, cO * cdO - sO * sdO, v);
+    }
+
+    /** Turns v by ω's angle about slot i's orbit normal, then by Ω's about the pole. */
+    private void rotate(int i, double sw, double cw, double sO, double cO, double[] v) {
+        // Periapsis (v is in the plane, so h × v is v turned by 90°)
+        double x = v[0], y = v[1], z = v[2];
+        double tx = hy[i] * z - hz[i] * y;
+        double ty = hz[i] * x - hx[i] * z;
+        double tz = hx[i] * y - hy[i] * x;
+        x = x * cw + tx * sw;
+        y = y * cw + ty * sw;
+        z = z * cw + tz * sw;
+
+        // Node (astro z = engine y; astro y is engine z)
+        v[0] = x * cO - z * sO;
+        v[1] = y;
+        v[2] = x * sO + z * cO;
+    }
+
+    /** Oblateness of the parent. */
+    private void addOblateness(int i) {
+        Body parent = store.getBody(store.getParentIndex(i));
+        double j2 = J2_BY_NAME.getOrDefault(parent.getName(), DEFAULT_J2);
+        if (j2 == 0.0) return;
+
+        double e = store.e[i];
+        double semiLatus = store.a[i] * (1.0 - e * e);
+        double ratio = parent.getRadius() / semiLatus;
+        double k = store.meanMotion[i] * j2 * ratio * ratio;
+        double cosI = java.lang.Math.cos(store.incl[i]);
+        nodeRate[i] += -1.5 * k * cosI;
+        periRate[i] += 0.75 * k * (5.0 * cosI * cosI - 1.0);
+    }
+
+    /** The parent's primary, seen from a moon. */
+    private void addThirdBody(int i) {
+        int p = store.getParentIndex(i);
+        if (store.getParentIndex(p) < 0 || !Double.isFinite(store.period[p])) return;
+
+        double e = store.e[i];
+        double n3 = store.meanMotion[p];
+        double k = 0.75 * n3 * n3 / (store.meanMotion[i] * java.lang.Math.sqrt(1.0 - e * e));
+        double cosI = java.lang.Math.cos(store.incl[i]);
+        double sin2I = 1.0 - cosI * cosI;
+        nodeRate[i] += -k * cosI * (1.0 + 1.5 * e * e);
+        periRate[i] += k * (2.0 - 2.5 * sin2I + 0.5 * e * e);
+    }
+
+    /** Laplace-Lagrange self term from massive siblings; ϖ advances by A, Ω regresses by A. */
+    private void addSiblings(int i, int[] perturbers) {
+        if (perturbers == null) return;
+        int p = store.getParentIndex(i);
+        double ai = store.a[i];
+        double sum = 0.0;
+        for (int j : perturbers) {
+            if (j == i) continue;
+            double aj = store.a[j];
+            boolean outer = aj > ai;
+            double alpha = java.lang.Math.min(MAX_AXIS_RATIO, outer ? ai / aj : aj / ai);
+            double alphaBar = outer ? alpha : 1.0;
+            sum += store.getMu(j) / store.getMu(p) * alpha * alphaBar * laplaceB32(alpha);
+        }
+        double rate = 0.25 * store.meanMotion[i] * sum;
+        nodeRate[i] -= rate;
+        periRate[i] += 2.0 * rate; // ω = ϖ - Ω
+    }
+
+    /** Per parent slot: its heaviest natural satellites above the mass ratio (null if none). */
+    private int[][] collectPerturbers(boolean[] frozen) {
+        int n = store.size();
+        int[] count = new int[n];
+        for (int j = 0; j < n; j++) if (isPerturber(j, frozen)) count[store.getParentIndex(j)]++;
+
+        int[][] out = new int[n][];
+        for (int p = 0; p < n; p++) if (count[p] > 0) out[p] = new int[count[p]];
+        java.util.Arrays.fill(count, 0);
+        for (int j = 0; j < n; j++) {
+            if (!isPerturber(j, frozen)) continue;
+            int p = store.getParentIndex(j);
+            out[p][count[p]++] = j;
+        }
+
+        for (int p = 0; p < n; p++) {
+            if (out[p] == null || out[p].length <= MAX_PERTURBERS) continue;
+            Integer[] bySize = new Integer[out[p].length];
+            for (int k = 0; k < bySize.length; k++) bySize[k] = out[p][k];
+            java.util.Arrays.sort(bySize, (u, v) -> Double.compare(store.getMu(v), store.getMu(u)));
+            out[p] = new int[MAX_PERTURBERS];
+            for (int k = 0; k < MAX_PERTURBERS; k++) out[p][k] = bySize[k];
+        }
+        return out;
+    }
+
+    private boolean isPerturber(int j, boolean[] frozen) {
+        if (frozen[j]) return false;
+        int p = store.getParentIndex(j);
+        return store.getMu(j) >= MIN_PERTURBER_MASS_RATIO * store.getMu(p);
+    }
+
+    /** Laplace coefficient b_{3/2}^{(1)}(α) = 3α F(3/2, 5/2; 2; α²), summed to double precision. */
+    static double laplaceB32(double alpha) {
+        double x = alpha * alpha;
+        double term = 1.0, sum = 1.0;
+        for (int k = 0; term > 1e-16 * sum; k++) {
+            term *= (1.5 + k) * (2.5 + k) / ((2.0 + k) * (1.0 + k)) * x;
+            sum += term;
+        }
+        return 3.0 * alpha * sum;
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * One lit sphere as the camera sees it, and the kernel that shades its disk into a FrameBuffer.
+ *
+ * OrbitingBody fills one in per frame (camera-space center and radius, direction to the star,
+ * the body's shade table); {@link FrameBuffer#sphere} shades it right away, TiledFrameBuffer
+ * keeps it and shades each tile's part of the disk on that tile's worker, so the ray-sphere
+ * and Lambert work spreads over the pool with the pixels. Disks SphereImpostorCache has a
+ * sprite for are copied from it instead of shaded.
+ */
+final class ShadedSphere {
+
+    // Disk on screen
+    int cx, cy, rPix;
+
+    // Sphere in camera space, and the unit direction to the star
+    double centerX, centerY, centerZ, radius;
+    double lightX, lightY, lightZ;
+    float solar;
+
+    // Projection: near plane and its half extents, viewport
+    double near, nearHalfW, nearHalfH;
+    int viewW, viewH;
+
+    int[] shade; // rgb by intensity 0..255
+
+    // Pre-shaded disk from SphereImpostorCache, blitted through palette (rgb by Lambert 0..255)
+    // instead of shading; null to shade. Screen offset (dx, dy) from the center samples the sprite
+    // at (U / W, V / W), each of U, V, W being m0 + dx mX + dy mY (a projective map)
+    SphereImpostorCache.Sprite impostor;
+    int[] palette;
+    double mapU0, mapUX, mapUY, mapV0, mapVX, mapVY, mapW0, mapWX, mapWY;
+
+    /** The impostor mapping is divided out every BLIT_SPAN pixels of a row and stepped in between. */
+    static final int BLIT_SPAN = 16;
+
+    /** Disk bounds, for binning. */
+    int minX() { return cx - rPix; }
+    int maxX() { return cx + rPix; }
+    int minY() { return cy - rPix; }
+    int maxY() { return cy + rPix; }
+
+    // Derived in prepare(): |C|^2 - R^2 (> 0, the camera is outside), 1 / R, C.L, ray x per column,
+    // and limbDisc: samples with disc < limbDisc * (d.d) are too near the limb to interpolate from
+    private double c, invR, cDotL, kx, limbDisc;
+
+    // Levels (8.8) where planetIntensity clamps, a kink the shade line can't follow: the night
+    // side's, and full light's if this solar factor reaches it (else out of reach)
+    private int floorLevel, ceilLevel;
+
+    /** Shading is solved at every LERP_STEP-th pixel of a row and interpolated in between. */
+    static final int LERP_STEP = 8;
+
+    /**
+     * A sample's sqrt is one Newton step from the previous sample's when the discriminant moved
+     * by less than this fraction (interior: error below 1e-3 of a shade level); else Math.sqrt.
+     */
+    static final double NEWTON_MAX_CHANGE = 0.05;
+
+    /**
+     * Most an interpolated level may be off, in shade levels (rounding to the shade index can add
+     * one more). Steps whose ends come within KINK_MARGIN of a clamp (the terminator) also solve
+     * their midpoint and go per pixel when it is more than half of this off the line: where the
+     * shade curves one way across a step its worst pixel is at most twice the midpoint's error.
+     * Elsewhere the shade is smooth and limbDisc bounds the curvature.
+     */
+    static final double LERP_MAX_ERROR = 1.0;
+
+    /** Slack (8.8 levels) beyond a step's own change within which a clamp counts as near. */
+    private static final int KINK_MARGIN = 256;
+
+    /** Derives the per-sphere constants; call once the fields are set, before rasterizing. */
+    void prepare() {
+        c = (centerX * centerX + centerY * centerY + centerZ * centerZ) - radius * radius;
+        invR = 1.0 / radius;
+        cDotL = centerX * lightX + centerY * lightY + centerZ * lightZ;
+        kx = 2.0 * nearHalfW / viewW;
+
+        // n.z = sqrt(1 - rho^2) bends by 1 / (rPix^2 n.z^3) per pixel^2, so a lerp over LERP_STEP
+        // pixels is off by LERP_STEP^2 / 8 of that, times the intensity's slope (1 - ambient) solar;
+        // disc = (d.d) R^2 n.z^2 relates it to the solve. It ignores the terminator, which the
+        // midpoint test catches. On small disks nzMin >= 1 and every pixel is solved
+        double slope = (1.0 - Lighting.PLANET_AMBIENT) * solar;
+        double nzMin = java.lang.Math.cbrt(LERP_STEP * LERP_STEP * 255.0 * slope / (8.0 * rPix * rPix * LERP_MAX_ERROR));
+        limbDisc = nzMin * nzMin * radius * radius;
+
+        floorLevel = (int) (Lighting.planetIntensity(0f, solar) * (255.0f * 256.0f));
+        ceilLevel = (Lighting.planetIntensity(1f, solar) >= 1f) ? 255 * 256 : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Shades every pixel of the disk inside fb's clip (rows and columns outside it are not
+     * visited, so tiles can share one sphere).
+     *
+     * The ray through pixel (x, y) is d = (x * kx - nearHalfW, py, -near), left unnormalized:
+     * with a = d.d and b = d.C the near hit is t = c / (b + sqrt(b^2 - a c)), and since the hit
+     * point lies on the sphere its normal is (t d - C) / R, no normalization needed. Along a row
+     * only d.x changes, so the rest is hoisted. That solve runs every LERP_STEP pixels, its sqrt
+     * mostly a Newton step from the previous sample's, and the intensity is interpolated in 8.8
+     * fixed point between two hits. Steps touching the limb (a miss at either end, or a sample
+     * where the surface turns away too fast to interpolate) and steps near a clamp whose midpoint
+     * is off the line by more than LERP_MAX_ERROR / 2 (the terminator) are solved per pixel.
+     */
+    void rasterize(FrameBuffer fb) {
+        if (impostor != null) {
+            blit(fb);
+            return;
+        }
+
+        final int W = viewW;
+        final int H = viewH;
+        final double pz = -near;
+        final int[] pixels = fb.pixels;
+        final int[] shade = this.shade;
+        // A row's exact samples, for the widest row the clip lets through
+        int clipW = java.lang.Math.min(W, fb.clipX1) - java.lang.Math.max(0, fb.clipX0);
+        final int[] level = new int[java.lang.Math.max(0, clipW) / LERP_STEP + 2];
+
+        int dyMin = java.lang.Math.max(-rPix, fb.clipY0 - cy);
+        int dyMax = java.lang.Math.min(rPix, java.lang.Math.min(H, fb.clipY1) - 1 - cy);
+
+        for (int dyPix = dyMin; dyPix <= dyMax; dyPix++) {
+            double sy = dyPix / (double) rPix;
+            double xSq = 1.0 - sy * sy;
+            if (xSq <= 0) continue;
+
+            int halfWidth = (int) (java.lang.Math.sqrt(xSq) * rPix);
+            int yPix = cy + dyPix;
+
+            int xFrom = java.lang.Math.max(cx - halfWidth, java.lang.Math.max(0, fb.clipX0));
+            int xTo = java.lang.Math.min(cx + halfWidth, java.lang.Math.min(W, fb.clipX1) - 1);
+            if (xFrom > xTo) continue;
+
+            // Row constants
+            double py = (1.0 - (2.0 * yPix) / (double) H) * nearHalfH;
+            double aRow = py * py + pz * pz;
+            double bRow = py * centerY + pz * centerZ;
+            double lRow = py * lightY + pz * lightZ;
+
+            int row = yPix * fb.width;
+
+            // Exact samples every LERP_STEP pixels plus one at xTo. Solved first, in their own
+            // loop: the solves are independent, so they overlap in the pipeline
+            int steps = (xTo - xFrom + LERP_STEP - 1) / LERP_STEP;
+            double root = 0.0; // sqrt of the previous sample's discriminant, 0 after a miss
+            for (int k = 0; k <= steps; k++) {
+                double dx = java.lang.Math.min(xFrom + k * LERP_STEP, xTo) * kx - nearHalfW;
+                double b = dx * centerX + bRow;
+                double a = dx * dx + aRow;
+                double disc = b * b - a * c;
+                if (b <= 0.0 || disc <= limbDisc * a) {
+                    level[k] = -1; // missed, or too near the limb: solved per pixel
+                    root = 0.0;
+                    continue;
+                }
+                if (root > 0.0 && java.lang.Math.abs(disc - root * root) < NEWTON_MAX_CHANGE * disc) {
+                    root = 0.5 * (root + disc / root);
+                } else {
+                    root = java.lang.Math.sqrt(disc);
+                }
+                level[k] = shadeLevel(dx, b, root, lRow);
+            }
+
+            for (int k = 0; k < steps; k++) {
+                int x0 = xFrom + k * LERP_STEP;
+                int x1 = java.lang.Math.min(x0 + LERP_STEP, xTo);
+                int v0 = level[k], v1 = level[k + 1];
+                int xm = (x0 + x1) >>> 1, vm = -1;
+                if (v0 >= 0 && v1 >= 0) {
+                    int dv = (v1 - v0) / (x1 - x0);
+                    int lo = java.lang.Math.min(v0, v1), hi = java.lang.Math.max(v0, v1);
+                    int reach = hi - lo + KINK_MARGIN;
+                    boolean nearClamp = (hi > floorLevel && lo - floorLevel <= reach)
+                            || (lo < ceilLevel && ceilLevel - hi <= reach);
+                    if (nearClamp) vm = (xm > x0) ? level(xm, aRow, bRow, lRow) : v0;
+                    if (!nearClamp || java.lang.Math.abs(vm - (v0 + dv * (xm - x0))) <= LERP_MAX_ERROR * 128.0) {
+                        for (int x = x0, v = v0; x < x1; x++, v += dv) {
+                            pixels[row + x] = FrameBuffer.OPAQUE | shade[(v + 128) >> 8];
+                        }
+                        continue;
+                    }
+                }
+                // Limb, or curving too much between the ends: per pixel, reusing the solved ones
+                for (int x = x0; x < x1; x++) {
+                    int v = (x == x0 && v0 >= 0) ? v0 : (x == xm && vm >= 0) ? vm : level(x, aRow, bRow, lRow);
+                    if (v >= 0) pixels[row + x] = FrameBuffer.OPAQUE | shade[(v + 128) >> 8];
+                }
+            }
+            int last = (level[steps] >= 0) ? level[steps] : level(xTo, aRow, bRow, lRow);
+            if (last >= 0) pixels[row + xTo] = FrameBuffer.OPAQUE | shade[(last + 128) >> 8];
+        }
+    }
+
+    /**
+     * Samples the impostor for every pixel of the rPix disk inside fb's clip that the sphere
+     * covers (by the nearest texel), the Lambert term bilinear between the four around it. The map is solved every BLIT_SPAN pixels and stepped linearly in
+     * 16.16 fixed point in between.
+     */
+    private void blit(FrameBuffer fb) {
+        final int[] pixels = fb.pixels;
+        final byte[] sprite = impostor.lambert;
+        final int[] halfWidths = impostor.halfWidth;
+        final int[] palette = this.palette;
+        final int r = impostor.r;
+        final int size = 2 * r + 1;
+
+        int dyMin = java.lang.Math.max(-rPix, fb.clipY0 - cy);
+        int dyMax = java.lang.Math.min(rPix, java.lang.Math.min(viewH, fb.clipY1) - 1 - cy);
+
+        for (int dyPix = dyMin; dyPix <= dyMax; dyPix++) {
+            double sy = dyPix / (double) rPix;
+            double xSq = 1.0 - sy * sy;
+            if (xSq <= 0) continue;
+
+            int halfWidth = (int) (java.lang.Math.sqrt(xSq) * rPix);
+            int xFrom = java.lang.Math.max(cx - halfWidth, java.lang.Math.max(0, fb.clipX0));
+            int xTo = java.lang.Math.min(cx + halfWidth, java.lang.Math.min(viewW, fb.clipX1) - 1);
+            if (xFrom > xTo) continue;
+
+            int row = (cy + dyPix) * fb.width;
+            double uRow = mapU0 + dyPix * mapUY, vRow = mapV0 + dyPix * mapVY, wRow = mapW0 + dyPix * mapWY;
+
+            int x0 = xFrom;
+            double w = wRow + (x0 - cx) * mapWX;
+            int u0 = (int) ((uRow + (x0 - cx) * mapUX) / w * 65536.0);
+            int v0 = (int) ((vRow + (x0 - cx) * mapVX) / w * 65536.0);
+            while (x0 <= xTo) {
+                int x1 = java.lang.Math.min(x0 + BLIT_SPAN, xTo + 1);
+                w = wRow + (x1 - cx) * mapWX;
+                int u1 = (int) ((uRow + (x1 - cx) * mapUX) / w * 65536.0);
+                int v1 = (int) ((vRow + (x1 - cx) * mapVX) / w * 65536.0);
+                int du = (u1 - u0) / (x1 - x0), dv = (v1 - v0) / (x1 - x0);
+
+                for (int x = x0, u = u0, v = v0; x < x1; x++, u += du, v += dv) {
+                    // Coverage by the nearest texel, the Lambert term bilinear from the four around
+                    int nv = ((v + 0x8000) >> 16) + r;
+                    if (nv < 0 || nv >= size) continue;
+                    int half = halfWidths[nv], nu = (u + 0x8000) >> 16;
+                    if (nu > half || nu < -half) continue;
+                    int t = ((v >> 16) + r) * size + (u >> 16) + r;
+                    int fu = (u >> 8) & 0xFF, fv = (v >> 8) & 0xFF;
+                    int top = (sprite[t] & 0xFF) * (256 - fu) + (sprite[t + 1] & 0xFF) * fu;
+                    int bottom = (sprite[t + size] & 0xFF) * (256 - fu) + (sprite[t + size + 1] & 0xFF) * fu;
+                    pixels[row + x] = FrameBuffer.OPAQUE | palette[(top * (256 - fv) + bottom * fv + 0x8000) >>> 16];
+                }
+                x0 = x1;
+                u0 = u1;
+                v0 = v1;
+            }
+        }
+    }
+
+    /** Shade index (0..255) in 8.8 fixed point for the ray through column x of a row, -1 on a miss. */
+    private int level(int x, double aRow, double bRow, double lRow) {
+        double dx = x * kx - nearHalfW;
+
+        double b = dx * centerX + bRow;      // d.C
+        if (b <= 0.0) return -1;             // c > 0: the near hit has t > 0 iff b > 0
+        double a = dx * dx + aRow;           // d.d
+        double disc = b * b - a * c;
+        if (disc <= 0.0) return -1;
+
+        return shadeLevel(dx, b, java.lang.Math.sqrt(disc), lRow);
+    }
+
+    /** level() once the discriminant's root is known. */
+    private int shadeLevel(double dx, double b, double root, double lRow) {
+        // Near hit; c / (b + root) rather than (b - root) / a, which cancels when the camera is close
+        double t = c / (b + root);
+
+        // Lambert: n.L with n = (t d - C) / R
+        double lambert = (t * (dx * lightX + lRow) - cDotL) * invR;
+
+        float intensity = Lighting.planetIntensity((float) lambert, solar);
+        return (int) (intensity * (255.0f * 256.0f));
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Fixed-timestep driver for SimulationEngine, decoupled from the render rate.
+ *
+ * - Real frame time is accumulated and consumed in fixed ticks of TICK_NANOS; every tick is one
+ *   SimulationEngine.step with the same real delta, so stepping is deterministic for a given
+ *   speed history no matter how often the view paints.
+ * - Frame deltas are clamped (MAX_FRAME_NANOS) and ticks per frame are capped
+ *   (MAX_TICKS_PER_FRAME); time beyond that is dropped, so a frame spike slows the simulation
+ *   for a moment instead of producing one huge jump, and simulation CPU per frame is bounded.
+ * - Every tick is committed to the OrbitalStateStore and the last two are published as a
+ *   snapshot. The render side draws prev + (curr - prev) * alpha ({@link #interpolate}), alpha
+ *   being how far real time has progressed towards the next tick, so rendering lags the newest
+ *   tick by up to one tick.
+ *
+ * advance() belongs to the simulation side (SimulationThread, or the paint thread when the
+ * simulation isn't threaded); interpolate() to the render side.
+ */
+public final class SimulationClock {
+
+    // --- Tunables ---
+    /** Real time per simulation tick (120 Hz). */
+    public static long TICK_NANOS = 8_333_333L;
+    /** Cap on ticks run per advance() call. */
+    public static int MAX_TICKS_PER_FRAME = 8;
+    /** Longer deltas are clamped to this before accumulating. */
+    public static long MAX_FRAME_NANOS = 250_000_000L;
+    /** Interpolate between the last two ticks (false: draw the newest tick as is). */
+    public static boolean INTERPOLATE = true;
+
+    private long accumulatorNanos = 0L;
+    private long tickTime;
+    private OrbitalStateStore store;
+
+    // Time jumps requested by other threads (load); applied at the start of the next advance()
+    private volatile boolean resetPending = false;
+    private volatile long resetTime;
+
+    // Stats
+    private long ticks = 0L;
+    private long droppedNanos = 0L;
+
+    public SimulationClock(long simulationTimeNanos) {
+        this.tickTime = simulationTimeNanos;
+    }
+
+    /** Restarts from the given time with nothing accumulated (load, time jumps). Thread-safe. */
+    public void requestReset(long simulationTimeNanos) {
+        resetTime = simulationTimeNanos;
+        resetPending = true;
+    }
+
+    public long getTicks() { return ticks; }
+    /** Real time discarded by the clamp/tick cap so far (nanoseconds). */
+    public long getDroppedNanos() { return droppedNanos; }
+    /** Simulation time of the newest tick. */
+    public long getTickTime() { return tickTime; }
+
+    /**
+     * Runs the ticks due for realDeltaNanos on the given store and publishes the result.
+     *
+     * @return the simulation time of the newest tick
+     */
+    public long advance(long realDeltaNanos, double displaySpeed, OrbitalStateStore current) {
+        if (resetPending) {
+            resetPending = false;
+            tickTime = resetTime;
+            accumulatorNanos = 0L;
+            store = null;
+        }
+
+        if (realDeltaNanos < 0L) realDeltaNanos = 0L;
+        if (realDeltaNanos > MAX_FRAME_NANOS) {
+            droppedNanos += realDeltaNanos - MAX_FRAME_NANOS;
+            realDeltaNanos = MAX_FRAME_NANOS;
+        }
+        accumulatorNanos += realDeltaNanos;
+
+        if (current != store) {
+            // New store (system edited, reloaded or time reset): commit a starting state right away
+            store = current;
+            tick(displaySpeed);
+        }
+
+        int steps = 0;
+        while (accumulatorNanos >= TICK_NANOS && steps < MAX_TICKS_PER_FRAME) {
+            tick(displaySpeed);
+            accumulatorNanos -= TICK_NANOS;
+            steps++;
+        }
+        if (accumulatorNanos >= TICK_NANOS) {
+            long keep = accumulatorNanos % TICK_NANOS;
+            droppedNanos += accumulatorNanos - keep;
+            accumulatorNanos = keep;
+        }
+
+        store.publish(System.nanoTime(), accumulatorNanos);
+        return tickTime;
+    }
+
+    private void tick(double displaySpeed) {
+        tickTime = SimulationEngine.step(tickTime, TICK_NANOS, displaySpeed, store);
+        store.commitTick(tickTime);
+        ticks++;
+    }
+
+    /**
+     * Render side: moves the store's visible positions to the newest snapshot, interpolated for
+     * the real time elapsed since it was published.
+     *
+     * @return the simulation time matching the drawn positions, or fallbackTime if the store
+     *         has no snapshot yet
+     */
+    public static long interpolate(OrbitalStateStore store, long nowNanos, long fallbackTime) {
+        OrbitalStateStore.Snapshot s = store.acquireSnapshot();
+        if (s == null) return fallbackTime;
+
+        double alpha = 1.0;
+        if (INTERPOLATE) {
+            long sincePublish = java.lang.Math.max(0L, nowNanos - s.getPublishedAtNanos());
+            alpha = (s.getPendingNanos() + sincePublish) / (double) TICK_NANOS;
+            alpha = java.lang.Math.max(0.0, java.lang.Math.min(1.0, alpha));
+        }
+        store.interpolate(s, alpha);
+        return s.getPrevTime() + (long) ((s.getCurrTime() - s.getPrevTime()) * alpha);
+    }
+}
@@ -1,14 +1,56 @@
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Pure simulation stepping:
  * - Advances simulation time (scaled by displaySpeed)
  * - Moves orbiting bodies to their positions at the new simulation time
+ *   (propagated over the system's OrbitalStateStore, not per-object)
+ * - Executes scheduled spacecraft burns (see ManeuverScheduler)
+ * - Hands SOI-tracked bodies over to the attractor whose sphere they are in (see SoiHandoff)
+ * - Optionally integrates mutual gravity instead (NBODY_MODE, see NBodyIntegrator)
  *
  * This is intentionally renderer-agnostic and UI-agnostic.
  */
 public final class SimulationEngine {
 
+    // --- Tunables ---
+    /** Propagate moons/asteroids in chunks on the common ForkJoinPool. */
+    public static boolean PARALLEL_PROPAGATION = true;
+    /** Below this many bodies the whole system is propagated on the calling thread. */
+    public static int PARALLEL_MIN_BODIES = 16_384;
+    /** Smallest chunk of bodies handed to one fork-join task. */
+    public static int PARALLEL_GRAIN = 4_096;
+
+    /** Answer positions from a Chebyshev ephemeris cache (see Ephemeris) instead of solving Kepler each frame. */
+    public static boolean USE_EPHEMERIS = true;
+    /** Memory cap for cached ephemeris segments. */
+    public static long EPHEMERIS_MAX_BYTES = Ephemeris.DEFAULT_MAX_BYTES;
+
+    /** Solve Kepler for bodies not answered by the ephemeris in SIMD-friendly blocks (see KeplerLaneKernel). */
+    public static boolean USE_LANE_KERNEL = true;
+
+    /** Skip bodies whose apparent motion since their last solve is below a pixel (see MotionBudget). */
+    public static boolean USE_MOTION_BUDGET = true;
+
+    /** Execute Spacecraft maneuver timelines (see ManeuverScheduler). */
+    public static boolean USE_MANEUVERS = true;
+
+    /** Switch SOI-tracked bodies to the attractor whose sphere of influence they enter (see SoiHandoff). */
+    public static boolean USE_SOI_HANDOFF = true;
+
+    /** Precess nodes and periapses at secular J2/third-body/planetary rates (see SecularPerturbations). */
+    public static boolean USE_SECULAR_PERTURBATIONS = false;
+
+    /** Integrate mutual gravity (NBodyIntegrator) instead of analytic two-body orbits. */
+    public static boolean NBODY_MODE = false;
+    private static NBodyIntegrator nbody = null;
+    private static double nbodyStartEnergy = 0.0;
+
+    // --- Debug (optional) ---
+    /** Print Kepler solver metrics (solves, mean/max iterations) about once a second. */
+    public static boolean DEBUG_STATS = false;
+    private static long lastStatsNs = 0L;
+
     private SimulationEngine() {}
 
     /**
@@ -23,19 +65,156 @@ public final class SimulationEngine {
             long simulationTimeNanos,
             long realDeltaNanos,
             double displaySpeed,
-            List<Planet> planets,
-            List<Moon> moons,
-            List<Asteroid> asteroids
+            SolarSystem system
+    ) {
+        return step(simulationTimeNanos, realDeltaNanos, displaySpeed, system.getOrbitStore());
+    }
+
+    /**
+     * Same as {@link #step(long, long, double, SolarSystem)} on an already built store; this is
+     * what the simulation thread calls, since only the UI thread may rebuild from the body lists.
+     */
+    public static long step(
+            long simulationTimeNanos,
+            long realDeltaNanos,
+            double displaySpeed,
+            OrbitalStateStore store
     ) {
         // simulationTime += durationNanos * displaySpeed;  (compound assignment truncates)
         long simDeltaNanos = (long) (realDeltaNanos * displaySpeed);
         long newSimTime = simulationTimeNanos + simDeltaNanos;
 
+        if (NBODY_MODE) {
+            NBodyIntegrator nb = syncNBody(store, simulationTimeNanos);
+            newSimTime = nb.advanceTo(newSimTime);
+            if (DEBUG_STATS) printNBodyStats(nb);
+            return newSimTime;
+        }
+        nbody = null;
+
         // Move bodies to their positions at this simulation time
-        for (Planet p : planets) p.move(newSimTime);
-        for (Moon m : moons) m.move(newSimTime);
-        for (Asteroid a : asteroids) a.move(newSimTime);
+        syncEphemeris(store);
+        syncMotionBudget(store);
+        syncSecularPerturbations(store);
+        store.setLaneKernel(USE_LANE_KERNEL);
+
+        if (PARALLEL_PROPAGATION && store.size() >= PARALLEL_MIN_BODIES) {
+            store.propagateParallel(newSimTime, ForkJoinPool.commonPool(), PARALLEL_GRAIN);
+        } else {
+            store.propagate(newSimTime);
+        }
+        SoiHandoff soi = syncSoiHandoff(store);
+        ManeuverScheduler maneuvers = syncManeuvers(store);
+        if (maneuvers != null) maneuvers.update(newSimTime, soi);
+        if (soi != null) soi.update(newSimTime);
+
+        if (DEBUG_STATS) printKeplerStats(store);
 
         return newSimTime;
     }
+
+    private static void syncEphemeris(OrbitalStateStore store) {
+        if (USE_EPHEMERIS) {
+            if (store.getEphemeris() == null) store.setEphemeris(new Ephemeris(store, EPHEMERIS_MAX_BYTES));
+        } else if (store.getEphemeris() != null) {
+            store.setEphemeris(null);
+        }
+    }
+
+    private static void syncMotionBudget(OrbitalStateStore store) {
+        if (USE_MOTION_BUDGET) {
+            if (store.getMotionBudget() == null) store.setMotionBudget(new MotionBudget(store));
+        } else if (store.getMotionBudget() != null) {
+            store.setMotionBudget(null);
+        }
+    }
+
+    private static void syncSecularPerturbations(OrbitalStateStore store) {
+        if (USE_SECULAR_PERTURBATIONS) {
+            if (store.getSecularPerturbations() == null) store.setSecularPerturbations(new SecularPerturbations(store));
+        } else if (store.getSecularPerturbations() != null) {
+            store.setSecularPerturbations(null);
+        }
+    }
+
+    private static SoiHandoff syncSoiHandoff(OrbitalStateStore store) {
+        if (!USE_SOI_HANDOFF || store.getSoiTrackedCount() == 0) {
+            if (store.getSoiHandoff() != null) store.setSoiHandoff(null);
+            return null;
+        }
+        if (store.getSoiHandoff() == null) store.setSoiHandoff(new SoiHandoff(store));
+        return store.getSoiHandoff();
+    }
+
+    private static ManeuverScheduler syncManeuvers(OrbitalStateStore store) {
+        if (!USE_MANEUVERS || store.getSpacecraftSlots().length == 0) {
+            if (store.getManeuverScheduler() != null) store.setManeuverScheduler(null);
+            return null;
+        }
+        if (store.getManeuverScheduler() == null) store.setManeuverScheduler(new ManeuverScheduler(store));
+        return store.getManeuverScheduler();
+    }
+
+    /**
+     * (Re)starts the integrator from the analytic orbits when the system was rebuilt or the
+     * clock was moved by someone else (load, reset).
+     */
+    private static NBodyIntegrator syncNBody(OrbitalStateStore store, long simulationTimeNanos) {
+        NBodyIntegrator nb = nbody;
+        if (nb == null || nb.getStore() != store || nb.getClockNanos() != simulationTimeNanos) {
+            nb = new NBodyIntegrator(store, simulationTimeNanos, ForkJoinPool.commonPool());
+            nbody = nb;
+            if (DEBUG_STATS) nbodyStartEnergy = nb.computeEnergy();
+        }
+        return nb;
+    }
+
+    private static void printNBodyStats(NBodyIntegrator nb) {
+        long now = System.nanoTime();
+        if (now - lastStatsNs < 1_000_000_000L) return;
+
+        double energy = nb.computeEnergy();
+        if (nbodyStartEnergy == 0.0) nbodyStartEnergy = energy;
+        System.out.printf(
+                "NBODY: massive=%d  particles=%d  h=%.1fs  substeps=%d  dE/E=%.3e%n",
+                nb.getMassiveCount(), nb.getTestParticleCount(), nb.getStepSeconds(),
+                nb.getSubsteps(), (energy - nbodyStartEnergy) / java.lang.Math.abs(nbodyStartEnergy)
+        );
+        lastStatsNs = now;
+    }
+
+    private static void printKeplerStats(OrbitalStateStore store) {
+        long now = System.nanoTime();
+        if (now - lastStatsNs < 1_000_000_000L) return;
+
+        long solves = store.getKeplerSolves();
+        double avg = (solves > 0) ? (store.getKeplerIterations() / (double) solves) : 0.0;
+        System.out.printf(
+                "KEPLER: solves=%d  iterations avg=%.2f max=%d%n",
+                solves, avg, store.getKeplerMaxIterations()
+        );
+
+        Ephemeris eph = store.getEphemeris();
+        if (eph != null) {
+            System.out.printf(
+                    "EPHEMERIS: hits=%d  generated=%d  direct=%d  cached=%d  evicted=%d%n",
+                    eph.getHits(), eph.getGenerated(), eph.getDirectSolves(),
+                    eph.getCachedSegments(), eph.getEvictions()
+            );
+        }
+
+        MotionBudget mb = store.getMotionBudget();
+        if (mb != null) {
+            long solved = mb.getSolved();
+            long skipped = mb.getSkipped();
+            long all = solved + skipped;
+            System.out.printf(
+                    "MOTION: solved=%d  skipped=%d (%.1f%%)%n",
+                    solved, skipped, (all > 0) ? (100.0 * skipped / all) : 0.0
+            );
+            mb.resetStats();
+        }
+        store.resetKeplerMetrics();
+        lastStatsNs = now;
+    }
 }
@@ -0,0 +1,79 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the SimulationClock on its own thread so propagation of large catalogs overlaps with
+ * painting instead of adding to frame time.
+ *
+ * The UI thread owns the body lists, so it builds/rebuilds the OrbitalStateStore and hands
+ * the current one over with {@link #setStore}; this thread only ever touches the store's
+ * simulation-side arrays and publishes snapshots (see OrbitalStateStore) that the renderer
+ * picks up lock-free.
+ */
+public final class SimulationThread implements Runnable {
+
+    private final SimulationClock clock;
+
+    private volatile OrbitalStateStore store;
+    private volatile double displaySpeed = 1.0;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    public SimulationThread(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    public SimulationClock getClock() { return clock; }
+
+    public void setStore(OrbitalStateStore store) { this.store = store; }
+    public void setDisplaySpeed(double displaySpeed) { this.displaySpeed = displaySpeed; }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stops the thread and waits for the tick in progress, so the caller may drive the clock itself. */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        LockSupport.unpark(t);
+        try {
+            t.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        long last = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            long delta = now - last;
+            last = now;
+
+            OrbitalStateStore s = store;
+            if (s != null) {
+                try {
+                    clock.advance(delta, displaySpeed, s);
+                } catch (RuntimeException ex) {
+                    // Keep simulating; a bad frame must not kill the thread
+                    ex.printStackTrace();
+                }
+            }
+
+            // Sleep until the next tick is due
+            long spent = System.nanoTime() - now;
+            long wait = SimulationClock.TICK_NANOS - spent;
+            if (wait > 0L) LockSupport.parkNanos(wait);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Simulation time split into whole seconds and a fraction, for phase-exact propagation.
+ *
+ * The clock counts nanoseconds in a long. Converting that straight to double seconds rounds to
+ * the spacing of the total (about 1e-7 s after 30 years), and every body then inherits that
+ * error before its own period is taken out. Here the whole seconds stay an exact integer, are
+ * reduced by the period first (fmod is exact), and only then is the sub-second fraction added,
+ * so the orbit phase is accurate to the spacing of the period, however long the run.
+ */
+public final class SimulationTime {
+
+    public static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long wholeSeconds;
+    private final double fraction; // [0, 1) seconds
+
+    private SimulationTime(long wholeSeconds, double fraction) {
+        this.wholeSeconds = wholeSeconds;
+        this.fraction = fraction;
+    }
+
+    public static SimulationTime ofNanos(long nanos) {
+        long s = java.lang.Math.floorDiv(nanos, NANOS_PER_SECOND);
+        long ns = java.lang.Math.floorMod(nanos, NANOS_PER_SECOND);
+        return new SimulationTime(s, ns / (double) NANOS_PER_SECOND);
+    }
+
+    /** Plain seconds (rounded); fine for differences and rates, not for orbit phase. */
+    public double seconds() {
+        return wholeSeconds + fraction;
+    }
+
+    /**
+     * This time modulo period, in [0, period). The whole seconds are exact as a double (a long
+     * of nanoseconds holds under 1e10 s), so only the final add rounds. An infinite period
+     * (hyperbolic orbit) leaves the time unwrapped.
+     */
+    public double phase(double period) {
+        if (period == Double.POSITIVE_INFINITY) return seconds();
+        double t = ((double) wholeSeconds % period) + fraction;
+        if (t < 0.0) t += period;
+        if (t >= period) t -= period;
+        return t;
+    }
+}
@@ -14,15 +14,32 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 	private final ArrayList<Planet> ps;
 	private final ArrayList<Moon> ss;
 	private final ArrayList<Asteroid> asteroids;
+	private final ArrayList<Spacecraft> spacecraft;
 	private final SolarSystem model;
 
 	private double displaySpeed;
 	
 	private long lastCurrentTime;
 	public long simulationTime;
+	private final SimulationClock clock = new SimulationClock(0L);
+	private final SimulationThread simulationThread = new SimulationThread(clock);
+
+	// Step the simulation on its own thread (false: step inside update(), before painting)
+	public static boolean SIMULATION_THREAD = true;
+
+	// Floating origin: bodies and camera are kept relative to originX/Y/Z (world), which jumps to
+	// the camera once it is REBASE_DISTANCE units away, so projection works on small numbers
+	// (false: plain world coordinates)
+	public static boolean FLOATING_ORIGIN = true;
+	public static double REBASE_DISTANCE = 1_000.0;
+	private double originX, originY, originZ;
 
 	private final Controls controls = new Controls();
-	private final Renderer renderer = new SoftwareRenderer();
+	// Write stars, rings, orbits and bodies straight into the back buffer's pixels (RasterRenderer)
+	// (false: everything through Graphics2D, SoftwareRenderer)
+	public static boolean RASTER_RENDERER = true;
+
+	private final Renderer renderer = RASTER_RENDERER ? new RasterRenderer() : new SoftwareRenderer();
 
 	public double viewX;
 	public double viewY;
@@ -84,6 +101,7 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 	public ArrayList<Planet> getPlanets() { return ps; }
 	public ArrayList<Moon> getMoons() { return ss; }
 	public ArrayList<Asteroid> getAsteroids() { return asteroids; }
+	public ArrayList<Spacecraft> getSpacecraft() { return spacecraft; }
 
 	public Starfield getStarfield() { return starfield; }
 
@@ -95,7 +113,10 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 	public long getInfoHudUntilNanos() { return infoHudUntilNanos; }
 	public long getLastCurrentTime() { return lastCurrentTime; }
 
-	public void setSimulationTime(long t) { simulationTime = t; }
+	public void setSimulationTime(long t) {
+		simulationTime = t;
+		clock.requestReset(t);
+	}
 	public void resetTimingAfterLoad() { lastCurrentTime = System.nanoTime(); }
 
 	public SimulationView(int viewWidth, int viewHeight, int actualWidth, int actualHeight, SolarSystem model) {
@@ -108,6 +129,7 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 		this.ps = model.getPlanets();
 		this.ss = model.getMoons();
 		this.asteroids = model.getAsteroids();
+		this.spacecraft = model.getSpacecraft();
 		this.star = model.getStar();
 
 		displaySpeed = 1;
@@ -131,7 +153,7 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 			);
 
 		// In the plane, to the left of the star, looking right at it
-		frustum.setCameraPosition(star.getX(), star.getY(), star.getZ() - camDist);
+		frustum.setCameraPosition(star.getWorldX(), star.getWorldY(), star.getWorldZ() - camDist);
 
 		camera = new CameraController(frustum);
 		camera.setYawPitchDeg(yaw, pitch);
@@ -169,15 +191,21 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 	    // dt in seconds for camera movement
 	    double dtSeconds = durationNanos / 1_000_000_000.0;
 
-		// advance sim time + move bodies
-		simulationTime = SimulationEngine.step(
-				simulationTime,
-				durationNanos,
-				displaySpeed,
-				ps,
-				ss,
-				asteroids
-		);
+		// advance sim time in fixed ticks (here or on the simulation thread), then move bodies to the
+		// newest published state, interpolated between the last two ticks.
+		// The store is (re)built here: only this thread edits the body lists.
+		OrbitalStateStore store = model.getOrbitStore();
+		if (SIMULATION_THREAD) {
+			simulationThread.setDisplaySpeed(displaySpeed);
+			simulationThread.setStore(store);
+			simulationThread.start();
+		} else {
+			simulationThread.stop();
+			clock.advance(durationNanos, displaySpeed, store);
+		}
+		store.setRenderOrigin(originX, originY, originZ);
+		simulationTime = SimulationClock.interpolate(store, currentTime, simulationTime);
+		store.syncOrbits();
 
 		// 2) Sync frustum orientation with current yaw/pitch
 	    frustum.cameraYaw   = yaw;
@@ -185,7 +213,9 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 
 	    // 3) Update camera position (locked or free) using NEW body positions
 	    updateCameraPosition(dtSeconds);
+	    rebaseOrigin(store);
 	    updateFocusSystem();
+	    publishViewer(store);
 	    
 	    // 4) Render
 	    paint(window);
@@ -218,6 +248,7 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 	    all.addAll(ps);
 	    all.addAll(ss);
 	    if (asteroids != null) all.addAll(asteroids);
+	    if (spacecraft != null) all.addAll(spacecraft);
 
 	    for (Body b : all) {
 	        if (b == null) continue;
@@ -242,6 +273,52 @@ public class SimulationView extends Canvas implements MouseMotionListener, Mouse
 
 	public SolarSystem getModel() { return model; }
 
+	/**
+	 * Moves the floating origin to the camera once the camera has wandered REBASE_DISTANCE from
+	 * it (or back to world zero when FLOATING_ORIGIN is off); bodies and camera shift together.
+	 */
+	private void rebaseOrigin(OrbitalStateStore store) {
+		double dx, dy, dz;
+		if (FLOATING_ORIGIN) {
+			dx = frustum.cameraX; dy = frustum.cameraY; dz = frustum.cameraZ;
+			if (dx * dx + dy * dy + dz * dz <= REBASE_DISTANCE * REBASE_DISTANCE) return;
+		} else {
+			if (originX == 0.0 && originY == 0.0 && originZ == 0.0) return;
+			dx = -originX; dy = -originY; dz = -originZ;
+		}
+		originX += dx;
+		originY += dy;
+		originZ += dz;
+		store.setRenderOrigin(originX, originY, originZ);
+		frustum.setCameraPosition(frustum.cameraX - dx, frustum.cameraY - dy, frustum.cameraZ - dz);
+	}
+
+	/**
+	 * Tells the motion budget where the camera is and looks (bodies outside the view are
+	 * deferred) and what is being looked at closely (lock target, info HUD body), so those are
+	 * always propagated exactly.
+	 */
+	private void publishViewer(OrbitalStateStore store) {
+		MotionBudget mb = store.getMotionBudget();
+		if (mb == null) return;
+
+		Body locked = (camera != null && camera.isLocked()) ? camera.getLockedBody() : null;
+		Body info = (System.nanoTime() < infoHudUntilNanos) ? lastInfoBody : null;
+
+		// Camera into the store's simulation frame; the view cone for off-screen deferral
+		double[] view = new double[3];
+		frustum.viewDirection(view);
+		mb.setViewer(
+				frustum.cameraX + originX - store.getOriginX(),
+				frustum.cameraY + originY - store.getOriginY(),
+				frustum.cameraZ + originZ - store.getOriginZ(),
+				view[0], view[1], view[2], frustum.cornerHalfAngle(),
+				frustum.pixelsPerRadian(VIEW_HEIGHT),
+				(locked != null) ? locked.getStoreIndex() : -1,
+				(info != null) ? info.getStoreIndex() : -1
+		);
+	}
+
 	/** Decide which planet system we are “in” (or null if global view). */
 	private void updateFocusSystem() {
 	    if (!focusCullingEnabled) { focusPlanet = null; return; }
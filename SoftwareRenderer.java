@@ -1,15 +1,17 @@
 import java.awt.*;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
 
 /**
  * The current AWT/Canvas renderer extracted from Space.paint + helpers.
  *
  * Goal: keep Space focused on simulation/time/input, and keep drawing code here.
  * This makes it much easier to replace this renderer with an LWJGL/OpenGL renderer.
+ *
+ * Everything goes through Graphics2D here; {@link RasterRenderer} reuses this pipeline but
+ * hands a {@link FrameBuffer} over the back buffer to the pixel-level drawing.
  */
-public final class SoftwareRenderer implements Renderer {
+public class SoftwareRenderer implements Renderer {
 
     private BufferedImage back;
 
@@ -17,6 +19,10 @@ public final class SoftwareRenderer implements Renderer {
     private final double[] orbitCamTmp = new double[4];
     private final Point2D.Double orbitScreenTmp = new Point2D.Double();
     private final Point2D.Double orbitCenterScreenTmp = new Point2D.Double();
+    private final double[] orbitPTmp = new double[3], orbitQTmp = new double[3], orbitSecTmp = new double[2];
+
+    // Draw order, kept between frames
+    private final DepthOrder drawOrder = new DepthOrder();
 
     @Override
     public void render(Graphics window, SimulationView space) {
@@ -30,34 +36,43 @@ public final class SoftwareRenderer implements Renderer {
         }
 
         Graphics2D gtb = back.createGraphics();
+        FrameBuffer fb = frameBuffer(back);
 
         // Clear
-        gtb.setColor(Color.BLACK);
-        gtb.fillRect(0, 0, w, h);
+        if (fb != null) {
+            fb.clear(0x000000);
+        } else {
+            gtb.setColor(Color.BLACK);
+            gtb.fillRect(0, 0, w, h);
+        }
 
         // Orbits (behind bodies)
-        drawOrbits(gtb, space);
+        drawOrbits(gtb, fb, space);
 
         // Starfield
         if (space.showStars && space.getStarfield() != null) {
-            space.getStarfield().draw(gtb, SimulationView.frustum, w, h);
+            if (fb != null) space.getStarfield().draw(fb, SimulationView.frustum, w, h);
+            else space.getStarfield().draw(gtb, SimulationView.frustum, w, h);
         }
 
         // Build draw list (same ordering and behavior as before)
-        ArrayList<Body> drawList = new ArrayList<>();
-
-        for (Moon m : space.getMoons()) drawList.add(m);
-        for (Planet p : space.getPlanets()) drawList.add(p);
-        for (Asteroid a : space.getAsteroids()) drawList.add(a);
-        drawList.add(space.getStar());
-
-        drawList = sortDrawList(drawList);
-
-        // Draw bodies
-        for (Body b : drawList) {
-            b.draw(gtb, space, SimulationView.frustum);
+        drawOrder.clear();
+        for (Moon m : space.getMoons()) drawOrder.add(m);
+        for (Planet p : space.getPlanets()) drawOrder.add(p);
+        for (Asteroid a : space.getAsteroids()) drawOrder.add(a);
+        for (Spacecraft c : space.getSpacecraft()) drawOrder.add(c);
+        drawOrder.add(space.getStar());
+
+        drawOrder.sort(SimulationView.frustum.cameraX, SimulationView.frustum.cameraY, SimulationView.frustum.cameraZ);
+
+        // Draw bodies, far to near
+        for (int i = 0, n = drawOrder.size(); i < n; i++) {
+            drawOrder.get(i).draw(fb, gtb, space, SimulationView.frustum);
         }
 
+        // Deferred (tiled) pixels, then the labels waiting on them
+        if (fb != null) fb.flush();
+
         // HUD
         drawHud(gtb, space);
 
@@ -65,6 +80,11 @@ public final class SoftwareRenderer implements Renderer {
         tdg.drawImage(back, null, 0, 0);
     }
 
+    /** Direct pixel access to the back buffer for the drawing that supports it; null = all Graphics2D. */
+    FrameBuffer frameBuffer(BufferedImage back) {
+        return null;
+    }
+
     private void drawHud(Graphics2D gtb, SimulationView space) {
         gtb.setColor(Color.WHITE);
         int hudY = 20;
@@ -178,7 +198,7 @@ public final class SoftwareRenderer implements Renderer {
         }
     }
 
-    private void drawOrbits(Graphics2D g2, SimulationView space) {
+    private void drawOrbits(Graphics2D g2, FrameBuffer fb, SimulationView space) {
         if (!space.showPlanetOrbits && !space.showMoonOrbits && !space.showAsteroidOrbits) return;
 
         Composite oldComp = g2.getComposite();
@@ -190,7 +210,7 @@ public final class SoftwareRenderer implements Renderer {
             for (Planet p : space.getPlanets()) {
                 if (p == null) continue;
                 if (!space.shouldDrawOverlaysFor(p)) continue;
-                drawOrbitPathFor((OrbitingBody) p, g2, space);
+                drawOrbitPathFor((OrbitingBody) p, g2, fb, space);
             }
         }
 
@@ -198,7 +218,7 @@ public final class SoftwareRenderer implements Renderer {
             for (Moon m : space.getMoons()) {
                 if (m == null) continue;
                 if (!space.shouldDrawOverlaysFor(m)) continue;
-                drawOrbitPathFor((OrbitingBody) m, g2, space);
+                drawOrbitPathFor((OrbitingBody) m, g2, fb, space);
             }
         }
 
@@ -206,7 +226,7 @@ public final class SoftwareRenderer implements Renderer {
             for (Asteroid a : space.getAsteroids()) {
                 if (a == null) continue;
                 if (!space.shouldDrawOverlaysFor(a)) continue;
-                drawOrbitPathFor((OrbitingBody) a, g2, space);
+                drawOrbitPathFor((OrbitingBody) a, g2, fb, space);
             }
         }
 
@@ -214,7 +234,7 @@ public final class SoftwareRenderer implements Renderer {
         g2.setStroke(oldStroke);
     }
 
-    private void drawOrbitPathFor(OrbitingBody ob, Graphics2D g2, SimulationView space) {
+    private void drawOrbitPathFor(OrbitingBody ob, Graphics2D g2, FrameBuffer fb, SimulationView space) {
         Body parent = ob.getParent();
         if (parent == null) return;
 
@@ -246,8 +266,13 @@ public final class SoftwareRenderer implements Renderer {
         float alpha = (float) (space.orbitBaseAlpha * shaped);
         if (alpha <= 0.001f) return;
 
-        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-        g2.setColor(orbitTint(ob.color, 0.25f, 70));
+        Color tint = orbitTint(ob.color, 0.25f, 70);
+        int tintRGB = tint.getRGB() & 0xFFFFFF;
+        int alpha255 = FrameBuffer.alpha255(alpha);
+        if (fb == null) {
+            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+            g2.setColor(tint);
+        }
 
         // Adaptive segment count
         int seg = (int) java.lang.Math.round(
@@ -257,46 +282,46 @@ public final class SoftwareRenderer implements Renderer {
         );
         seg = java.lang.Math.max(space.orbitSegmentsMin, java.lang.Math.min(space.orbitSegmentsMax, seg));
 
-        double cosO = java.lang.Math.cos(ob.omegaBigRad);
-        double sinO = java.lang.Math.sin(ob.omegaBigRad);
-        double cosI = java.lang.Math.cos(ob.inclRad);
-        double sinI = java.lang.Math.sin(ob.inclRad);
-        double cosw = java.lang.Math.cos(ob.omegaSmallRad);
-        double sinw = java.lang.Math.sin(ob.omegaSmallRad);
+        // Orbit plane → engine frame comes from the body's P/Q basis; ν advances by a
+        // rotation recurrence, so the whole path costs one cos/sin pair instead of several per segment.
+        double semiLatus = a * (1.0 - e * e);
+        double dNu = (2.0 * java.lang.Math.PI) / seg;
+        double cosStep = java.lang.Math.cos(dNu);
+        double sinStep = java.lang.Math.sin(dNu);
+        double cosNu = 1.0, sinNu = 0.0;
+
+        double parentX = parent.getX();
+        double parentY = parent.getY();
+        double parentZ = parent.getZ();
+
+        // Precessed basis when the store drifts the elements (SecularPerturbations)
+        orbitPTmp[0] = ob.pX; orbitPTmp[1] = ob.pY; orbitPTmp[2] = ob.pZ;
+        orbitQTmp[0] = ob.qX; orbitQTmp[1] = ob.qY; orbitQTmp[2] = ob.qZ;
+        OrbitalStateStore store = ob.store;
+        SecularPerturbations sec = (store != null) ? store.getSecularPerturbations() : null;
+        if (sec != null) {
+            double tSeconds = SimulationTime.ofNanos(space.getSimulationTime()).seconds();
+            sec.apply(ob.storeIndex, tSeconds, orbitPTmp, orbitSecTmp);
+            sec.apply(ob.storeIndex, tSeconds, orbitQTmp, orbitSecTmp);
+        }
 
         boolean hasPrev = false;
         int prevX = 0, prevY = 0;
 
         for (int i = 0; i <= seg; i++) {
-            double nu = (2.0 * java.lang.Math.PI) * (i / (double) seg);
-            double r = (a * (1.0 - e * e)) / (1.0 + e * java.lang.Math.cos(nu));
-
-            double xP = r * java.lang.Math.cos(nu);
-            double yP = r * java.lang.Math.sin(nu);
-
-            // Rotate by ω
-            double x1 = xP * cosw - yP * sinw;
-            double y1 = xP * sinw + yP * cosw;
+            double r = semiLatus / (1.0 + e * cosNu);
 
-            // Rotate by i
-            double x2 = x1;
-            double y2 = y1 * cosI;
-            double z2 = y1 * sinI;
+            double xP = r * cosNu;
+            double yP = r * sinNu;
 
-            // Rotate by Ω
-            double xEc = x2 * cosO - y2 * sinO;
-            double yEc = x2 * sinO + y2 * cosO;
-            double zEc = z2;
-
-            // ECLIPTIC -> ENGINE remap (matching your existing convention)
-            double xEng = xEc;
-            double yEng = zEc;
-            double zEng = yEc;
+            double c = cosNu * cosStep - sinNu * sinStep;
+            sinNu = sinNu * cosStep + cosNu * sinStep;
+            cosNu = c;
 
             // World translate
-            double wx = parent.getX() + xEng;
-            double wy = parent.getY() + yEng;
-            double wz = parent.getZ() + zEng;
+            double wx = parentX + xP * orbitPTmp[0] + yP * orbitQTmp[0];
+            double wy = parentY + xP * orbitPTmp[1] + yP * orbitQTmp[1];
+            double wz = parentZ + xP * orbitPTmp[2] + yP * orbitQTmp[2];
 
             SimulationView.frustum.worldToCameraSpaceDirect(wx, wy, wz, orbitCamTmp);
             if (!SimulationView.frustum.project3DTo2D(
@@ -310,7 +335,10 @@ public final class SoftwareRenderer implements Renderer {
             int x = (int) java.lang.Math.round(orbitScreenTmp.x);
             int y = (int) java.lang.Math.round(orbitScreenTmp.y);
 
-            if (hasPrev) g2.drawLine(prevX, prevY, x, y);
+            if (hasPrev) {
+                if (fb != null) fb.line(prevX, prevY, x, y, tintRGB, alpha255);
+                else g2.drawLine(prevX, prevY, x, y);
+            }
             prevX = x;
             prevY = y;
             hasPrev = true;
@@ -385,36 +413,4 @@ public final class SoftwareRenderer implements Renderer {
         double years = days / 365.25;
         return String.format("%.2f years/sec", years);
     }
-
-    private static ArrayList<Body> sortDrawList(ArrayList<Body> drawList) {
-        int n = drawList.size();
-        for (int i = 1; i < n; ++i) {
-            Body keyBody = drawList.get(i);
-
-            double bx = keyBody.getX();
-            double by = keyBody.getY();
-            double bz = keyBody.getZ();
-
-            double keyDist = new Vector3d(bx, by, bz)
-                    .distance(new Vector3d(SimulationView.frustum.cameraX, SimulationView.frustum.cameraY, SimulationView.frustum.cameraZ));
-
-            int j = i - 1;
-            while (j >= 0) {
-                Body jb = drawList.get(j);
-                double jbx = jb.getX();
-                double jby = jb.getY();
-                double jbz = jb.getZ();
-
-                double jbDist = new Vector3d(jbx, jby, jbz)
-                        .distance(new Vector3d(SimulationView.frustum.cameraX, SimulationView.frustum.cameraY, SimulationView.frustum.cameraZ));
-
-                if (jbDist >= keyDist) break;
-
-                drawList.set(j + 1, jb);
-                j--;
-            }
-            drawList.set(j + 1, keyBody);
-        }
-        return drawList;
-    }
 }
@@ -0,0 +1,483 @@
+import java.util.Arrays;
+
+/**
+ * Patched-conic parent switching for SOI-tracked bodies (OrbitingBody.isSoiTracked).
+ *
+ * A tracked body orbits whichever attractor's sphere of influence it is in, the deepest one when
+ * they nest (moon over planet over star). Radius r = a (μ / μ_parent)^(2/5), with μ from
+ * OrbitalStateStore.getMu; the root star's is unbounded. Tracked bodies and anything orbiting
+ * them are never attractors, so the store can keep them in its trailing levels.
+ *
+ * Spheres nest like the hierarchy (a satellite's sphere lies inside its primary's), so inside
+ * a sphere only that sphere's boundary and its own satellites' spheres can change the parent.
+ *
+ * Checks are scheduled per body in simulation time, not per frame:
+ * - a check places the body and the candidate attractors at the check time (chain solves, not
+ *   the ephemeris or motion budget): it climbs from the current parent to the smallest sphere
+ *   still containing the body, then descends into whichever satellite sphere contains it
+ * - each boundary around the result is at least its distance over the pair's relative speed
+ *   bound away in time (speeds relative to their common ancestor); the earliest of those is
+ *   when the body is checked next, so time warp cannot step over a sphere
+ * - around the root star, the planets and other top-level attractors come from a uniform hash
+ *   grid, rebuilt only on ticks where some body is due; spheres spanning too many cells are
+ *   always tested
+ * When the parent has changed, the crossing is bisected between the last two checks and the
+ * body's elements are re-derived there from its state relative to the new parent, in the store
+ * in place (OrbitalStateStore.rebind, hyperbolic if unbound); the body itself gets them on the
+ * render side.
+ *
+ * Runs on the simulation side after each propagation (SimulationEngine). Moving the clock back
+ * keeps the current parents (handoffs are not undone).
+ */
+public final class SoiHandoff {
+
+    // --- Tunables ---
+    /** Checks are at least the time to cross this fraction of the nearest sphere's radius apart. */
+    public static double BOUNDARY_TOLERANCE = 1e-3;
+    /** Crossing times are bisected to this bracket (seconds). */
+    public static double REFINE_TOLERANCE_SECONDS = 1e-3;
+    /** Margin on the speed bound (1 = exactly the bound). */
+    public static double SPEED_SAFETY = 1.25;
+    /** Spheres spanning more grid cells than this are tested on every check instead. */
+    public static int MAX_CELLS_PER_SPHERE = 64;
+
+    private static final long UNCHECKED = Long.MIN_VALUE;
+
+    private final OrbitalStateStore store;
+    private final int[] tracked;
+    private final int[] trackedIndex;   // per slot: index into tracked, -1 if not tracked
+    private final double[] soi;         // per slot: radius, +inf for roots, 0 for non-attractors
+    private final double[] chainSpeed;  // per slot: speed bound relative to its root
+    private final int[] satelliteStart; // per slot: its attractor satellites are
+    private final int[] satellites;     // satellites[satelliteStart[i] .. satelliteStart[i + 1])
+    private final int[] topLevel;       // attractors orbiting a root (gridded)
+    private final double maxTopLevelSpeed;
+    private final double cell;
+
+    // Schedule: next check per tracked index (UNCHECKED: at the current time), and the last one
+    private final EventQueue queue;
+    private final long[] lastCheck;
+    private long lastUpdate = UNCHECKED;
+    private int[] moved = new int[16];  // handed over since the last placeMoved
+    private int movedCount;
+
+    // Grid of sphere boxes at gridTime, bucket chains like CloseApproachFinder's
+    private long gridTime = UNCHECKED;
+    private final double[] gx, gy, gz;  // per slot, top-level positions at gridTime
+    private int[] head = new int[0];
+    private int[] entrySlot = new int[16], entryNext = new int[16];
+    private int[] large = new int[0];
+    private final int[] seen;           // per slot, stamp of the last candidate query
+    private int stamp;
+
+    // Scratch and the last bestContaining call's time to the nearest boundary (seconds)
+    private final double[] ecc = new double[3], off = new double[3], offV = new double[3];
+    private final double[] pos = new double[3], posB = new double[3];
+    private final double[] vel = new double[3], velB = new double[3];
+    private double horizon;
+
+    // Stats
+    private long checks, handoffs;
+
+    public SoiHandoff(OrbitalStateStore store) {
+        this.store = store;
+        int n = store.size();
+        soi = new double[n];
+        chainSpeed = new double[n];
+        gx = new double[n];
+        gy = new double[n];
+        gz = new double[n];
+        seen = new int[n];
+
+        boolean[] below = new boolean[n];
+        int trackedCount = 0;
+        for (int i = 0; i < n; i++) { // slot order: parents first
+            int p = store.getParentIndex(i);
+            boolean isTracked = store.getBody(i) instanceof OrbitingBody ob && ob.isSoiTracked();
+            if (p < 0) {
+                soi[i] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            chainSpeed[i] = chainSpeed[p] + store.getMaxOrbitalSpeed(i);
+            if (isTracked && !below[p]) trackedCount++; // satellites of tracked bodies stay put
+            below[i] = isTracked || below[p];
+            if (!below[i]) {
+                soi[i] = store.a[i] * java.lang.Math.pow(store.getMu(i) / store.getMu(p), 0.4);
+            }
+        }
+
+        tracked = new int[trackedCount];
+        trackedIndex = new int[n];
+        Arrays.fill(trackedIndex, -1);
+        satelliteStart = new int[n + 1];
+        int topCount = 0;
+        for (int i = 0, t = 0; i < n; i++) {
+            int p = store.getParentIndex(i);
+            if (p >= 0 && store.getBody(i) instanceof OrbitingBody ob && ob.isSoiTracked() && !below[p]) {
+                trackedIndex[i] = t;
+                tracked[t++] = i;
+            } else if (isAttractor(i)) {
+                if (store.getParentIndex(p) < 0) topCount++;
+                else satelliteStart[p + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) satelliteStart[i + 1] += satelliteStart[i];
+        satellites = new int[satelliteStart[n]];
+        topLevel = new int[topCount];
+        int[] fill = Arrays.copyOf(satelliteStart, n);
+        double fastest = 0.0;
+        for (int i = 0, t = 0; i < n; i++) {
+            if (trackedIndex[i] >= 0 || !isAttractor(i)) continue;
+            int p = store.getParentIndex(i);
+            if (store.getParentIndex(p) < 0) {
+                topLevel[t++] = i;
+                fastest = java.lang.Math.max(fastest, chainSpeed[i]);
+            } else {
+                satellites[fill[p]++] = i;
+            }
+        }
+        maxTopLevelSpeed = fastest;
+
+        // Cells: twice the 90th percentile sphere, so asteroids take one or a few
+        double[] radii = new double[topLevel.length];
+        for (int k = 0; k < radii.length; k++) radii[k] = soi[topLevel[k]];
+        Arrays.sort(radii);
+        cell = (radii.length > 0) ? java.lang.Math.max(1e-9, 2.0 * radii[(int) (0.9 * (radii.length - 1))]) : 1.0;
+
+        queue = new EventQueue(tracked.length);
+        lastCheck = new long[tracked.length];
+        reset();
+    }
+
+    private boolean isAttractor(int i) {
+        return soi[i] > 0.0 && soi[i] < Double.POSITIVE_INFINITY;
+    }
+
+    public OrbitalStateStore getStore() { return store; }
+
+    /** Sphere-of-influence radius of a slot (units): infinite for roots, 0 for non-attractors. */
+    public double getSoiRadius(int slot) { return soi[slot]; }
+
+    public int getTrackedCount() { return tracked.length; }
+    public long getChecks() { return checks; }
+    public long getHandoffs() { return handoffs; }
+
+    /** Every tracked body is checked at the next update, without bisecting back. */
+    private void reset() {
+        for (int k = 0; k < tracked.length; k++) {
+            lastCheck[k] = UNCHECKED;
+            queue.set(k, UNCHECKED);
+        }
+    }
+
+    /**
+     * Simulation side, after the store was propagated to simulationTime: runs every check that
+     * is due up to then, in time order, and re-places bodies that changed parent.
+     */
+    public void update(long simulationTime) {
+        advance(simulationTime, simulationTime);
+        placeMoved(simulationTime);
+    }
+
+    /**
+     * Runs the checks due up to t (<= now, the time the store was propagated to) without
+     * re-placing anyone (see placeMoved). Lets ManeuverScheduler interleave burns with handoffs
+     * in time order.
+     */
+    void advance(long t, long now) {
+        if (tracked.length == 0) return;
+        if (lastUpdate != UNCHECKED && now < lastUpdate) reset();
+        lastUpdate = now;
+        if (queue.peekTime() > t) return;
+
+        if (gridTime != now) buildGrid(now);
+        while (queue.peekTime() <= t) {
+            int k = queue.peekId();
+            long tk = queue.timeOf(k);
+            if (check(k, (tk == UNCHECKED) ? now : tk, now)) {
+                if (movedCount == moved.length) moved = Arrays.copyOf(moved, movedCount * 2);
+                moved[movedCount++] = tracked[k];
+            }
+        }
+    }
+
+    /** Re-places the bodies handed over since the last call at now. */
+    void placeMoved(long now) {
+        if (movedCount == 0) return;
+        store.repropagate(moved, movedCount, now);
+        movedCount = 0;
+    }
+
+    /**
+     * Slot's elements were changed at time t by someone else (a burn): its next check is due
+     * right there, and crossings are never searched for before it.
+     */
+    void reschedule(int slot, long t) {
+        int k = trackedIndex[slot];
+        if (k < 0) return;
+        lastCheck[k] = t;
+        queue.set(k, t);
+    }
+
+    /** One check of tracked body k at time t (<= now); true if it changed parent. */
+    private boolean check(int k, long t, long now) {
+        checks++;
+        int i = tracked[k];
+        int parent = store.getParentIndex(i);
+        SimulationTime st = SimulationTime.ofNanos(t);
+        position(i, st, pos);
+        int best = bestContaining(i, pos, st, t, now);
+
+        if (best == parent) {
+            long next = t + (long) java.lang.Math.min(9e18, java.lang.Math.max(1.0, horizon * 1e9));
+            lastCheck[k] = t;
+            queue.set(k, (next < t) ? Long.MAX_VALUE : next); // overflow: never again
+            return false;
+        }
+
+        // Crossed since the last check: find when, and hand over there
+        long tc = t;
+        if (lastCheck[k] != UNCHECKED && lastCheck[k] < t) {
+            tc = crossing(i, parent, best, lastCheck[k], t);
+            SimulationTime ct = SimulationTime.ofNanos(tc);
+            position(i, ct, pos);
+            int atCrossing = bestContaining(i, pos, ct, tc, now);
+            if (atCrossing != parent) best = atCrossing;
+        }
+        handoff(i, best, tc);
+        lastCheck[k] = tc;
+        queue.set(k, tc + 1); // settle nested spheres right away
+        return true;
+    }
+
+    /**
+     * First time in (lo, hi] the body is outside its parent's sphere or inside best's (the
+     * latter only when best is not one of the parent's own ancestors).
+     */
+    private long crossing(int i, int parent, int best, long lo, long hi) {
+        boolean entering = !isAncestor(best, parent);
+        long tol = java.lang.Math.max(1L, (long) (REFINE_TOLERANCE_SECONDS * 1e9));
+        while (hi - lo > tol) {
+            long mid = lo + (hi - lo) / 2;
+            SimulationTime st = SimulationTime.ofNanos(mid);
+            position(i, st, pos);
+            boolean changed = !inside(parent, pos, st) || (entering && inside(best, pos, st));
+            if (changed) hi = mid; else lo = mid;
+        }
+        return hi;
+    }
+
+    private boolean inside(int sphere, double[] p, SimulationTime st) {
+        return distance(sphere, p, st) < soi[sphere];
+    }
+
+    private boolean isAncestor(int a, int i) {
+        for (int c = i; c >= 0; c = store.getParentIndex(c)) if (c == a) return true;
+        return false;
+    }
+
+    /** Re-derives slot i's elements around newParent from its state at tNanos. */
+    private void handoff(int i, int newParent, long tNanos) {
+        SimulationTime st = SimulationTime.ofNanos(tNanos);
+        state(i, st, pos, vel);
+        state(newParent, st, posB, velB);
+        for (int c = 0; c < 3; c++) {
+            pos[c] -= posB[c];
+            vel[c] -= velB[c];
+        }
+        store.rebind(i, newParent, pos, vel, st);
+        handoffs++;
+    }
+
+    /**
+     * Deepest attractor whose sphere contains p at time t (a root if none), and in horizon the
+     * earliest time (seconds after t) any boundary around it could be reached.
+     */
+    private int bestContaining(int i, double[] p, SimulationTime st, long t, long now) {
+        // Up: the smallest sphere around the current parent that still contains p
+        int scope = store.getParentIndex(i);
+        double scopeDist = distance(scope, p, st);
+        while (scopeDist >= soi[scope]) {
+            scope = store.getParentIndex(scope);
+            scopeDist = distance(scope, p, st);
+        }
+
+        // Down: into a satellite sphere containing p, as deep as it goes
+        while (true) {
+            horizon = (soi[scope] < Double.POSITIVE_INFINITY)
+                    ? timeTo(soi[scope] - scopeDist, soi[scope], relativeSpeed(i, scope))
+                    : Double.POSITIVE_INFINITY;
+
+            int[] candidates;
+            int from, to;
+            if (store.getParentIndex(scope) >= 0) {
+                candidates = satellites;
+                from = satelliteStart[scope];
+                to = satelliteStart[scope + 1];
+            } else {
+                // Around a root: top-level spheres whose gridded box comes within cell + slack
+                double slack = maxTopLevelSpeed * java.lang.Math.abs(now - t) / 1e9;
+                from = 0;
+                if (slack > cell || head.length == 0) {
+                    candidates = topLevel;
+                    to = topLevel.length;
+                } else {
+                    candidates = query(p, cell + slack);
+                    to = candidateCount;
+                    // Anything not found is at least a cell away
+                    double v = SPEED_SAFETY * (store.getMaxOrbitalSpeed(i) + chainSpeed[store.getParentIndex(i)] + maxTopLevelSpeed);
+                    horizon = java.lang.Math.min(horizon, cell / v);
+                }
+            }
+
+            int inner = -1;
+            double innerDist = 0.0;
+            for (int q = from; q < to; q++) {
+                int c = candidates[q];
+                if (store.getParentIndex(c) != scope) continue; // top level of another root
+                double d = distance(c, p, st);
+                if (d < soi[c]) {
+                    if (inner < 0 || soi[c] < soi[inner]) {
+                        inner = c;
+                        innerDist = d;
+                    }
+                } else {
+                    horizon = java.lang.Math.min(horizon, timeTo(d - soi[c], soi[c], relativeSpeed(i, c)));
+                }
+            }
+            if (inner < 0) return scope;
+            scope = inner;
+            scopeDist = innerDist;
+        }
+    }
+
+    /** Time to close gap at speed v, but at least the time to cross BOUNDARY_TOLERANCE of radius. */
+    private static double timeTo(double gap, double radius, double v) {
+        return java.lang.Math.max(gap, BOUNDARY_TOLERANCE * radius) / v;
+    }
+
+    /**
+     * Bound on how fast tracked slot i and attractor c can approach each other: both speeds
+     * relative to their common ancestor, with SPEED_SAFETY.
+     */
+    private double relativeSpeed(int i, int c) {
+        int p = store.getParentIndex(i);
+        int a = store.commonAncestor(p, c);
+        double common = (a >= 0) ? chainSpeed[a] : 0.0;
+        return SPEED_SAFETY * (store.getMaxOrbitalSpeed(i) + chainSpeed[p] + chainSpeed[c] - 2.0 * common);
+    }
+
+    /** Distance from p to slot c at st (0 for roots, whose sphere is unbounded). */
+    private double distance(int c, double[] p, SimulationTime st) {
+        if (soi[c] == Double.POSITIVE_INFINITY) return 0.0;
+        position(c, st, posB);
+        double dx = p[0] - posB[0], dy = p[1] - posB[1], dz = p[2] - posB[2];
+        return java.lang.Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /** Places every top-level attractor at t and hashes the boxes of their spheres. */
+    private void buildGrid(long t) {
+        gridTime = t;
+        SimulationTime st = SimulationTime.ofNanos(t);
+        double inv = 1.0 / cell;
+
+        int[] largeList = new int[topLevel.length];
+        int largeCount = 0;
+        int entries = 0;
+        for (int c : topLevel) {
+            position(c, st, posB);
+            gx[c] = posB[0];
+            gy[c] = posB[1];
+            gz[c] = posB[2];
+            long span = (long) java.lang.Math.ceil(2.0 * soi[c] * inv) + 1;
+            if (span * span * span > MAX_CELLS_PER_SPHERE) largeList[largeCount++] = c;
+            else entries += (int) (span * span * span);
+        }
+        large = Arrays.copyOf(largeList, largeCount);
+
+        head = new int[Integer.highestOneBit(java.lang.Math.max(16, entries * 4)) << 1];
+        Arrays.fill(head, -1);
+        if (entrySlot.length < entries) {
+            entrySlot = new int[entries];
+            entryNext = new int[entries];
+        }
+        int mask = head.length - 1;
+        int e = 0;
+        for (int c : topLevel) {
+            double r = soi[c];
+            long span = (long) java.lang.Math.ceil(2.0 * r * inv) + 1;
+            if (span * span * span > MAX_CELLS_PER_SPHERE) continue;
+            long x0 = (long) java.lang.Math.floor((gx[c] - r) * inv), x1 = (long) java.lang.Math.floor((gx[c] + r) * inv);
+            long y0 = (long) java.lang.Math.floor((gy[c] - r) * inv), y1 = (long) java.lang.Math.floor((gy[c] + r) * inv);
+            long z0 = (long) java.lang.Math.floor((gz[c] - r) * inv), z1 = (long) java.lang.Math.floor((gz[c] + r) * inv);
+            for (long cx = x0; cx <= x1; cx++)
+                for (long cy = y0; cy <= y1; cy++)
+                    for (long cz = z0; cz <= z1; cz++) {
+                        int bucket = cellHash(cx, cy, cz) & mask;
+                        entrySlot[e] = c;
+                        entryNext[e] = head[bucket];
+                        head[bucket] = e++;
+                    }
+        }
+    }
+
+    private int[] candidateBuffer = new int[16];
+    private int candidateCount;
+
+    /** Top-level attractors whose gridded sphere box overlaps the cube of half-size h around p (deduplicated). */
+    private int[] query(double[] p, double h) {
+        double inv = 1.0 / cell;
+        int mask = head.length - 1;
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        candidateCount = 0;
+        for (int c : large) addCandidate(c);
+
+        long x0 = (long) java.lang.Math.floor((p[0] - h) * inv), x1 = (long) java.lang.Math.floor((p[0] + h) * inv);
+        long y0 = (long) java.lang.Math.floor((p[1] - h) * inv), y1 = (long) java.lang.Math.floor((p[1] + h) * inv);
+        long z0 = (long) java.lang.Math.floor((p[2] - h) * inv), z1 = (long) java.lang.Math.floor((p[2] + h) * inv);
+        for (long cx = x0; cx <= x1; cx++)
+            for (long cy = y0; cy <= y1; cy++)
+                for (long cz = z0; cz <= z1; cz++) {
+                    // Hash collisions only add candidates; the exact test sorts them out
+                    for (int e = head[cellHash(cx, cy, cz) & mask]; e >= 0; e = entryNext[e]) addCandidate(entrySlot[e]);
+                }
+        return candidateBuffer;
+    }
+
+    private void addCandidate(int c) {
+        if (seen[c] == stamp) return;
+        seen[c] = stamp;
+        if (candidateCount == candidateBuffer.length) candidateBuffer = Arrays.copyOf(candidateBuffer, candidateCount * 2);
+        candidateBuffer[candidateCount++] = c;
+    }
+
+    private static int cellHash(long cx, long cy, long cz) {
+        long h = cx * 73856093L ^ cy * 19349663L ^ cz * 83492791L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Simulation-frame position of slot i at t, summed along its parent chain. */
+    private void position(int i, SimulationTime t, double[] out) {
+        store.chainOffset(i, -1, t, ecc, off, out);
+    }
+
+    /** Simulation-frame position and velocity of slot i at t (roots are fixed). */
+    private void state(int i, SimulationTime t, double[] p, double[] v) {
+        p[0] = p[1] = p[2] = 0.0;
+        v[0] = v[1] = v[2] = 0.0;
+        int c = i;
+        for (int q = store.getParentIndex(c); q >= 0; c = q, q = store.getParentIndex(c)) {
+            store.stateAt(c, t, ecc, off, offV);
+            for (int k = 0; k < 3; k++) {
+                p[k] += off[k];
+                v[k] += offV[k];
+            }
+        }
+        p[0] += store.x[c];
+        p[1] += store.y[c];
+        p[2] += store.z[c];
+    }
+}
@@ -6,8 +6,9 @@ import java.util.HashMap;
  *
  * Owns:
  * - Star
- * - Lists of bodies (planets, moons, asteroids)
+ * - Lists of bodies (planets, moons, asteroids, spacecraft)
  * - Common lookups (planet by name)
+ * - The primitive-array orbital state store the engine propagates
  */
 public final class SolarSystem {
 
@@ -16,6 +17,10 @@ public final class SolarSystem {
     private final ArrayList<Planet> planets = new ArrayList<>();
     private final ArrayList<Moon> moons = new ArrayList<>();
     private final ArrayList<Asteroid> asteroids = new ArrayList<>();
+    private final ArrayList<Spacecraft> spacecraft = new ArrayList<>();
+
+    private OrbitalStateStore orbitStore;
+    private OrbitalStateStore retiredStore; // last store, until the next build takes over its render origin
 
     public SolarSystem(Star star) {
         this.star = star;
@@ -27,10 +32,35 @@ public final class SolarSystem {
     public ArrayList<Planet> getPlanets() { return planets; }
     public ArrayList<Moon> getMoons() { return moons; }
     public ArrayList<Asteroid> getAsteroids() { return asteroids; }
+    public ArrayList<Spacecraft> getSpacecraft() { return spacecraft; }
+
+    /**
+     * Store backing body positions. Rebuilt lazily when the body lists change (size or
+     * membership) or after {@link #invalidateOrbitStore()}.
+     */
+    public OrbitalStateStore getOrbitStore() {
+        if (orbitStore == null || !orbitStore.matches(star, planets, moons, asteroids, spacecraft)) {
+            OrbitalStateStore old = (orbitStore != null) ? orbitStore : retiredStore;
+            if (old != null) old.syncOrbits(); // build from the elements it rebound
+            orbitStore = OrbitalStateStore.build(star, planets, moons, asteroids, spacecraft);
+            // Keep publishing in the view's render frame (floating origin)
+            if (old != null) orbitStore.setRenderOrigin(old.getRenderOriginX(), old.getRenderOriginY(), old.getRenderOriginZ());
+            retiredStore = null;
+        }
+        return orbitStore;
+    }
+
+    /** Forces a store rebuild (call after replacing bodies or editing elements). */
+    public void invalidateOrbitStore() {
+        if (orbitStore != null) retiredStore = orbitStore;
+        orbitStore = null;
+    }
 
     public void clearAll() {
         planets.clear();
         moons.clear();
         asteroids.clear();
+        spacecraft.clear();
+        orbitStore = null;
     }
 }
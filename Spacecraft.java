@@ -0,0 +1,206 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A vessel on a Keplerian orbit that changes with a timeline of impulsive burns.
+ *
+ * Between burns it is an ordinary orbiting body (propagated by the store like any other);
+ * at a burn's time ManeuverScheduler adds its delta-v to the velocity relative to the current
+ * parent and re-derives the elements from the new state (OrbitalStateStore.rebind), which
+ * may leave the orbit open (e >= 1). Spacecraft are SOI-tracked by default, so escapes and
+ * captures hand them over to the next attractor (SoiHandoff).
+ *
+ * Burns are executed by the engine only (SimulationEngine), never by move(). The timeline may
+ * be edited from any thread; the scheduler is told which vessel changed, so nothing scans the
+ * fleet per frame. Burns already executed are not undone when the clock moves back.
+ */
+public class Spacecraft extends OrbitingBody {
+    private static final int ICON_RADIUS = 2;
+
+    /** Impulsive burn at a simulation time, delta-v (km/s) along the orbit's local axes. */
+    public static final class Maneuver {
+        public final long timeNanos;
+        public final double prograde; // along the velocity relative to the parent
+        public final double normal;   // along r × v (orbit normal)
+        public final double radial;   // prograde × normal (outward in the orbit plane)
+
+        public Maneuver(long timeNanos, double prograde, double normal, double radial) {
+            this.timeNanos = timeNanos;
+            this.prograde = prograde;
+            this.normal = normal;
+            this.radial = radial;
+        }
+
+        /** Parses "timeNanos prograde normal radial" (see {@link #save}). */
+        public static Maneuver parse(String line) {
+            String[] f = line.trim().split("\\s+");
+            return new Maneuver(Long.parseLong(f[0]),
+                    Double.parseDouble(f[1]), Double.parseDouble(f[2]), Double.parseDouble(f[3]));
+        }
+
+        public String save() {
+            return timeNanos + " " + prograde + " " + normal + " " + radial;
+        }
+
+        @Override
+        public String toString() {
+            return "Maneuver{t=" + timeNanos + "ns, dv=(" + prograde + ", " + normal + ", " + radial + ") km/s}";
+        }
+    }
+
+    private static final Comparator<Maneuver> BY_TIME = Comparator.comparingLong(m -> m.timeNanos);
+
+    // Pending burns, earliest first; guarded by this
+    private final PriorityQueue<Maneuver> pending = new PriorityQueue<>(BY_TIME);
+    private long burnsExecuted; // simulation side only
+
+    /**
+     * Parses the save format (same fields as an asteroid: x y z radius r g b a e i Ω ω M0
+     * periodDays name); a negative period marks an open orbit, with 2π over its mean motion.
+     */
+    public Spacecraft(String serialization, Body host) {
+        super(host);
+
+        String[] f = serialization.trim().split("\\s+");
+        this.x = Double.parseDouble(f[0]);
+        this.y = Double.parseDouble(f[1]);
+        this.z = Double.parseDouble(f[2]);
+
+        this.radius = Double.parseDouble(f[3]);
+        this.color = new Color(Integer.parseInt(f[4]), Integer.parseInt(f[5]), Integer.parseInt(f[6]));
+
+        this.a = Double.parseDouble(f[7]);
+        this.e = Double.parseDouble(f[8]);
+        this.inclRad       = java.lang.Math.toRadians(Double.parseDouble(f[9]));
+        this.omegaBigRad   = java.lang.Math.toRadians(Double.parseDouble(f[10]));
+        this.omegaSmallRad = java.lang.Math.toRadians(Double.parseDouble(f[11]));
+        this.M0Rad         = java.lang.Math.toRadians(Double.parseDouble(f[12]));
+        double periodDays = Double.parseDouble(f[13]);
+
+        this.name = f[14];
+        this.type = "spacecraft";
+        this.soiTracked = true;
+
+        double timeScale = java.lang.Math.abs(periodDays) * 86400.0;
+        this.meanMotion    = (2.0 * java.lang.Math.PI) / timeScale;
+        this.periodSeconds = (periodDays < 0.0) ? Double.POSITIVE_INFINITY : timeScale;
+
+        updateOrbitBasis();
+    }
+
+    /**
+     * A vessel at the given state relative to host (engine frame, units and units/s) at time t;
+     * mu is the host's gravitational parameter (OrbitalStateStore.getMu).
+     */
+    public Spacecraft(String name, Body host, double radius, Color color,
+                      double mu, double[] pos, double[] vel, SimulationTime t) {
+        super(host);
+        this.name = name;
+        this.type = "spacecraft";
+        this.radius = radius;
+        this.color = color;
+        this.soiTracked = true;
+        setStateVector(host, mu, pos, vel, t);
+        this.x = host.getWorldX() + pos[0];
+        this.y = host.getWorldY() + pos[1];
+        this.z = host.getWorldZ() + pos[2];
+    }
+
+    public String save() {
+        double timeScaleDays = (2.0 * java.lang.Math.PI / meanMotion) / 86400.0;
+        double periodDays = (periodSeconds < Double.POSITIVE_INFINITY) ? periodSeconds / 86400.0 : -timeScaleDays;
+
+        return getWorldX() + " " + getWorldY() + " " + getWorldZ() + " " +
+                radius + " " +
+                color.getRed() + " " + color.getGreen() + " " + color.getBlue() + " " +
+                a + " " + e + " " +
+                java.lang.Math.toDegrees(inclRad) + " " +
+                java.lang.Math.toDegrees(omegaBigRad) + " " +
+                java.lang.Math.toDegrees(omegaSmallRad) + " " +
+                java.lang.Math.toDegrees(M0Rad) + " " +
+                periodDays + " " +
+                name;
+    }
+
+    /** Name of the body this vessel currently orbits. */
+    public String getParentName() {
+        return parent.getName();
+    }
+
+    /** Adds a burn to the timeline; one in the past executes at the next engine step. */
+    public void schedule(Maneuver m) {
+        synchronized (this) {
+            pending.add(m);
+        }
+        timelineChanged();
+    }
+
+    /** Adds many burns at once (one scheduler notification). */
+    public void scheduleAll(Iterable<Maneuver> burns) {
+        synchronized (this) {
+            for (Maneuver m : burns) pending.add(m);
+        }
+        timelineChanged();
+    }
+
+    /** Removes a pending burn; true if it was still pending. */
+    public boolean cancel(Maneuver m) {
+        boolean removed;
+        synchronized (this) {
+            removed = pending.remove(m);
+        }
+        if (removed) timelineChanged();
+        return removed;
+    }
+
+    public void cancelAll() {
+        synchronized (this) {
+            pending.clear();
+        }
+        timelineChanged();
+    }
+
+    /** Pending burns, earliest first (a copy). */
+    public synchronized Maneuver[] getPendingManeuvers() {
+        Maneuver[] out = pending.toArray(new Maneuver[0]);
+        Arrays.sort(out, BY_TIME);
+        return out;
+    }
+
+    public synchronized int getPendingCount() { return pending.size(); }
+
+    public long getBurnsExecuted() { return burnsExecuted; }
+
+    /** Time of the earliest pending burn, Long.MAX_VALUE if none. */
+    synchronized long nextManeuverTime() {
+        Maneuver m = pending.peek();
+        return (m != null) ? m.timeNanos : Long.MAX_VALUE;
+    }
+
+    /** Removes and returns the earliest burn if it is due at t, else null. */
+    synchronized Maneuver pollDue(long t) {
+        Maneuver m = pending.peek();
+        if (m == null || m.timeNanos > t) return null;
+        burnsExecuted++;
+        return pending.poll();
+    }
+
+    private void timelineChanged() {
+        OrbitalStateStore s = this.store;
+        ManeuverScheduler ms = (s != null) ? s.getManeuverScheduler() : null;
+        if (ms != null) ms.timelineChanged(storeIndex);
+    }
+
+    /** Burns can leave the orbit highly eccentric. */
+    @Override
+    protected KeplerSolver keplerSolver() {
+        return KeplerSolver.HALLEY;
+    }
+
+    @Override
+    protected int getIconRadiusPx() {
+        return ICON_RADIUS;
+    }
+}
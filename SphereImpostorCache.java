@@ -0,0 +1,228 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-shaded sphere disks (impostors) for small and mid-sized bodies, shared by every body.
+ *
+ * Seen along its line of sight, a sphere's disk depends only on how big it is on screen (pixel
+ * radius, and angular radius for the perspective at the limb) and on where the star is relative
+ * to that line of sight. A sprite stores the Lambert term (0..255) of every pixel of the disk
+ * for one quantized set of those, with a one-texel apron past the silhouette that continues the
+ * limb, so blitting can sample it bilinearly; colour and solar falloff are applied through a
+ * palette while blitting, so one sprite serves every body of that size lit from that angle. Sprites are kept
+ * least recently used first and dropped beyond MAX_BYTES.
+ *
+ * Lookups run where the body is drawn; a sprite never changes once cached, so raster workers
+ * (TiledFrameBuffer) read it without locking, and eviction only drops the cache's reference.
+ */
+public final class SphereImpostorCache {
+
+    // --- Tunables ---
+    public static boolean ENABLED = true;
+    /**
+     * Disk radii (pixels) served from sprites; the rest are shaded per pixel. Below the minimum a
+     * texel's curvature puts over 0.3% of pixels more than ShadedSphere.LERP_MAX_ERROR off; above
+     * the maximum ShadedSphere's interpolating kernel is as fast as the blit.
+     */
+    public static int MIN_RADIUS_PX = 48;
+    public static int MAX_RADIUS_PX = 96;
+    /** Sprite radius steps per pixel. */
+    public static int RADIUS_STEPS = 4;
+    /** Light direction step, as how far (pixels) it may move the terminator at the limb. */
+    public static double LIGHT_STEP_PX = 0.25;
+    /** Coarsest light direction step (radians), for the smallest disks. */
+    public static double MAX_LIGHT_STEP = java.lang.Math.PI / 48.0;
+    /** Memory cap over all sprites, in bytes. */
+    public static long MAX_BYTES = 16L << 20;
+
+    static final SphereImpostorCache SHARED = new SphereImpostorCache();
+
+    /** One pre-shaded disk: Lambert term of texel (dx, dy), both -r..r, at (dy + r) * (2r + 1) + dx + r. */
+    static final class Sprite {
+        final int r;
+        final int[] halfWidth;   // per row, -1 when the row misses the sphere
+        final byte[] lambert;
+
+        Sprite(int r) {
+            this.r = r;
+            this.halfWidth = new int[2 * r + 1];
+            this.lambert = new byte[(2 * r + 1) * (2 * r + 1)];
+        }
+
+        int bytes() { return lambert.length + 4 * halfWidth.length; }
+    }
+
+    private final LinkedHashMap<Long, Sprite> sprites = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private long hits, misses;
+
+    public synchronized long getBytes() { return bytes; }
+    public synchronized int getSpriteCount() { return sprites.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized void clear() {
+        sprites.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Points s (fields set, camera outside it, in front) at its sprite and sets the screen to
+     * sprite mapping; false, leaving s to be shaded, when its radius is out of range or the
+     * cache is off.
+     */
+    boolean attach(ShadedSphere s) {
+        s.impostor = null;
+        if (!ENABLED || s.rPix < MIN_RADIUS_PX || s.rPix > MAX_RADIUS_PX || s.centerZ >= 0.0) return false;
+
+        // Sight frame: z from the sphere toward the camera, x along the screen's x, y up
+        double dist = java.lang.Math.sqrt(s.centerX * s.centerX + s.centerY * s.centerY + s.centerZ * s.centerZ);
+        if (dist <= s.radius) return false;
+        double zx = -s.centerX / dist, zy = -s.centerY / dist, zz = -s.centerZ / dist;
+        double xx = 1.0 - zx * zx, xy = -zx * zy, xz = -zx * zz;
+        double xLen = java.lang.Math.sqrt(xx * xx + xy * xy + xz * xz);
+        if (xLen < 1e-9) return false; // looking along the screen's x: no stable frame
+        xx /= xLen; xy /= xLen; xz /= xLen;
+        double yx = zy * xz - zz * xy, yy = zz * xx - zx * xz, yz = zx * xy - zy * xx;
+
+        double lx = s.lightX * xx + s.lightY * xy + s.lightZ * xz;
+        double ly = s.lightX * yx + s.lightY * yy + s.lightZ * yz;
+        double lz = s.lightX * zx + s.lightY * zy + s.lightZ * zz;
+
+        // Angular radius, and the silhouette radius in pixels (focal length along the sight line)
+        double beta = java.lang.Math.asin(s.radius / dist);
+        double focal = 0.5 * s.viewH * s.near / s.nearHalfH * (dist / -s.centerZ);
+        int steps = java.lang.Math.max(1, RADIUS_STEPS);
+        int nRadius = (int) java.lang.Math.round(focal * java.lang.Math.tan(beta) * steps);
+        if (nRadius <= 0 || nRadius > 0xFFFF) return false;
+        double radiusQ = (double) nRadius / steps;
+
+        // Quantize beta and the light direction, the light on rings of constant polar angle with
+        // cells about step wide. step follows from nRadius, so the key pins the sprite down
+        double step = java.lang.Math.min(MAX_LIGHT_STEP, LIGHT_STEP_PX / radiusQ);
+        int nBeta = (int) java.lang.Math.round(beta / step);
+        double theta = java.lang.Math.acos(java.lang.Math.max(-1.0, java.lang.Math.min(1.0, lz)));
+        int nTheta = (int) java.lang.Math.round(theta / step);
+        double thetaQ = java.lang.Math.min(java.lang.Math.PI, nTheta * step);
+        int ring = java.lang.Math.max(1, (int) java.lang.Math.ceil(2.0 * java.lang.Math.PI * java.lang.Math.sin(thetaQ) / step));
+        double phi = java.lang.Math.atan2(ly, lx);
+        int nPhi = (int) java.lang.Math.round(phi / (2.0 * java.lang.Math.PI) * ring);
+        nPhi = ((nPhi % ring) + ring) % ring;
+        if (nBeta > 0xFFFF || nTheta > 0xFFFF || ring > 0xFFFF) return false;
+        double betaQ = nBeta * step;
+
+        // Screen to sprite: the ray through pixel (cx + dx, cy + dy) is p0 + dx kx X - dy ky Y
+        // (camera axes X, Y); in the sight frame it lands on the sprite's image plane at
+        // focalQ (r.x, -r.y) / (-r.z), sprite rows running down like the screen's. focalQ puts
+        // the true silhouette on the sprite's, whatever betaQ the sprite was traced with
+        double focalQ = radiusQ / java.lang.Math.tan(beta);
+        double kx = 2.0 * s.nearHalfW / s.viewW, ky = 2.0 * s.nearHalfH / s.viewH;
+        double p0x = s.cx * kx - s.nearHalfW, p0y = (1.0 - (2.0 * s.cy) / s.viewH) * s.nearHalfH, p0z = -s.near;
+        s.mapU0 = focalQ * (p0x * xx + p0y * xy + p0z * xz);
+        s.mapUX = focalQ * kx * xx;
+        s.mapUY = -focalQ * ky * xy;
+        s.mapV0 = -focalQ * (p0x * yx + p0y * yy + p0z * yz);
+        s.mapVX = -focalQ * kx * yx;
+        s.mapVY = focalQ * ky * yy;
+        s.mapW0 = -(p0x * zx + p0y * zy + p0z * zz);
+        s.mapWX = -kx * zx;
+        s.mapWY = ky * zy;
+
+        long key = ((long) nRadius << 48) | ((long) nBeta << 32) | ((long) nTheta << 16) | nPhi;
+        synchronized (this) {
+            Sprite sprite = sprites.get(key);
+            if (sprite != null) {
+                hits++;
+                s.impostor = sprite;
+                return true;
+            }
+            misses++;
+        }
+
+        double phiQ = nPhi * (2.0 * java.lang.Math.PI) / ring;
+        double sinT = java.lang.Math.sin(thetaQ);
+        Sprite sprite = render(radiusQ, betaQ,
+                sinT * java.lang.Math.cos(phiQ), sinT * java.lang.Math.sin(phiQ), java.lang.Math.cos(thetaQ));
+        put(key, sprite);
+        s.impostor = sprite;
+        return true;
+    }
+
+    /**
+     * Traces a unit sphere of angular radius beta whose silhouette is radiusPx across, lit from
+     * (lx, ly, lz) in the sight frame: the camera sits at the origin looking down -z, the center
+     * at distance 1 / sin(beta), and pixel (dx, dy) off the center is the ray (dx, -dy, -focal).
+     * Beta 0 (quantized away) is the orthographic limit.
+     */
+    private static Sprite render(double radiusPx, double beta, double lx, double ly, double lz) {
+        Sprite sprite = new Sprite((int) java.lang.Math.ceil(radiusPx) + 1);
+        int r = sprite.r;
+        int size = 2 * r + 1;
+        boolean ortho = beta <= 0.0;
+        double focal = ortho ? 0.0 : radiusPx / java.lang.Math.tan(beta);
+        double d = ortho ? 0.0 : 1.0 / java.lang.Math.sin(beta);
+        double c = d * d - 1.0;
+        double b = focal * d;   // ray . center, the same for every pixel
+        double inv = 1.0 / radiusPx;
+
+        for (int dy = -r; dy <= r; dy++) {
+            int row = (dy + r) * size + r;
+            int half = -1;
+            for (int dx = 0; dx <= r; dx++) {
+                // Normal = hit - center, (+-nx, ny, nz) for dx and -dx. Past the silhouette, the
+                // limb's normal nearest the ray, so bilinear taps there continue the edge
+                double nx, ny, nz;
+                boolean hit;
+                if (ortho) {
+                    nx = dx * inv;
+                    ny = -dy * inv;
+                    double zSq = 1.0 - nx * nx - ny * ny;
+                    hit = zSq > 0.0;
+                    nz = hit ? java.lang.Math.sqrt(zSq) : 0.0;
+                } else {
+                    double a = dx * dx + dy * dy + focal * focal;
+                    double disc = b * b - a * c;
+                    hit = disc > 0.0;
+                    double t = hit ? c / (b + java.lang.Math.sqrt(disc)) : b / a; // else closest approach
+                    nx = dx * t;
+                    ny = -dy * t;
+                    nz = d - focal * t;
+                }
+                if (!hit) {
+                    double len = java.lang.Math.sqrt(nx * nx + ny * ny + nz * nz);
+                    nx /= len;
+                    ny /= len;
+                    nz /= len;
+                } else {
+                    half = dx;
+                }
+                double left = -nx * lx + ny * ly + nz * lz;
+                double right = nx * lx + ny * ly + nz * lz;
+                sprite.lambert[row - dx] = lambertByte(left);
+                sprite.lambert[row + dx] = lambertByte(right);
+            }
+            sprite.halfWidth[dy + r] = half;
+        }
+        return sprite;
+    }
+
+    private static byte lambertByte(double lambert) {
+        if (lambert <= 0.0) return 0;
+        return (byte) (int) (java.lang.Math.min(1.0, lambert) * 255.0 + 0.5);
+    }
+
+    private synchronized void put(long key, Sprite sprite) {
+        if (sprite.bytes() > MAX_BYTES) return;
+        Sprite old = sprites.put(key, sprite);
+        bytes += sprite.bytes() - (old != null ? old.bytes() : 0);
+
+        Iterator<Map.Entry<Long, Sprite>> it = sprites.entrySet().iterator();
+        while (bytes > MAX_BYTES && it.hasNext()) {
+            Sprite eldest = it.next().getValue();
+            if (eldest == sprite) continue;
+            bytes -= eldest.bytes();
+            it.remove();
+        }
+    }
+}
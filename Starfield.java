@@ -7,6 +7,7 @@ public final class Starfield {
     private final float[] dirX, dirY, dirZ;
     private final float[] mag;
     private final Color[] color;
+    private final int[] rgb;   // color[i] packed, for FrameBuffer
     public final int count;
 
     public float minPointRadiusPx = 0.5f;
@@ -48,6 +49,7 @@ public final class Starfield {
         this.dirZ = new float[count];
         this.mag  = new float[count];
         this.color = new Color[count];
+        this.rgb = new int[count];
     }
 
     public static Starfield loadFromFile(java.nio.file.Path path) throws IOException {
@@ -94,6 +96,7 @@ public final class Starfield {
                 sf.mag[i]  = Float.intBitsToFloat(Integer.reverseBytes(dis.readInt()));
                 int argb = Integer.reverseBytes(dis.readInt());
                 sf.color[i] = new java.awt.Color(argb, true);
+                sf.rgb[i] = argb & 0xFFFFFF;
             }
 
             return sf;
@@ -133,7 +136,18 @@ public final class Starfield {
     public void draw(Graphics2D g2, Frustum frustum, int viewW, int viewH) {
         Composite oldComp = g2.getComposite();
         Color oldColor = g2.getColor();
+        render(g2, null, frustum, viewW, viewH);
+        g2.setComposite(oldComp);
+        g2.setColor(oldColor);
+    }
+
+    /** Same stars written straight into the frame buffer, added to what is there (RasterRenderer). */
+    public void draw(FrameBuffer fb, Frustum frustum, int viewW, int viewH) {
+        render(null, fb, frustum, viewW, viewH);
+    }
 
+    /** Draws through fb when it is not null, else through g2. */
+    private void render(Graphics2D g2, FrameBuffer fb, Frustum frustum, int viewW, int viewH) {
         int drawn = 0;
         float minM =  1e9f, maxM = -1e9f;
         float minA =  1e9f, maxA = -1e9f;
@@ -207,6 +221,23 @@ public final class Starfield {
             if (alphaIdx < 0) alphaIdx = 0;
             if (alphaIdx > 255) alphaIdx = 255;
 
+            int x = (int) Math.round(screen.x);
+            int y = (int) Math.round(screen.y);
+
+            drawn++;
+            if (m < minM) minM = m;
+            if (m > maxM) maxM = m;
+            if (a < minA) minA = a;
+            if (a > maxA) maxA = a;
+            sumA += a;
+
+            // Points of light: on the black sky additive and SRC_OVER agree, where they overlap it adds up
+            if (fb != null) {
+                int ca = color[i].getAlpha();
+                fb.add(x, y, rgb[i], (ca == 255) ? alphaIdx : FrameBuffer.div255(alphaIdx * ca));
+                continue;
+            }
+
             if (alphaIdx != lastAlphaIdx) {
                 g2.setComposite(ALPHA[alphaIdx]);
                 lastAlphaIdx = alphaIdx;
@@ -218,16 +249,6 @@ public final class Starfield {
                 lastC = c;
             }
 
-            int x = (int) Math.round(screen.x);
-            int y = (int) Math.round(screen.y);
-
-            drawn++;
-            if (m < minM) minM = m;
-            if (m > maxM) maxM = m;
-            if (a < minA) minA = a;
-            if (a > maxA) maxA = a;
-            sumA += a;
-
             g2.fillRect(x, y, 1, 1);
         }
 
@@ -242,8 +263,5 @@ public final class Starfield {
                 lastStatsNs = now;
             }
         }
-
-        g2.setComposite(oldComp);
-        g2.setColor(oldColor);
     }
 }
@@ -1,6 +1,9 @@
 import java.io.PrintWriter;
 import java.util.Scanner;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.ArrayDeque;
 import java.awt.Color;
 
 /**
@@ -58,14 +61,23 @@ public final class SystemSerializer {
         // --- Moons ---
         out.println(space.getMoons().size());
         for (Moon m : space.getMoons()) {
-            // Append host planet name as LAST TOKEN (current format).
-            out.println(m.save() + " " + m.getPlanetName());
+            // Append host body name as LAST TOKEN (current format).
+            out.println(m.save() + " " + m.getParentName());
         }
 
         // --- Asteroids ---
         out.println(space.getAsteroids().size());
         for (Asteroid a : space.getAsteroids()) out.println(a.save());
 
+        // --- Spacecraft (optional section) ---
+        // Header: save() hostName maneuverCount, then one "timeNanos prograde normal radial" line per burn
+        out.println(space.getSpacecraft().size());
+        for (Spacecraft c : space.getSpacecraft()) {
+            Spacecraft.Maneuver[] burns = c.getPendingManeuvers();
+            out.println(c.save() + " " + c.getParentName() + " " + burns.length);
+            for (Spacecraft.Maneuver m : burns) out.println(m.save());
+        }
+
         out.close();
     }
 
@@ -73,6 +85,7 @@ public final class SystemSerializer {
         space.getPlanets().clear();
         space.getMoons().clear();
         space.getAsteroids().clear();
+        space.getSpacecraft().clear();
 
         String line;
 
@@ -159,41 +172,141 @@ public final class SystemSerializer {
         if (line == null) return;
         int numMoons = Integer.parseInt(line);
 
+        // Hosts may be planets, other moons (moon-of-moon) or asteroids (binary asteroids),
+        // so moons are attached once every candidate host has been loaded.
+        ArrayList<String> moonLines = new ArrayList<>();
         for (int i = 0; i < numMoons; i++) {
             String mLine = nextDataLine(load);
-            if (mLine == null) return;
-
-            String planetName = mLine.substring(mLine.lastIndexOf(" ") + 1);
-
-            Planet p = space.getPlanets().isEmpty() ? null : space.getPlanets().get(0);
-            for (int j = 1; j < space.getPlanets().size(); j++) {
-                if (space.getPlanets().get(j).getName().equals(planetName)) {
-                    p = space.getPlanets().get(j);
-                }
-            }
-            if (p == null) return; // no planets to attach to
-
-            Moon m = new Moon(mLine.substring(0, mLine.lastIndexOf(" ")), p);
-            space.getMoons().add(m);
+            if (mLine == null) break;
+            moonLines.add(mLine);
         }
 
         // --- asteroids ---
-        line = nextDataLine(load);
-        if (line == null) return;
-        int numAsteroids = Integer.parseInt(line);
+        line = (moonLines.size() == numMoons) ? nextDataLine(load) : null;
+        int numAsteroids = (line == null) ? 0 : Integer.parseInt(line);
 
         for (int i = 0; i < numAsteroids; i++) {
             String aLine = nextDataLine(load);
-            if (aLine == null) return;
+            if (aLine == null) break;
 
             Asteroid a = new Asteroid(aLine, space.getStar());
             space.getAsteroids().add(a);
         }
 
+        attachMoons(space, moonLines);
+
+        // --- spacecraft (absent in older saves) ---
+        line = nextDataLine(load);
+        int numSpacecraft = (line == null) ? 0 : Integer.parseInt(line);
+        if (numSpacecraft > 0) loadSpacecraft(space, load, numSpacecraft);
+
         load.close();
+        space.getModel().invalidateOrbitStore();
         space.resetTimingAfterLoad();
     }
 
+    // Moon lines carry the host name as their LAST TOKEN, after the moon's own name.
+    // Lookup order: planets, then moons (any line of the file, attached once its host is), then
+    // asteroids; unknown hosts, and moons left waiting on a cycle, fall back to the first planet
+    // (as the loader always has).
+    private static void attachMoons(SimulationView space, ArrayList<String> moonLines) {
+        HashMap<String, OrbitingBody> planetByName = new HashMap<>();
+        for (Planet p : space.getPlanets()) planetByName.put(p.getName(), p);
+        HashMap<String, OrbitingBody> asteroidByName = new HashMap<>();
+        for (Asteroid a : space.getAsteroids()) asteroidByName.put(a.getName(), a);
+
+        HashSet<String> moonNames = new HashSet<>();
+        for (String mLine : moonLines) moonNames.add(moonName(mLine));
+
+        // Lines whose host is a moon not attached yet, by host name
+        HashMap<String, ArrayList<String>> waiting = new HashMap<>();
+        HashMap<String, OrbitingBody> moonByName = new HashMap<>();
+        for (String mLine : moonLines) {
+            String hostName = mLine.substring(mLine.lastIndexOf(" ") + 1);
+            OrbitingBody host = planetByName.get(hostName);
+            if (host == null && moonNames.contains(hostName)) {
+                host = moonByName.get(hostName);
+                if (host == null) {
+                    waiting.computeIfAbsent(hostName, k -> new ArrayList<>()).add(mLine);
+                    continue;
+                }
+            }
+            if (host == null) host = asteroidByName.get(hostName);
+            attachMoon(space, mLine, host, moonByName, waiting);
+        }
+
+        // Whatever still waits orbits a cycle of moons
+        while (!waiting.isEmpty()) {
+            ArrayList<String> stuck = waiting.remove(waiting.keySet().iterator().next());
+            for (String mLine : stuck) attachMoon(space, mLine, null, moonByName, waiting);
+        }
+    }
+
+    // Attaches one moon line (null host: the first planet), then every line waiting on it
+    private static void attachMoon(SimulationView space, String line, OrbitingBody host,
+                                   HashMap<String, OrbitingBody> moonByName,
+                                   HashMap<String, ArrayList<String>> waiting) {
+        ArrayDeque<String> lines = new ArrayDeque<>();
+        ArrayDeque<OrbitingBody> hosts = new ArrayDeque<>();
+        lines.push(line);
+        hosts.push(host != null ? host : firstPlanet(space));
+        while (!lines.isEmpty()) {
+            String mLine = lines.pop();
+            OrbitingBody h = hosts.pop();
+            if (h == null) continue; // no planets to attach to
+
+            Moon m = new Moon(mLine.substring(0, mLine.lastIndexOf(" ")), h);
+            space.getMoons().add(m);
+
+            // The first moon of a name is the host for that name; its satellites can go now
+            if (moonByName.putIfAbsent(m.getName(), m) != null) continue;
+            ArrayList<String> ready = waiting.remove(m.getName());
+            if (ready == null) continue;
+            for (int i = ready.size() - 1; i >= 0; i--) { // popped in file order
+                lines.push(ready.get(i));
+                hosts.push(m);
+            }
+        }
+    }
+
+    private static OrbitingBody firstPlanet(SimulationView space) {
+        return space.getPlanets().isEmpty() ? null : space.getPlanets().get(0);
+    }
+
+    // The moon's own name: the token before the host name
+    private static String moonName(String mLine) {
+        String rest = mLine.substring(0, mLine.lastIndexOf(" ")).trim();
+        return rest.substring(rest.lastIndexOf(" ") + 1);
+    }
+
+    // Spacecraft header lines end with "hostName maneuverCount"; unknown hosts fall back to the star.
+    private static void loadSpacecraft(SimulationView space, Scanner load, int count) {
+        HashMap<String, Body> hostByName = new HashMap<>();
+        for (Asteroid a : space.getAsteroids()) hostByName.put(a.getName(), a);
+        for (Moon m : space.getMoons()) hostByName.put(m.getName(), m);
+        for (Planet p : space.getPlanets()) hostByName.put(p.getName(), p);
+
+        ArrayList<Spacecraft.Maneuver> burns = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String cLine = nextDataLine(load);
+            if (cLine == null) return;
+
+            String[] f = cLine.split("\\s+");
+            int burnCount = Integer.parseInt(f[f.length - 1]);
+            Body host = hostByName.getOrDefault(f[f.length - 2], space.getStar());
+            Spacecraft c = new Spacecraft(String.join(" ", java.util.Arrays.copyOf(f, f.length - 2)), host);
+
+            burns.clear();
+            for (int k = 0; k < burnCount; k++) {
+                String bLine = nextDataLine(load);
+                if (bLine == null) break;
+                burns.add(Spacecraft.Maneuver.parse(bLine));
+            }
+            c.scheduleAll(burns);
+            space.getSpacecraft().add(c);
+        }
+    }
+
     // Reads the next meaningful line:
     // - skips blank lines
     // - skips comment lines starting with '#'
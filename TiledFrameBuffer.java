@@ -0,0 +1,429 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A FrameBuffer that records writes and rasterizes them per screen tile, tiles in parallel.
+ *
+ * Drawing code runs as before (projection, shading decisions, culling on the calling thread),
+ * but every write (point, span, line, disk, shaded sphere) goes into a command stream and is
+ * binned into the tiles its bounds touch (a line: the tiles it crosses, each tile's replay
+ * starting its walk where the line enters); a sphere is shaded per tile, so its ray-sphere and
+ * lighting work is spread over the workers too. {@link #flush} then replays each tile's
+ * commands, in recording order, through a FrameBuffer clipped to that tile, tiles spread over a
+ * ForkJoinPool. Tiles are disjoint, so workers write straight into the back buffer with no
+ * locking and no separate composite step, and the painter's order within each tile is kept.
+ * {@link #clip} views record into the same stream, their commands carrying their clip.
+ *
+ * Graphics2D drawing handed to {@link #afterFlush} (labels) runs after the pixels are down,
+ * on the flushing thread, so it ends up on top of every body rather than in depth order.
+ *
+ * Only the single-worker cost has been measured so far (recording plus replay); the speedup
+ * over FrameBuffer with several workers has not, so TILE_SIZE and TILE_GRAIN are untuned.
+ */
+public final class TiledFrameBuffer extends FrameBuffer {
+
+    // --- Tunables ---
+    /** Tile edge in pixels, rounded down to a power of two. */
+    public static int TILE_SIZE = 64;
+    /** Smallest run of tiles handed to one fork-join task. */
+    public static int TILE_GRAIN = 4;
+
+    // Opcodes; each command is the opcode followed by its arguments
+    private static final int CLEAR = 0;      // rgb
+    private static final int SET = 1;        // x y rgb
+    private static final int BLEND = 2;      // x y rgb alpha
+    private static final int ADD = 3;        // x y rgb alpha
+    private static final int SPAN = 4;       // x0 x1 y rgb
+    private static final int LINE = 5;       // x0 y0 x1 y1 rgb alpha
+    private static final int FILL_OVAL = 6;  // x y d rgb alpha
+    private static final int DRAW_OVAL = 7;  // x y d rgb alpha
+    private static final int SPHERE = 8;     // index into spheres
+    private static final int CLIP = 9;       // x0 y0 x1 y1, then the command it clips
+    private static final int CLIP_HEADER = 5;
+
+    private final ForkJoinPool pool;
+
+    private final int tileShift;
+    private final int tilesX, tilesY;
+    private final FrameBuffer[] tileViews;   // the image, clipped to each tile
+
+    private int[] cmd = new int[1 << 16];
+    private int cmdLen;
+    private int commands;
+
+    private final int[][] tileList;          // offsets into cmd, per tile, in recording order
+    private final int[] tileCount;
+
+    private final ArrayList<ShadedSphere> spheres = new ArrayList<>();
+    private final int[] lineSeg = new int[4];  // line(): the segment cut to the image
+    private final ArrayList<Runnable> overlays = new ArrayList<>();
+
+    // Clip of the writes being recorded: the whole image, or a clip() view's while it forwards
+    private int recX0, recY0, recX1, recY1;
+    private boolean recClipped;
+
+    /** Records writes to image (TYPE_INT_RGB/ARGB), rasterized on pool at flush. */
+    public TiledFrameBuffer(BufferedImage image, ForkJoinPool pool) {
+        super(image);
+        this.pool = pool;
+        this.tileShift = 31 - Integer.numberOfLeadingZeros(java.lang.Math.max(8, TILE_SIZE));
+        int size = 1 << tileShift;
+        this.tilesX = (width + size - 1) >> tileShift;
+        this.tilesY = (height + size - 1) >> tileShift;
+
+        FrameBuffer whole = new FrameBuffer(pixels, width, height);
+        int tiles = tilesX * tilesY;
+        this.tileViews = new FrameBuffer[tiles];
+        this.tileList = new int[tiles][];
+        this.tileCount = new int[tiles];
+        this.recX1 = width;
+        this.recY1 = height;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int t = ty * tilesX + tx;
+                tileViews[t] = whole.clip(tx << tileShift, ty << tileShift, (tx + 1) << tileShift, (ty + 1) << tileShift);
+                tileList[t] = new int[64];
+            }
+        }
+    }
+
+    public int getTileCount() { return tileViews.length; }
+
+    /** Commands recorded since the last flush. */
+    public int getPendingCommands() { return commands; }
+
+    @Override
+    public boolean isDeferred() { return true; }
+
+    /** A view whose writes are recorded here, limited to [x0, x1) x [y0, y1) when replayed. */
+    @Override
+    public FrameBuffer clip(int x0, int y0, int x1, int y1) {
+        return new ClipView(this, x0, y0, x1, y1);
+    }
+
+    @Override
+    public void afterFlush(Runnable draw) {
+        overlays.add(draw);
+    }
+
+    // ---- Recording ----
+
+    @Override
+    public void clear(int rgb) {
+        if (recClipped) {
+            int at = begin(CLEAR, 1);
+            cmd[at + 1] = rgb;
+            binRect(at, recX0, recY0, recX1 - 1, recY1 - 1);
+            return;
+        }
+        // Everything recorded so far is covered anyway
+        cmdLen = 0;
+        commands = 0;
+        Arrays.fill(tileCount, 0);
+        spheres.clear();
+        int at = begin(CLEAR, 1);
+        cmd[at + 1] = rgb;
+        binRect(at, 0, 0, width - 1, height - 1);
+    }
+
+    @Override
+    public void set(int x, int y, int rgb) {
+        if (!recording(x, y)) return;
+        int at = begin(SET, 3);
+        cmd[at + 1] = x; cmd[at + 2] = y; cmd[at + 3] = rgb;
+        binPoint(at, x, y);
+    }
+
+    @Override
+    public void blend(int x, int y, int rgb, int alpha) {
+        if (alpha <= 0 || !recording(x, y)) return;
+        point(BLEND, x, y, rgb, alpha);
+    }
+
+    @Override
+    public void add(int x, int y, int rgb, int alpha) {
+        if (alpha <= 0 || !recording(x, y)) return;
+        point(ADD, x, y, rgb, alpha);
+    }
+
+    @Override
+    public void fillSpan(int x0, int x1, int y, int rgb) {
+        if (y < recY0 || y >= recY1 || x1 < x0) return;
+        int at = begin(SPAN, 4);
+        cmd[at + 1] = x0; cmd[at + 2] = x1; cmd[at + 3] = y; cmd[at + 4] = rgb;
+        binRect(at, x0, y, x1, y);
+    }
+
+    /** Recorded cut to the image (what every tile's replay would cut it to anyway). */
+    @Override
+    public void line(int x0, int y0, int x1, int y1, int rgb, int alpha) {
+        if (alpha <= 0) return;
+        if (!insideImage(x0, y0, x1, y1)) {
+            int[] seg = lineSeg;
+            seg[0] = x0; seg[1] = y0; seg[2] = x1; seg[3] = y1;
+            if (!clipToImage(seg)) return;
+            x0 = seg[0]; y0 = seg[1]; x1 = seg[2]; y1 = seg[3];
+        }
+        int at = begin(LINE, 6);
+        cmd[at + 1] = x0; cmd[at + 2] = y0; cmd[at + 3] = x1; cmd[at + 4] = y1;
+        cmd[at + 5] = rgb; cmd[at + 6] = alpha;
+        binLine(at, x0, y0, x1, y1);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int d, int rgb, int alpha) {
+        if (d <= 0 || alpha <= 0) return;
+        oval(FILL_OVAL, x, y, d, rgb, alpha, d - 1);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int d, int rgb, int alpha) {
+        if (d <= 0 || alpha <= 0) return;
+        oval(DRAW_OVAL, x, y, d, rgb, alpha, d); // outline spans d + 1 pixels
+    }
+
+    /** Binned as the whole disk; each tile shades its own part. */
+    @Override
+    void sphere(ShadedSphere s) {
+        if (s.rPix <= 0) return;
+        s.prepare();
+        int at = begin(SPHERE, 1);
+        cmd[at + 1] = spheres.size();
+        spheres.add(s);
+        binRect(at, s.minX(), s.minY(), s.maxX(), s.maxY());
+    }
+
+    private boolean recording(int x, int y) {
+        return x >= recX0 && x < recX1 && y >= recY0 && y < recY1;
+    }
+
+    private void point(int op, int x, int y, int rgb, int alpha) {
+        int at = begin(op, 4);
+        cmd[at + 1] = x; cmd[at + 2] = y; cmd[at + 3] = rgb; cmd[at + 4] = alpha;
+        binPoint(at, x, y);
+    }
+
+    private void oval(int op, int x, int y, int d, int rgb, int alpha, int extent) {
+        int at = begin(op, 5);
+        cmd[at + 1] = x; cmd[at + 2] = y; cmd[at + 3] = d; cmd[at + 4] = rgb; cmd[at + 5] = alpha;
+        binRect(at, x, y, x + extent, y + extent);
+    }
+
+    /**
+     * Appends a command header with room for args ints, behind a CLIP header when recording for
+     * a clip view; returns the command's offset.
+     */
+    private int begin(int op, int args) {
+        int start = cmdLen;
+        int at = recClipped ? start + CLIP_HEADER : start;
+        int end = at + 1 + args;
+        if (end > cmd.length) cmd = Arrays.copyOf(cmd, java.lang.Math.max(cmd.length * 2, end));
+        if (recClipped) {
+            cmd[start] = CLIP;
+            cmd[start + 1] = recX0; cmd[start + 2] = recY0; cmd[start + 3] = recX1; cmd[start + 4] = recY1;
+        }
+        cmd[at] = op;
+        cmdLen = end;
+        commands++;
+        return at;
+    }
+
+    private void binPoint(int at, int x, int y) {
+        addToTile((y >> tileShift) * tilesX + (x >> tileShift), recClipped ? at - CLIP_HEADER : at);
+    }
+
+    /** Bins the command into every tile touching the pixel rectangle [x0, x1] x [y0, y1] (within the recording clip). */
+    private void binRect(int at, int x0, int y0, int x1, int y1) {
+        if (x0 < recX0) x0 = recX0;
+        if (y0 < recY0) y0 = recY0;
+        if (x1 > recX1 - 1) x1 = recX1 - 1;
+        if (y1 > recY1 - 1) y1 = recY1 - 1;
+        if (x0 > x1 || y0 > y1) return;
+        if (recClipped) at -= CLIP_HEADER;
+
+        int tx0 = x0 >> tileShift, tx1 = x1 >> tileShift;
+        int ty0 = y0 >> tileShift, ty1 = y1 >> tileShift;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            int row = ty * tilesX;
+            for (int tx = tx0; tx <= tx1; tx++) addToTile(row + tx, at);
+        }
+    }
+
+    /**
+     * Bins the command into the tiles the line's pixels fall in (within the recording clip): one
+     * tile-wide stretch of the major axis at a time, over the minor-axis tiles the walk covers
+     * there (FrameBuffer.lineMinor), so the cost goes with the tiles crossed, not the bounding box.
+     */
+    private void binLine(int at, int x0, int y0, int x1, int y1) {
+        if (recClipped) at -= CLIP_HEADER;
+        int rtx0 = recX0 >> tileShift, rtx1 = (recX1 - 1) >> tileShift;
+        int rty0 = recY0 >> tileShift, rty1 = (recY1 - 1) >> tileShift;
+
+        int dx = java.lang.Math.abs(x1 - x0), dy = java.lang.Math.abs(y1 - y0);
+        boolean xMajor = dx >= dy;
+        int major = xMajor ? dx : dy, minor = xMajor ? dy : dx;
+        int a0 = xMajor ? x0 : y0, sa = ((xMajor ? x1 : y1) >= a0) ? 1 : -1;
+        int b0 = xMajor ? y0 : x0, sb = ((xMajor ? y1 : x1) >= b0) ? 1 : -1;
+        int size = 1 << tileShift;
+
+        for (int k = 0; k <= major; ) {
+            int a = a0 + sa * k;
+            int ta = a >> tileShift;
+            int kEnd = java.lang.Math.min(major, k + ((sa > 0) ? size - 1 - (a & (size - 1)) : a & (size - 1)));
+            int bFrom = b0 + sb * FrameBuffer.lineMinor(k, major, minor);
+            int bTo = b0 + sb * FrameBuffer.lineMinor(kEnd, major, minor);
+            int tb0 = java.lang.Math.min(bFrom, bTo) >> tileShift, tb1 = java.lang.Math.max(bFrom, bTo) >> tileShift;
+            for (int tb = tb0; tb <= tb1; tb++) {
+                int tx = xMajor ? ta : tb, ty = xMajor ? tb : ta;
+                if (tx >= rtx0 && tx <= rtx1 && ty >= rty0 && ty <= rty1) addToTile(ty * tilesX + tx, at);
+            }
+            k = kEnd + 1;
+        }
+    }
+
+    private void addToTile(int t, int at) {
+        int n = tileCount[t];
+        int[] list = tileList[t];
+        if (n == list.length) tileList[t] = list = Arrays.copyOf(list, n * 2);
+        list[n] = at;
+        tileCount[t] = n + 1;
+    }
+
+    // ---- Rasterizing ----
+
+    /**
+     * Rasterizes every tile in parallel, then runs the afterFlush drawing. Always forks: a
+     * single sphere command can be most of the frame, so the command count says little.
+     */
+    @Override
+    public void flush() {
+        if (commands > 0) {
+            int tiles = tileViews.length;
+            if (pool.getParallelism() <= 1) {
+                rasterizeRange(0, tiles);
+            } else {
+                pool.invoke(new TileTask(this, 0, tiles, java.lang.Math.max(1, TILE_GRAIN)));
+            }
+            cmdLen = 0;
+            commands = 0;
+            Arrays.fill(tileCount, 0);
+            spheres.clear();
+        }
+
+        for (int i = 0; i < overlays.size(); i++) overlays.get(i).run();
+        overlays.clear();
+    }
+
+    void rasterizeRange(int from, int to) {
+        for (int t = from; t < to; t++) rasterize(t);
+    }
+
+    /** Replays tile t's commands through its clipped view; touches only that tile's pixels. */
+    private void rasterize(int t) {
+        int n = tileCount[t];
+        if (n == 0) return;
+        int[] list = tileList[t];
+        int[] c = cmd;
+        FrameBuffer tile = tileViews[t];
+
+        for (int k = 0; k < n; k++) {
+            int at = list[k];
+            FrameBuffer fb = tile;
+            if (c[at] == CLIP) {
+                fb = tile.clip(c[at + 1], c[at + 2], c[at + 3], c[at + 4]);
+                at += CLIP_HEADER;
+            }
+            switch (c[at]) {
+                case CLEAR: fb.clear(c[at + 1]); break;
+                case SET: fb.set(c[at + 1], c[at + 2], c[at + 3]); break;
+                case BLEND: fb.blend(c[at + 1], c[at + 2], c[at + 3], c[at + 4]); break;
+                case ADD: fb.add(c[at + 1], c[at + 2], c[at + 3], c[at + 4]); break;
+                case SPAN: fb.fillSpan(c[at + 1], c[at + 2], c[at + 3], c[at + 4]); break;
+                case LINE: fb.line(c[at + 1], c[at + 2], c[at + 3], c[at + 4], c[at + 5], c[at + 6]); break;
+                case FILL_OVAL: fb.fillOval(c[at + 1], c[at + 2], c[at + 3], c[at + 4], c[at + 5]); break;
+                case DRAW_OVAL: fb.drawOval(c[at + 1], c[at + 2], c[at + 3], c[at + 4], c[at + 5]); break;
+                case SPHERE: spheres.get(c[at + 1]).rasterize(fb); break;
+                default: throw new IllegalStateException("Bad raster command " + c[at] + " at " + at);
+            }
+        }
+    }
+
+    /**
+     * What {@link #clip} hands out: writes go to the TiledFrameBuffer's recording with this view's
+     * clip as the recording clip, so they are binned, and replayed, within it.
+     */
+    private static final class ClipView extends FrameBuffer {
+        private final TiledFrameBuffer target;
+
+        ClipView(TiledFrameBuffer target, int x0, int y0, int x1, int y1) {
+            super(target.pixels, target.width, target.height,
+                    java.lang.Math.max(x0, 0), java.lang.Math.max(y0, 0),
+                    java.lang.Math.min(x1, target.width), java.lang.Math.min(y1, target.height));
+            this.target = target;
+        }
+
+        @Override
+        public FrameBuffer clip(int x0, int y0, int x1, int y1) {
+            return new ClipView(target,
+                    java.lang.Math.max(x0, clipX0), java.lang.Math.max(y0, clipY0),
+                    java.lang.Math.min(x1, clipX1), java.lang.Math.min(y1, clipY1));
+        }
+
+        @Override public boolean isDeferred() { return true; }
+        @Override public void flush() { target.flush(); }
+        @Override public void afterFlush(Runnable draw) { target.afterFlush(draw); }
+
+        @Override public void clear(int rgb) { begin(); target.clear(rgb); end(); }
+        @Override public void set(int x, int y, int rgb) { begin(); target.set(x, y, rgb); end(); }
+        @Override public void blend(int x, int y, int rgb, int alpha) { begin(); target.blend(x, y, rgb, alpha); end(); }
+        @Override public void add(int x, int y, int rgb, int alpha) { begin(); target.add(x, y, rgb, alpha); end(); }
+        @Override public void fillSpan(int x0, int x1, int y, int rgb) { begin(); target.fillSpan(x0, x1, y, rgb); end(); }
+        @Override void sphere(ShadedSphere s) { begin(); target.sphere(s); end(); }
+        @Override public void line(int x0, int y0, int x1, int y1, int rgb, int alpha) { begin(); target.line(x0, y0, x1, y1, rgb, alpha); end(); }
+        @Override public void fillOval(int x, int y, int d, int rgb, int alpha) { begin(); target.fillOval(x, y, d, rgb, alpha); end(); }
+        @Override public void drawOval(int x, int y, int d, int rgb, int alpha) { begin(); target.drawOval(x, y, d, rgb, alpha); end(); }
+
+        private void begin() {
+            target.recX0 = clipX0; target.recY0 = clipY0;
+            target.recX1 = clipX1; target.recY1 = clipY1;
+            target.recClipped = true;
+        }
+
+        private void end() {
+            target.recX0 = 0; target.recY0 = 0;
+            target.recX1 = target.width; target.recY1 = target.height;
+            target.recClipped = false;
+        }
+    }
+
+    private static final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TiledFrameBuffer fb;
+        private final int from, to;
+        private final int grain;
+
+        TileTask(TiledFrameBuffer fb, int from, int to, int grain) {
+            this.fb = fb;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                fb.rasterizeRange(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new TileTask(fb, from, mid, grain),
+                    new TileTask(fb, mid, to, grain)
+            );
+        }
+    }
+}
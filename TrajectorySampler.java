@@ -0,0 +1,239 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Headless batch propagation: positions of a set of bodies at an array of times, without
+ * touching the live system.
+ *
+ * Reads only parents and elements, from OrbitalStateStore.snapshotOrbits taken at construction
+ * (an edited system gets a new store; handoffs and burns after that are not seen), so sampling
+ * is safe while the simulation thread keeps stepping the same store. No ephemeris, motion
+ * budget or solver metrics are involved; secular drift is, when the store has it
+ * (SecularPerturbations).
+ *
+ * Per time, only the requested bodies and their ancestors are solved (the closure, in slot
+ * order, which puts parents first), level by level through a KeplerLaneKernel; comets take
+ * the scalar solver like they do in OrbitalStateStore. Times are split into chunks on a
+ * ForkJoinPool, each task with its own scratch, so large tables use every core.
+ *
+ * Positions are in the store's simulation frame (relative to the root star, see
+ * OrbitalStateStore.getOriginX for its world position) and laid out per body:
+ * out[b * times.length + k] is body b at times[k].
+ */
+public final class TrajectorySampler {
+
+    // --- Tunables ---
+    /** Smallest number of times handed to one fork-join task. */
+    public static int PARALLEL_GRAIN = 16;
+
+    private final OrbitalStateStore source;
+    private final OrbitalStateStore store;   // source's orbits at construction
+    private final int bodyCount;
+
+    // Closure of the requested slots and their ancestors, ascending slot order
+    private final int[] closure;
+    private final int[] closureParent;  // index into closure, -1 for fixed roots
+    private final int[] closureDepth;
+    private final double[] rootX, rootY, rootZ; // fixed positions of roots (0 for others)
+
+    // Requested body b is closure[outputIndex[b]]
+    private final int[] outputIndex;
+
+    /**
+     * @param slots store slots to sample, in output order (duplicates allowed)
+     */
+    public TrajectorySampler(OrbitalStateStore source, int[] slots) {
+        this.source = source;
+        this.store = source.snapshotOrbits();
+        this.bodyCount = slots.length;
+
+        int n = store.size();
+        boolean[] needed = new boolean[n];
+        for (int s : slots) {
+            if (s < 0 || s >= n) throw new IllegalArgumentException("Slot " + s + " is not in the store");
+            for (int c = s; c >= 0 && !needed[c]; c = store.getParentIndex(c)) needed[c] = true;
+        }
+
+        int m = 0;
+        int[] closureOf = new int[n];
+        for (int i = 0; i < n; i++) closureOf[i] = needed[i] ? m++ : -1;
+
+        closure = new int[m];
+        closureParent = new int[m];
+        closureDepth = new int[m];
+        rootX = new double[m];
+        rootY = new double[m];
+        rootZ = new double[m];
+        for (int i = 0; i < n; i++) {
+            int k = closureOf[i];
+            if (k < 0) continue;
+            int p = store.getParentIndex(i);
+            closure[k] = i;
+            if (p < 0) {
+                closureParent[k] = -1;
+                rootX[k] = store.x[i];
+                rootY[k] = store.y[i];
+                rootZ[k] = store.z[i];
+            } else {
+                closureParent[k] = closureOf[p];
+                closureDepth[k] = closureDepth[closureOf[p]] + 1; // parents have lower slots
+            }
+        }
+
+        outputIndex = new int[slots.length];
+        for (int b = 0; b < slots.length; b++) outputIndex[b] = closureOf[slots[b]];
+    }
+
+    /**
+     * Sampler for bodies bound to the given store. The store is not built here: that is the UI
+     * thread's job (SolarSystem.getOrbitStore), so pass the one it built.
+     */
+    public static TrajectorySampler of(OrbitalStateStore store, List<? extends Body> bodies) {
+        int[] slots = new int[bodies.size()];
+        for (int b = 0; b < slots.length; b++) {
+            Body body = bodies.get(b);
+            int s = body.getStoreIndex();
+            if (s < 0 || s >= store.size() || store.getBody(s) != body) {
+                throw new IllegalArgumentException(body.getName() + " is not bound to this store");
+            }
+            slots[b] = s;
+        }
+        return new TrajectorySampler(store, slots);
+    }
+
+    public OrbitalStateStore getStore() { return source; }
+    public int getBodyCount() { return bodyCount; }
+
+    /** {@link #sample(long[], double[], double[], double[], ForkJoinPool)} on the common pool. */
+    public void sample(long[] timesNanos, double[] outX, double[] outY, double[] outZ) {
+        sample(timesNanos, outX, outY, outZ, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Fills outX/Y/Z (at least bodyCount * times.length long) with every body at every time.
+     *
+     * @param timesNanos simulation times, nanoseconds (any order)
+     */
+    public void sample(long[] timesNanos, double[] outX, double[] outY, double[] outZ, ForkJoinPool pool) {
+        long need = (long) bodyCount * timesNanos.length;
+        if (outX.length < need || outY.length < need || outZ.length < need) {
+            throw new IllegalArgumentException("Output arrays need " + need + " entries");
+        }
+        if (timesNanos.length == 0 || bodyCount == 0) return;
+
+        if (timesNanos.length <= PARALLEL_GRAIN) {
+            sampleRange(timesNanos, 0, timesNanos.length, outX, outY, outZ);
+        } else {
+            pool.invoke(new SampleTask(this, timesNanos, 0, timesNanos.length, outX, outY, outZ));
+        }
+    }
+
+    /** Samples times [from, to) on the calling thread. */
+    private void sampleRange(long[] times, int from, int to, double[] outX, double[] outY, double[] outZ) {
+        final int m = closure.length;
+        final int nt = times.length;
+        final double[] px = new double[m], py = new double[m], pz = new double[m];
+        final double[] ecc = new double[3];
+        final double[] off = new double[3];
+        final KeplerLaneKernel lanes = new KeplerLaneKernel();
+        final int[] laneIndex = new int[KeplerLaneKernel.BLOCK];
+        final SecularPerturbations sec = store.getSecularPerturbations();
+
+        for (int k = from; k < to; k++) {
+            SimulationTime t = SimulationTime.ofNanos(times[k]);
+            int depth = 0;
+
+            for (int c = 0; c < m; c++) {
+                int p = closureParent[c];
+                if (p < 0) {
+                    px[c] = rootX[c];
+                    py[c] = rootY[c];
+                    pz[c] = rootZ[c];
+                    continue;
+                }
+                if (closureDepth[c] != depth) {
+                    // Next level: its parents must be written first
+                    flush(lanes, laneIndex, px, py, pz, sec, t.seconds(), ecc, off);
+                    depth = closureDepth[c];
+                }
+
+                int i = closure[c];
+                double tOrbit = t.phase(store.period[i]);
+                if (store.e[i] <= KeplerLaneKernel.MAX_ECCENTRICITY) {
+                    laneIndex[lanes.count] = c;
+                    lanes.add(store, i, tOrbit);
+                    if (lanes.isFull()) flush(lanes, laneIndex, px, py, pz, sec, t.seconds(), ecc, off);
+                } else {
+                    store.offsetAtPhase(i, tOrbit, ecc, off);
+                    if (sec != null) sec.apply(i, t.seconds(), off, ecc);
+                    px[c] = px[p] + off[0];
+                    py[c] = py[p] + off[1];
+                    pz[c] = pz[p] + off[2];
+                }
+            }
+            flush(lanes, laneIndex, px, py, pz, sec, t.seconds(), ecc, off);
+
+            for (int b = 0; b < bodyCount; b++) {
+                int c = outputIndex[b];
+                int o = b * nt + k;
+                outX[o] = px[c];
+                outY[o] = py[c];
+                outZ[o] = pz[c];
+            }
+        }
+    }
+
+    /** Solves the pending lane block and writes it next to the (already final) parents. */
+    private void flush(KeplerLaneKernel lanes, int[] laneIndex, double[] px, double[] py, double[] pz,
+                       SecularPerturbations sec, double tSeconds, double[] ecc, double[] off) {
+        if (lanes.count == 0) return;
+        lanes.solve();
+        for (int k = 0; k < lanes.count; k++) {
+            int c = laneIndex[k];
+            int p = closureParent[c];
+            off[0] = lanes.outX[k];
+            off[1] = lanes.outY[k];
+            off[2] = lanes.outZ[k];
+            if (sec != null) sec.apply(lanes.slot[k], tSeconds, off, ecc);
+            px[c] = px[p] + off[0];
+            py[c] = py[p] + off[1];
+            pz[c] = pz[p] + off[2];
+        }
+        lanes.clear();
+    }
+
+    /** Splits a time range in halves until it is below the grain size. */
+    private static final class SampleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TrajectorySampler sampler;
+        private final long[] times;
+        private final int from, to;
+        private final double[] outX, outY, outZ;
+
+        SampleTask(TrajectorySampler sampler, long[] times, int from, int to,
+                   double[] outX, double[] outY, double[] outZ) {
+            this.sampler = sampler;
+            this.times = times;
+            this.from = from;
+            this.to = to;
+            this.outX = outX;
+            this.outY = outY;
+            this.outZ = outZ;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                sampler.sampleRange(times, from, to, outX, outY, outZ);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new SampleTask(sampler, times, from, mid, outX, outY, outZ),
+                    new SampleTask(sampler, times, mid, to, outX, outY, outZ)
+            );
+        }
+    }
+}